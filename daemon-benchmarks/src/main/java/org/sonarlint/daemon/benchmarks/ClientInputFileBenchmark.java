@@ -0,0 +1,94 @@
+/*
+ * SonarLint Daemon Benchmarks
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarlint.daemon.model.DefaultClientInputFile;
+
+/**
+ * Reading and decoding a file from disk, as the engine does for each analyzed file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ClientInputFileBenchmark {
+  private static final String LINE = "  const total = items.reduce((sum, item) => sum + item.price, 0); // prix unitaire éèà\n";
+
+  @Param({"1024", "65536", "1048576", "8388608"})
+  public int size;
+
+  @Param({"UTF-8", "ISO-8859-1", "UTF-16"})
+  public String charset;
+
+  private Path dir;
+  private DefaultClientInputFile file;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("sonarlint-bench");
+    Path path = dir.resolve("file.js");
+    StringBuilder content = new StringBuilder(size + LINE.length());
+    while (content.length() < size) {
+      content.append(LINE);
+    }
+    Charset cs = Charset.forName(charset);
+    Files.write(path, content.toString().getBytes(cs));
+    file = new DefaultClientInputFile(dir, path, false, cs, "file", "js");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(dir.resolve("file.js"));
+    Files.deleteIfExists(dir);
+  }
+
+  @Benchmark
+  public String contents() throws IOException {
+    return file.contents();
+  }
+
+  /**
+   * Reading without decoding, to tell the cost of the charset apart.
+   */
+  @Benchmark
+  public byte[] readBytes() throws IOException {
+    return Files.readAllBytes(Paths.get(file.getPath()));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * SonarLint Daemon Benchmarks
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.benchmarks;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarlint.daemon.model.ClientInputFiles;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+
+/**
+ * Handling of a whole project analysis request: parsing the message and converting its files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class InputFileConversionBenchmark {
+  @Param({"10000"})
+  public int fileCount;
+
+  private AnalysisReq request;
+  private byte[] serialized;
+  private Path baseDir;
+
+  @Setup
+  public void setup() {
+    AnalysisReq.Builder builder = AnalysisReq.newBuilder()
+      .setBaseDir(Paths.get("C:", "Users", "dev", "project").toString())
+      .putProperties("sonar.javascript.environments", "browser,node");
+    for (int i = 0; i < fileCount; i++) {
+      builder.addFile(InputFile.newBuilder()
+        .setPath(Paths.get(builder.getBaseDir(), "src", "module" + (i / 100), "component" + i + ".js").toString())
+        .setCharset(i % 10 == 0 ? "windows-1252" : "UTF-8")
+        .setIsTest(i % 5 == 0)
+        .setUserObject("file-" + i)
+        .setLanguage("js"));
+    }
+    request = builder.build();
+    serialized = request.toByteArray();
+    baseDir = Paths.get(request.getBaseDir());
+  }
+
+  @Benchmark
+  public List<ClientInputFile> convert() {
+    return ClientInputFiles.toClientInputFiles(baseDir, request.getFileList());
+  }
+
+  @Benchmark
+  public List<ClientInputFile> parseAndConvert() throws InvalidProtocolBufferException {
+    AnalysisReq parsed = AnalysisReq.parseFrom(serialized);
+    return ClientInputFiles.toClientInputFiles(Paths.get(parsed.getBaseDir()), parsed.getFileList());
+  }
+}
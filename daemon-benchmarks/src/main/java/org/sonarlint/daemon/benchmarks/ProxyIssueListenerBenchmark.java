@@ -0,0 +1,80 @@
+/*
+ * SonarLint Daemon Benchmarks
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.benchmarks;
+
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonarlint.daemon.model.ProxyIssueListener;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+/**
+ * Conversion of an engine issue to its protobuf message: severity and type mapping, then building the message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProxyIssueListenerBenchmark {
+  private static final int ISSUES = 1024;
+
+  private Issue[] issues;
+  private ProxyIssueListener listener;
+  private int next = 0;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    issues = StubIssues.create(ISSUES);
+    listener = new ProxyIssueListener(new StreamObserver<org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue>() {
+      @Override
+      public void onNext(org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue value) {
+        blackhole.consume(value);
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        // not called
+      }
+
+      @Override
+      public void onCompleted() {
+        // not called
+      }
+    });
+  }
+
+  @Benchmark
+  public void handle() {
+    listener.handle(issues[next]);
+    next = (next + 1) & (ISSUES - 1);
+  }
+}
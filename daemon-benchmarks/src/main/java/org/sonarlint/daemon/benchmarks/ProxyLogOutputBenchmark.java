@@ -0,0 +1,114 @@
+/*
+ * SonarLint Daemon Benchmarks
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.benchmarks;
+
+import io.grpc.stub.StreamObserver;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarlint.daemon.Daemon;
+import org.sonarlint.daemon.Options;
+import org.sonarlint.daemon.model.ProxyLogOutput;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogBatch;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
+
+/**
+ * Logging from several analysis threads to a single log stream, compared to a single thread logging.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProxyLogOutputBenchmark {
+  private static final String MESSAGE = "Sensor JavaScript analysis [javascript] (done) | time=1234ms";
+
+  private ProxyLogOutput logOutput;
+  private CountingObserver observer;
+
+  @Setup
+  public void setup() throws ParseException {
+    logOutput = new ProxyLogOutput(new Daemon(Options.parse(new String[0])));
+    observer = new CountingObserver();
+    logOutput.subscribeBatched(observer);
+  }
+
+  @TearDown
+  public void tearDown() {
+    logOutput.close();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void log_uncontended() {
+    logOutput.log(MESSAGE, Level.DEBUG);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void log_4_threads() {
+    logOutput.log(MESSAGE, Level.DEBUG);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public void log_16_threads() {
+    logOutput.log(MESSAGE, Level.DEBUG);
+  }
+
+  /**
+   * Stands for the gRPC stream. Called by the sender thread of the log output, like the real one.
+   */
+  private static class CountingObserver implements StreamObserver<LogBatch> {
+    private long count = 0;
+    private int size = 0;
+
+    @Override
+    public void onNext(LogBatch value) {
+      for (LogEvent event : value.getEventList()) {
+        count++;
+        size += event.getLog().length();
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      // not called
+    }
+
+    @Override
+    public void onCompleted() {
+      // not called
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * SonarLint Daemon Benchmarks
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import org.sonarlint.daemon.model.DefaultClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+/**
+ * Issues as reported by the engine. They are backed by a map rather than implementing {@link Issue}, so that the benchmarks do not
+ * depend on the exact shape of the interface in a given version of sonarlint-core.
+ */
+class StubIssues {
+  private static final String[] SEVERITIES = {"MAJOR", "MINOR", "CRITICAL", "INFO", "BLOCKER"};
+  private static final String[] TYPES = {"CODE_SMELL", "BUG", "VULNERABILITY", null};
+
+  private StubIssues() {
+    // only static
+  }
+
+  static Issue[] create(int count) {
+    Path baseDir = Paths.get("project");
+    Issue[] issues = new Issue[count];
+    for (int i = 0; i < count; i++) {
+      ClientInputFile file = new DefaultClientInputFile(baseDir, baseDir.resolve("src/file" + (i % 10) + ".js"), false, StandardCharsets.UTF_8,
+        "user-object-" + (i % 10), "js");
+      Map<String, Object> values = new HashMap<>();
+      values.put("getSeverity", SEVERITIES[i % SEVERITIES.length]);
+      values.put("getType", TYPES[i % TYPES.length]);
+      values.put("getRuleKey", "javascript:S" + (1000 + i % 50));
+      values.put("getRuleName", "Rule number " + (i % 50));
+      values.put("getMessage", "Remove this useless assignment to variable \"x" + i + "\".");
+      values.put("getStartLine", 10 + i);
+      values.put("getStartLineOffset", 4);
+      values.put("getEndLine", 10 + i);
+      values.put("getEndLineOffset", 22);
+      values.put("getInputFile", file);
+      issues[i] = (Issue) Proxy.newProxyInstance(Issue.class.getClassLoader(), new Class<?>[] {Issue.class},
+        (proxy, method, args) -> values.get(method.getName()));
+    }
+    return issues;
+  }
+}
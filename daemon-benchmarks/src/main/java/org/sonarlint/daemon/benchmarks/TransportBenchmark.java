@@ -0,0 +1,145 @@
+/*
+ * SonarLint Daemon Benchmarks
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.benchmarks;
+
+import com.google.common.base.Strings;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonarlint.daemon.Options;
+import org.sonarlint.daemon.transport.ServerTransport;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleDetails;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleKey;
+import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc;
+
+/**
+ * Round trip of a unary call over loopback TCP with NIO, loopback TCP with epoll, and a Unix domain socket.
+ * The epoll variants only run on Linux.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TransportBenchmark {
+  private static final RuleKey KEY = RuleKey.newBuilder().setKey("javascript:S1234").build();
+
+  @Param({"tcp", "tcp-epoll", "uds"})
+  public String transport;
+
+  @Param({"0", "65536"})
+  public int payloadBytes;
+
+  private Path tmp;
+  private ServerTransport serverTransport;
+  private Server server;
+  private EventLoopGroup clientGroup;
+  private ManagedChannel channel;
+  private StandaloneSonarLintGrpc.StandaloneSonarLintBlockingStub stub;
+
+  @Setup
+  public void setup() throws Exception {
+    tmp = Files.createTempDirectory("transport-benchmark");
+    Path socket = tmp.resolve("daemon.sock");
+    String[] args;
+    switch (transport) {
+      case "tcp-epoll":
+        args = new String[] {"--epoll"};
+        break;
+      case "uds":
+        args = new String[] {"--socket", socket.toString()};
+        break;
+      default:
+        args = new String[0];
+    }
+
+    RuleDetails details = RuleDetails.newBuilder()
+      .setKey(KEY.getKey())
+      .setName("Rule")
+      .setHtmlDescription(Strings.repeat("x", payloadBytes))
+      .build();
+    serverTransport = ServerTransport.create(Options.parse(args), 0);
+    server = serverTransport.serverBuilder()
+      .addService(new StandaloneSonarLintGrpc.StandaloneSonarLintImplBase() {
+        @Override
+        public void getRuleDetails(RuleKey request, StreamObserver<RuleDetails> response) {
+          response.onNext(details);
+          response.onCompleted();
+        }
+      })
+      .build()
+      .start();
+
+    NettyChannelBuilder builder;
+    switch (transport) {
+      case "tcp-epoll":
+        clientGroup = new EpollEventLoopGroup(1);
+        builder = NettyChannelBuilder.forAddress("localhost", server.getPort()).channelType(EpollSocketChannel.class);
+        break;
+      case "uds":
+        clientGroup = new EpollEventLoopGroup(1);
+        builder = NettyChannelBuilder.forAddress(new DomainSocketAddress(socket.toFile())).channelType(EpollDomainSocketChannel.class);
+        break;
+      default:
+        clientGroup = new NioEventLoopGroup(1);
+        builder = NettyChannelBuilder.forAddress("localhost", server.getPort()).channelType(NioSocketChannel.class);
+    }
+    channel = builder.eventLoopGroup(clientGroup).usePlaintext().build();
+    stub = StandaloneSonarLintGrpc.newBlockingStub(channel);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    server.shutdownNow().awaitTermination();
+    serverTransport.shutdown();
+    clientGroup.shutdownGracefully().sync();
+    Files.deleteIfExists(tmp);
+  }
+
+  @Benchmark
+  public RuleDetails round_trip() {
+    return stub.getRuleDetails(KEY);
+  }
+}
@@ -0,0 +1,292 @@
+/*
+ * SonarLint Daemon Benchmarks
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.benchmarks.replay;
+
+import com.google.protobuf.Message;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCalls;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.CheckForNull;
+import org.sonarlint.daemon.metrics.Histogram;
+import org.sonarsource.sonarlint.daemon.proto.ConnectedSonarLintGrpc;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.CapturedRequest;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ConnectedAnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc;
+
+/**
+ * Sends the requests captured with {@code --capture} to a running daemon, either with their original timing or as fast as possible,
+ * and reports the latency distribution of each method.
+ * <p>
+ * Connected analyses are replayed after the captured start of the connected engine, which uses the storage of the captured
+ * configuration: the daemon must find it at the same place.
+ */
+public class Replay {
+  private final ManagedChannel channel;
+  private final Map<String, MethodDescriptor<?, ?>> methods = new HashMap<>();
+  private final Map<String, Histogram> latencies = new TreeMap<>();
+  private final LongAdder errors = new LongAdder();
+
+  public Replay(ManagedChannel channel) {
+    this.channel = channel;
+    for (MethodDescriptor<?, ?> method : StandaloneSonarLintGrpc.getServiceDescriptor().getMethods()) {
+      methods.put(method.getFullMethodName(), method);
+    }
+    for (MethodDescriptor<?, ?> method : ConnectedSonarLintGrpc.getServiceDescriptor().getMethods()) {
+      methods.put(method.getFullMethodName(), method);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      printUsage();
+      return;
+    }
+    Path capture = Paths.get(args[0]);
+    String host = "localhost";
+    int port = 8050;
+    double speed = 1;
+    int concurrency = Runtime.getRuntime().availableProcessors();
+    String baseDir = null;
+    for (int i = 1; i < args.length; i++) {
+      String arg = args[i];
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing argument for option " + arg);
+      }
+      String value = args[++i];
+      if ("--host".equals(arg)) {
+        host = value;
+      } else if ("--port".equals(arg)) {
+        port = Integer.parseInt(value);
+      } else if ("--speed".equals(arg)) {
+        speed = "max".equals(value) ? 0 : Double.parseDouble(value);
+      } else if ("--concurrency".equals(arg)) {
+        concurrency = Integer.parseInt(value);
+      } else if ("--base-dir".equals(arg)) {
+        baseDir = value;
+      } else {
+        throw new IllegalArgumentException("Unrecognized option: " + arg);
+      }
+    }
+
+    List<CapturedRequest> requests = read(capture, baseDir);
+    checkConnectedStarted(requests);
+    ManagedChannel channel = ManagedChannelBuilder.forAddress(host, port).usePlaintext().build();
+    try {
+      Replay replay = new Replay(channel);
+      long start = System.nanoTime();
+      if (speed > 0) {
+        replay.replayTimed(requests, speed);
+      } else {
+        replay.replayMaxSpeed(requests, concurrency);
+      }
+      replay.printReport(requests.size(), System.nanoTime() - start);
+    } finally {
+      channel.shutdownNow();
+    }
+  }
+
+  private static void printUsage() {
+    System.out.println("usage: Replay <capture file> [options]");
+    System.out.println("");
+    System.out.println("Options:");
+    System.out.println(" --host <host>         Host of the daemon (default: localhost)");
+    System.out.println(" --port <port>         Port of the daemon (default: 8050)");
+    System.out.println(" --speed <factor|max>  Replay speed relative to the capture, or as fast as possible (default: 1)");
+    System.out.println(" --concurrency <count> Concurrent requests at max speed (default: number of processors)");
+    System.out.println(" --base-dir <dir>      Replace the base directory of the captured requests, and of their files");
+  }
+
+  /**
+   * Reads a capture, moving the requests to another base directory if given.
+   */
+  public static List<CapturedRequest> read(Path capture, @CheckForNull String baseDir) throws IOException {
+    List<CapturedRequest> requests = new ArrayList<>();
+    try (InputStream in = Files.newInputStream(capture)) {
+      CapturedRequest request;
+      while ((request = CapturedRequest.parseDelimitedFrom(in)) != null) {
+        requests.add(baseDir == null ? request : rebase(request, baseDir));
+      }
+    }
+    return requests;
+  }
+
+  /**
+   * Captures made before the start of the connected engine was captured can't replay connected analyses.
+   */
+  static void checkConnectedStarted(List<CapturedRequest> requests) {
+    for (CapturedRequest request : requests) {
+      if (request.hasConnectedStart()) {
+        return;
+      }
+      if (request.hasConnectedAnalysis()) {
+        throw new IllegalArgumentException("The capture has connected analyses but not the start of the connected engine they need. "
+          + "Capture again from the start of the daemon, or replay standalone analyses only.");
+      }
+    }
+  }
+
+  static CapturedRequest rebase(CapturedRequest request, String baseDir) {
+    CapturedRequest.Builder builder = request.toBuilder();
+    if (request.hasAnalysis()) {
+      AnalysisReq analysis = request.getAnalysis();
+      builder.setAnalysis(analysis.toBuilder()
+        .setBaseDir(baseDir)
+        .clearFile()
+        .addAllFile(rebase(analysis.getFileList(), analysis.getBaseDir(), baseDir)));
+    } else if (request.hasConnectedAnalysis()) {
+      ConnectedAnalysisReq analysis = request.getConnectedAnalysis();
+      builder.setConnectedAnalysis(analysis.toBuilder()
+        .setBaseDir(baseDir)
+        .clearFile()
+        .addAllFile(rebase(analysis.getFileList(), analysis.getBaseDir(), baseDir)));
+    }
+    return builder.build();
+  }
+
+  private static List<InputFile> rebase(List<InputFile> files, String from, String to) {
+    List<InputFile> rebased = new ArrayList<>(files.size());
+    for (InputFile file : files) {
+      String path = file.getPath();
+      rebased.add(path.startsWith(from) ? file.toBuilder().setPath(to + path.substring(from.length())).build() : file);
+    }
+    return rebased;
+  }
+
+  /**
+   * Sends each request at its captured arrival time, divided by the speed, whatever the number of requests in progress.
+   */
+  public void replayTimed(List<CapturedRequest> requests, double speed) throws InterruptedException {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    long start = System.nanoTime();
+    for (CapturedRequest request : requests) {
+      long delay = start + (long) (request.getArrivalNanos() / speed) - System.nanoTime();
+      if (delay > 0) {
+        TimeUnit.NANOSECONDS.sleep(delay);
+      }
+      if (request.hasConnectedStart()) {
+        executor = startConnected(executor, request, Executors::newCachedThreadPool);
+      } else {
+        executor.execute(() -> send(request));
+      }
+    }
+    awaitCompletion(executor);
+  }
+
+  /**
+   * Sends the requests in their captured order, as fast as the daemon answers, with the given number of requests in progress.
+   */
+  public void replayMaxSpeed(List<CapturedRequest> requests, int concurrency) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    for (CapturedRequest request : requests) {
+      if (request.hasConnectedStart()) {
+        executor = startConnected(executor, request, () -> Executors.newFixedThreadPool(concurrency));
+      } else {
+        executor.execute(() -> send(request));
+      }
+    }
+    awaitCompletion(executor);
+  }
+
+  /**
+   * Starting the connected engine stops the previous one, so the requests in progress are completed first, like they were when
+   * captured, and the next ones wait for the start.
+   */
+  private ExecutorService startConnected(ExecutorService executor, CapturedRequest request, Supplier<ExecutorService> next)
+    throws InterruptedException {
+    awaitCompletion(executor);
+    send(request);
+    return next.get();
+  }
+
+  private static void awaitCompletion(ExecutorService executor) throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.HOURS);
+  }
+
+  private void send(CapturedRequest captured) {
+    @SuppressWarnings("unchecked")
+    MethodDescriptor<Message, Object> method = (MethodDescriptor<Message, Object>) methods.get(captured.getMethod());
+    if (method == null) {
+      System.err.println("Unknown method " + captured.getMethod());
+      errors.increment();
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      if (captured.hasConnectedStart()) {
+        ClientCalls.blockingUnaryCall(channel, method, CallOptions.DEFAULT, captured.getConnectedStart());
+      } else {
+        Message request = captured.hasAnalysis() ? captured.getAnalysis() : captured.getConnectedAnalysis();
+        Iterator<Object> responses = ClientCalls.blockingServerStreamingCall(channel, method, CallOptions.DEFAULT, request);
+        while (responses.hasNext()) {
+          responses.next();
+        }
+      }
+      histogram(captured.getMethod()).record(System.nanoTime() - start);
+    } catch (StatusRuntimeException e) {
+      System.err.println(captured.getMethod() + ": " + e.getStatus());
+      errors.increment();
+    }
+  }
+
+  private synchronized Histogram histogram(String method) {
+    return latencies.computeIfAbsent(method, m -> new Histogram());
+  }
+
+  public synchronized void printReport(int requestCount, long durationNanos) {
+    double seconds = durationNanos / 1e9;
+    System.out.println(String.format(Locale.ENGLISH, "%d requests in %.1f s (%.2f req/s), %d errors", requestCount, seconds,
+      requestCount / seconds, errors.sum()));
+    System.out.println(String.format(Locale.ENGLISH, "%-46s %8s %10s %10s %10s %10s %10s", "method", "count", "p50 ms", "p90 ms", "p99 ms",
+      "p99.9 ms", "max ms"));
+    for (Map.Entry<String, Histogram> entry : latencies.entrySet()) {
+      Histogram.Snapshot snapshot = entry.getValue().snapshot();
+      System.out.println(String.format(Locale.ENGLISH, "%-46s %8d %10.1f %10.1f %10.1f %10.1f %10.1f", entry.getKey(), snapshot.count(),
+        millis(snapshot.percentile(0.5)), millis(snapshot.percentile(0.9)), millis(snapshot.percentile(0.99)), millis(snapshot.percentile(0.999)),
+        millis(snapshot.max())));
+    }
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+}
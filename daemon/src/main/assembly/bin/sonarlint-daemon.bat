@@ -56,8 +56,13 @@ goto error
 :foundJavaExeFromJavaHome
 set JAVA_EXEC="%JAVA_HOME%\bin\java.exe"
 
-@REM *** SONARLINT HOME VALIDATION ***
+@REM *** JAVA VERSION VALIDATION ***
 :OkJava
+@REM the daemon is compiled for Java 11 since it emits flight recorder events
+%JAVA_EXEC% -version 2>&1 | findstr /l /c:"version \"1." /c:"version \"9" /c:"version \"10" >nul
+if not ERRORLEVEL 1 goto oldJava
+
+@REM *** SONARLINT HOME VALIDATION ***
 
 @REM Check if the provided SONARLINT_DAEMON_HOME is a valid install dir
 IF EXIST "%SONARLINT_DAEMON_HOME%\lib\sonarlint-daemon-${project.version}.jar" goto run
@@ -70,6 +75,15 @@ goto error
 
 
 
+:oldJava
+echo.
+echo ERROR: SonarLint Daemon requires Java 11 or later. Earlier versions
+echo        ran on Java 8, this one needs a newer runtime. Please set the
+echo        JAVA_HOME variable to a Java 11 installation.
+echo.
+goto error
+
+
 @REM ==== START RUN ====
 :run
 echo %SONARLINT_DAEMON_HOME%
@@ -22,25 +22,50 @@ package org.sonarlint.daemon;
 import io.grpc.Server;
 import io.grpc.ServerInterceptor;
 import io.grpc.ServerInterceptors;
-import io.grpc.netty.NettyServerBuilder;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.JdkLoggerFactory;
-import java.net.InetSocketAddress;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.sonarlint.daemon.capture.RequestCapture;
+import org.sonarlint.daemon.interceptors.CaptureInterceptor;
 import org.sonarlint.daemon.interceptors.ExceptionInterceptor;
+import org.sonarlint.daemon.interceptors.MetricsInterceptor;
+import org.sonarlint.daemon.jfr.FlightRecording;
+import org.sonarlint.daemon.logging.ConsoleLogSink;
+import org.sonarlint.daemon.logging.LogSink;
+import org.sonarlint.daemon.logging.RollingFileLogSink;
+import org.sonarlint.daemon.metrics.MetricsHttpServer;
+import org.sonarlint.daemon.metrics.MetricsRegistry;
 import org.sonarlint.daemon.services.ConnectedSonarLintImpl;
 import org.sonarlint.daemon.services.StandaloneSonarLintImpl;
+import org.sonarlint.daemon.transport.ServerTransport;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
 
 public class Daemon {
   private static final int DEFAULT_PORT = 8050;
+  private final Options options;
+  private final MetricsRegistry metrics = new MetricsRegistry();
   private Server server;
+  private ServerTransport transport;
+  private MetricsHttpServer metricsServer;
+  private RequestCapture capture;
+  private ConnectedSonarLintImpl connected;
+  private StandaloneSonarLintImpl standalone;
+  private LogSink logSink = new ConsoleLogSink();
+
+  public Daemon(Options options) {
+    this.options = options;
+  }
 
   public static void main(String[] args) {
     setUpNettyLogging();
 
+    Options options;
     int port;
     try {
-      Options options = Options.parse(args);
+      options = Options.parse(args);
 
       if (options.isHelp()) {
         Options.printUsage();
@@ -55,7 +80,7 @@ public class Daemon {
     }
 
     Path sonarlintHome = Utils.getSonarLintInstallationHome();
-    new Daemon().start(port, sonarlintHome);
+    new Daemon(options).start(port, sonarlintHome);
   }
 
   private static void setUpNettyLogging() {
@@ -63,35 +88,99 @@ public class Daemon {
   }
 
   public void stop() {
-    System.out.println("Asking gRPC server to shutdown...");
+    logSink.log(Level.INFO, "Asking gRPC server to shutdown...");
     server.shutdown();
+    if (metricsServer != null) {
+      metricsServer.stop();
+    }
+    if (capture != null) {
+      try {
+        capture.close();
+      } catch (IOException e) {
+        logSink.error("Error closing capture", e);
+      }
+    }
+  }
+
+  private void closeServices() {
+    if (connected != null) {
+      connected.close();
+    }
+    if (standalone != null) {
+      standalone.close();
+    }
+  }
+
+  /**
+   * Metrics are optional: the daemon keeps running without them if their port can't be bound.
+   */
+  private void startMetricsServer(int metricsPort) {
+    try {
+      metricsServer = MetricsHttpServer.start(metricsPort, metrics, logSink);
+      logSink.log(Level.INFO, "Metrics available on http://localhost:" + metricsServer.port() + "/metrics");
+    } catch (IOException e) {
+      logSink.error("Failed to serve metrics on port " + metricsPort + ", continuing without them", e);
+    }
   }
 
   public void start(int port, Path sonarlintHome) {
     try {
-      System.out.println("Starting server on port " + port);
-      ServerInterceptor interceptor = new ExceptionInterceptor();
+      if (options.getLogFile() != null) {
+        RollingFileLogSink fileSink = RollingFileLogSink.open(options.getLogFile(), options.getLogFileSize() * 1024L * 1024L, options.getLogFileCount());
+        metrics.counter("log_file_dropped_total", fileSink::droppedCount);
+        logSink = fileSink;
+      }
+      transport = ServerTransport.create(options, port);
+      logSink.log(Level.INFO, "Starting server on " + transport);
+      if (options.getJfrRecording() != null) {
+        FlightRecording.start(options.getJfrRecording(), options.getJfrMaxSize() * 1024L * 1024L);
+        logSink.log(Level.INFO, "Flight recording started, written to " + options.getJfrRecording() + " on exit");
+      }
+      if (options.getMetricsPort() != null) {
+        startMetricsServer(options.getMetricsPort());
+      }
+      // the last interceptor sees the calls first
+      List<ServerInterceptor> interceptors = new ArrayList<>();
+      interceptors.add(new ExceptionInterceptor());
+      interceptors.add(new MetricsInterceptor(metrics));
+      if (options.getCapture() != null) {
+        capture = RequestCapture.open(options.getCapture(), options.isCaptureContents(), logSink);
+        metrics.counter("capture_dropped_total", capture::droppedCount);
+        interceptors.add(new CaptureInterceptor(capture));
+        logSink.log(Level.INFO, "Capturing analysis requests to " + options.getCapture());
+      }
 
-      server = NettyServerBuilder.forAddress(new InetSocketAddress("localhost", port))
-        .addService(ServerInterceptors.intercept(new ConnectedSonarLintImpl(this), interceptor))
-        .addService(ServerInterceptors.intercept(new StandaloneSonarLintImpl(this, Utils.getAnalyzers(sonarlintHome)), interceptor))
+      connected = new ConnectedSonarLintImpl(this, options, metrics, logSink);
+      standalone = new StandaloneSonarLintImpl(this, options, metrics, logSink, Utils.getAnalyzers(sonarlintHome));
+      server = transport.serverBuilder()
+        .addService(ServerInterceptors.intercept(connected, interceptors))
+        .addService(ServerInterceptors.intercept(standalone, interceptors))
         .build()
         .start();
-      System.out.println("Server started, listening on " + port);
+      logSink.log(Level.INFO, "Server started, listening on " + transport);
       Runtime.getRuntime().addShutdownHook(new Thread() {
         @Override
         public void run() {
-          System.out.println("JVM is shutting down");
+          logSink.log(Level.INFO, "JVM is shutting down");
           if (!server.isShutdown()) {
             Daemon.this.stop();
           }
+          closeServices();
+          logSink.close();
         }
       });
       server.awaitTermination();
+      closeServices();
+      transport.shutdown();
     } catch (Exception e) {
       // grpc threads are daemon, so should not hang process
-      System.err.println("Error running daemon");
-      e.printStackTrace(System.err);
+      logSink.error("Error running daemon", e);
+      closeServices();
+      if (metricsServer != null) {
+        // its dispatcher thread would keep the process alive
+        metricsServer.stop();
+      }
+      logSink.close();
     }
   }
 }
@@ -19,12 +19,35 @@
  */
 package org.sonarlint.daemon;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import javax.annotation.CheckForNull;
 
 public class Options {
   private boolean help = false;
   private String port = null;
+  private String cacheSize = null;
+  private String enginePoolSize = null;
+  private String parallelMinFiles = null;
+  private String interactiveMaxFiles = null;
+  private String backgroundChunkSize = null;
+  private boolean coalesce = false;
+  private String batchWindow = null;
+  private String metricsPort = null;
+  private String jfrRecording = null;
+  private String jfrMaxSize = null;
+  private String capture = null;
+  private boolean captureContents = false;
+  private String logFile = null;
+  private String logFileSize = null;
+  private String logFileCount = null;
+  private String socket = null;
+  private boolean epoll = false;
+  private String bossThreads = null;
+  private String workerThreads = null;
+  private String flowControlWindow = null;
+  private String maxInboundMessageSize = null;
 
   public static Options parse(String[] args) throws ParseException {
     Options options = new Options();
@@ -38,6 +61,84 @@ public class Options {
         i++;
         checkAdditionalArg(i, args.length, arg);
         options.port = args[i];
+      } else if ("--cache-size".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.cacheSize = args[i];
+      } else if ("--engines".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.enginePoolSize = args[i];
+      } else if ("--parallel-min-files".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.parallelMinFiles = args[i];
+      } else if ("--interactive-max-files".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.interactiveMaxFiles = args[i];
+      } else if ("--background-chunk-size".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.backgroundChunkSize = args[i];
+      } else if ("--coalesce".equals(arg)) {
+        options.coalesce = true;
+      } else if ("--batch-window".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.batchWindow = args[i];
+      } else if ("--metrics-port".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.metricsPort = args[i];
+      } else if ("--jfr-recording".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.jfrRecording = args[i];
+      } else if ("--jfr-max-size".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.jfrMaxSize = args[i];
+      } else if ("--capture".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.capture = args[i];
+      } else if ("--capture-contents".equals(arg)) {
+        options.captureContents = true;
+      } else if ("--log-file".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.logFile = args[i];
+      } else if ("--log-file-size".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.logFileSize = args[i];
+      } else if ("--log-file-count".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.logFileCount = args[i];
+      } else if ("--socket".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.socket = args[i];
+      } else if ("--epoll".equals(arg)) {
+        options.epoll = true;
+      } else if ("--boss-threads".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.bossThreads = args[i];
+      } else if ("--worker-threads".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.workerThreads = args[i];
+      } else if ("--flow-control-window".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.flowControlWindow = args[i];
+      } else if ("--max-inbound-message-size".equals(arg)) {
+        i++;
+        checkAdditionalArg(i, args.length, arg);
+        options.maxInboundMessageSize = args[i];
       } else {
         throw new ParseException("Unrecognized option: " + arg, i);
       }
@@ -61,13 +162,187 @@ public class Options {
     return port == null ? null : Integer.parseInt(port);
   }
 
+  /**
+   * Maximum size of the analysis result cache, in MB. 0 disables the cache.
+   */
+  public int getCacheSize() {
+    return cacheSize == null ? 0 : Integer.parseInt(cacheSize);
+  }
+
+  /**
+   * Maximum number of standalone engines analyzing files concurrently.
+   */
+  public int getEnginePoolSize() {
+    return enginePoolSize == null ? 1 : Integer.parseInt(enginePoolSize);
+  }
+
+  /**
+   * Minimum number of files for an analysis to be split across idle engines. 0 disables splitting.
+   */
+  public int getParallelMinFiles() {
+    return parallelMinFiles == null ? 0 : Integer.parseInt(parallelMinFiles);
+  }
+
+  /**
+   * Maximum number of files for an analysis without explicit priority to be considered interactive.
+   */
+  public int getInteractiveMaxFiles() {
+    return interactiveMaxFiles == null ? 1 : Integer.parseInt(interactiveMaxFiles);
+  }
+
+  /**
+   * Number of files analyzed by a background analysis before giving its engine back to waiting requests. 0, the default, analyzes
+   * all the files at once: chunks are analyzed separately, so cross-file analyses of the files of different chunks are lost.
+   */
+  public int getBackgroundChunkSize() {
+    return backgroundChunkSize == null ? 0 : Integer.parseInt(backgroundChunkSize);
+  }
+
+  /**
+   * Whether a new analysis of a file supersedes the older ones of the same file still in progress.
+   */
+  public boolean isCoalesce() {
+    return coalesce;
+  }
+
+  /**
+   * Time during which concurrent interactive analyses are collected to be run by a single engine call, in milliseconds. 0 disables batching.
+   */
+  public int getBatchWindow() {
+    return batchWindow == null ? 0 : Integer.parseInt(batchWindow);
+  }
+
+  /**
+   * Local port serving metrics in the Prometheus text format, if any.
+   */
+  @CheckForNull
+  public Integer getMetricsPort() {
+    return metricsPort == null ? null : Integer.parseInt(metricsPort);
+  }
+
+  /**
+   * File to which the continuous flight recording is written when the daemon exits, if any.
+   */
+  @CheckForNull
+  public Path getJfrRecording() {
+    return jfrRecording == null ? null : Paths.get(jfrRecording);
+  }
+
+  /**
+   * Maximum size of the continuous flight recording kept on disk, in MB.
+   */
+  public int getJfrMaxSize() {
+    return jfrMaxSize == null ? 100 : Integer.parseInt(jfrMaxSize);
+  }
+
+  /**
+   * File to which incoming analysis requests are written, to replay them later, if any.
+   */
+  @CheckForNull
+  public Path getCapture() {
+    return capture == null ? null : Paths.get(capture);
+  }
+
+  /**
+   * Whether captured requests include the contents of the analyzed files.
+   */
+  public boolean isCaptureContents() {
+    return captureContents;
+  }
+
+  /**
+   * File to which logs are written when no client streams them, if any.
+   */
+  @CheckForNull
+  public Path getLogFile() {
+    return logFile == null ? null : Paths.get(logFile);
+  }
+
+  /**
+   * Size at which the log file is rolled, in MB.
+   */
+  public int getLogFileSize() {
+    return logFileSize == null ? 10 : Integer.parseInt(logFileSize);
+  }
+
+  /**
+   * Number of rolled log files kept.
+   */
+  public int getLogFileCount() {
+    return logFileCount == null ? 5 : Integer.parseInt(logFileCount);
+  }
+
+  /**
+   * Unix domain socket to listen on instead of a TCP port, if any.
+   */
+  @CheckForNull
+  public Path getSocket() {
+    return socket == null ? null : Paths.get(socket);
+  }
+
+  /**
+   * Whether the server uses the native epoll transport instead of NIO.
+   */
+  public boolean isEpoll() {
+    return epoll || socket != null;
+  }
+
+  /**
+   * Number of threads accepting connections.
+   */
+  public int getBossThreads() {
+    return bossThreads == null ? 1 : Integer.parseInt(bossThreads);
+  }
+
+  /**
+   * Number of threads serving connections, 0 for Netty's default.
+   */
+  public int getWorkerThreads() {
+    return workerThreads == null ? 0 : Integer.parseInt(workerThreads);
+  }
+
+  /**
+   * Initial HTTP/2 flow control window of each call, in KB.
+   */
+  public int getFlowControlWindow() {
+    return flowControlWindow == null ? 1024 : Integer.parseInt(flowControlWindow);
+  }
+
+  /**
+   * Largest request accepted, in MB.
+   */
+  public int getMaxInboundMessageSize() {
+    return maxInboundMessageSize == null ? 4 : Integer.parseInt(maxInboundMessageSize);
+  }
+
   public static void printUsage() {
     System.out.println("");
     System.out.println("usage: sonarlint-daemon [options]");
     System.out.println("");
     System.out.println("Options:");
-    System.out.println(" -h,--help              Display help information");
-    System.out.println(" --port <port>          Network port to listen to");
+    System.out.println(" -h,--help                        Display help information");
+    System.out.println(" --port <port>                    Network port to listen to");
+    System.out.println(" --cache-size <MB>                Size of the analysis result cache (default: 0, disabled)");
+    System.out.println(" --engines <count>                Number of standalone engines running analyses concurrently (default: 1)");
+    System.out.println(" --parallel-min-files <count>     Split analyses of at least this many files across idle engines (default: 0, disabled)");
+    System.out.println(" --interactive-max-files <count>  Analyses of at most this many files are interactive, unless the client says otherwise (default: 1)");
+    System.out.println(" --background-chunk-size <count>  Files analyzed by background analyses between two yields to interactive ones (default: 0, disabled)");
+    System.out.println(" --coalesce                       Cancel analyses of a single file when a newer analysis of the same file is requested");
+    System.out.println(" --batch-window <ms>              Merge compatible interactive analyses requested within this window (default: 0, disabled)");
+    System.out.println(" --metrics-port <port>            Serve metrics in the Prometheus text format on http://localhost:<port>/metrics");
+    System.out.println(" --jfr-recording <file>           Record flight recorder events continuously, written to this file on exit");
+    System.out.println(" --jfr-max-size <MB>              Size of the most recent recording kept on disk (default: 100)");
+    System.out.println(" --capture <file>                 Write incoming analysis requests to this file, to replay them later");
+    System.out.println(" --capture-contents               Also write the contents of the analyzed files");
+    System.out.println(" --log-file <file>                Write logs to this file when no client streams them, instead of the standard output");
+    System.out.println(" --log-file-size <MB>             Size at which the log file is compressed and a new one started (default: 10)");
+    System.out.println(" --log-file-count <count>         Number of compressed log files kept (default: 5)");
+    System.out.println(" --socket <file>                  Listen on this Unix domain socket instead of a TCP port, implies --epoll");
+    System.out.println(" --epoll                          Use the native epoll transport, only available on Linux");
+    System.out.println(" --boss-threads <count>           Threads accepting connections (default: 1)");
+    System.out.println(" --worker-threads <count>         Threads serving connections (default: 0, twice the number of processors)");
+    System.out.println(" --flow-control-window <KB>       Initial HTTP/2 flow control window of each call (default: 1024)");
+    System.out.println(" --max-inbound-message-size <MB>  Largest request accepted (default: 4)");
   }
 
 }
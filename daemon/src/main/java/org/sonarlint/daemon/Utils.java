@@ -27,8 +27,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import javax.annotation.CheckForNull;
+import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
 
 public class Utils {
   private Utils() {
@@ -52,6 +54,17 @@ public class Utils {
     return plugins;
   }
 
+  /**
+   * Identifies the analyzers loaded by an engine, so that results computed with other versions of the analyzers can be discarded.
+   */
+  public static String getAnalyzersFingerprint(Collection<PluginDetails> plugins) {
+    StringBuilder fingerprint = new StringBuilder();
+    plugins.stream()
+      .sorted(Comparator.comparing(PluginDetails::key))
+      .forEach(p -> fingerprint.append(p.key()).append(':').append(p.version()).append(';'));
+    return fingerprint.toString();
+  }
+
   public static Path getSonarLintInstallationHome() {
     if (System.getProperty("sonarlint.home") == null) {
       throw new IllegalStateException("The system property 'sonarlint.home' must be defined");
@@ -0,0 +1,90 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+
+/**
+ * Editors send a new analysis of the file being edited every few hundred milliseconds. Only the latest analysis of a given
+ * file is useful, so registering an analysis supersedes the older one of the same file (same base directory and path), whether
+ * it is still waiting for an engine or already running.
+ * Only analyses of a single file are coalesced.
+ */
+public class AnalysisCoalescer {
+  private static final Registration NONE = () -> {
+    // nothing to unregister
+  };
+
+  private final boolean enabled;
+  private final ConcurrentMap<List<String>, AnalysisMonitor> latest = new ConcurrentHashMap<>();
+  private final LongAdder registered = new LongAdder();
+  private final LongAdder superseded = new LongAdder();
+
+  public AnalysisCoalescer(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Registers an analysis, until the returned registration is closed.
+   */
+  public Registration register(String baseDir, List<InputFile> files, AnalysisMonitor monitor) {
+    if (!enabled || files.size() != 1) {
+      return NONE;
+    }
+    List<String> key = Arrays.asList(baseDir, files.get(0).getPath());
+    registered.increment();
+    AnalysisMonitor previous = latest.put(key, monitor);
+    if (previous != null) {
+      previous.supersede();
+      superseded.increment();
+    }
+    return () -> latest.remove(key, monitor);
+  }
+
+  /**
+   * Number of analyses that could be coalesced.
+   */
+  public long registeredCount() {
+    return registered.sum();
+  }
+
+  public long supersededCount() {
+    return superseded.sum();
+  }
+
+  /**
+   * Ratio of coalesced analyses that were superseded by a newer one.
+   */
+  public double coalescingRate() {
+    long count = registered.sum();
+    return count == 0 ? 0.0 : ((double) superseded.sum() / count);
+  }
+
+  @FunctionalInterface
+  public interface Registration extends AutoCloseable {
+    @Override
+    void close();
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonarlint.daemon.engine.EnginePool;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+
+/**
+ * Lets the engine stop an analysis as soon as the client cancels the call, its deadline expires, or a newer request supersedes it.
+ * Also measures the CPU and wall time spent by the threads running the analysis, and the time spent in the issue listener.
+ */
+public class AnalysisMonitor extends ProgressMonitor implements EnginePool.Cancellation {
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final Context context;
+  private final LongAdder cpuNanos = new LongAdder();
+  private final LongAdder engineNanos = new LongAdder();
+  private final LongAdder listenerNanos = new LongAdder();
+  private final List<Runnable> supersedeListeners = new CopyOnWriteArrayList<>();
+  private volatile boolean superseded = false;
+
+  public AnalysisMonitor(Context context) {
+    this.context = context;
+  }
+
+  /**
+   * Must be called from the thread running the service method, where the context of the call is attached.
+   */
+  public static AnalysisMonitor forCurrentCall() {
+    return new AnalysisMonitor(Context.current());
+  }
+
+  @Override
+  public boolean isCanceled() {
+    return superseded || context.isCancelled();
+  }
+
+  /**
+   * Lets a request waiting for an engine give up as soon as the call is cancelled, its deadline expires, or it is superseded.
+   */
+  @Override
+  public void onCancel(Runnable listener) {
+    AtomicBoolean notified = new AtomicBoolean();
+    Runnable once = () -> {
+      if (notified.compareAndSet(false, true)) {
+        listener.run();
+      }
+    };
+    supersedeListeners.add(once);
+    if (superseded) {
+      once.run();
+    }
+    context.addListener(c -> once.run(), MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Stops the analysis because a newer request made its results useless.
+   */
+  public void supersede() {
+    superseded = true;
+    supersedeListeners.forEach(Runnable::run);
+  }
+
+  public boolean isSuperseded() {
+    return superseded;
+  }
+
+  public boolean isDeadlineExceeded() {
+    Deadline deadline = context.getDeadline();
+    return deadline != null && deadline.isExpired();
+  }
+
+  /**
+   * Status reported for an analysis that was cut short.
+   */
+  public Status cancellationStatus() {
+    if (superseded) {
+      return Status.ABORTED.withDescription("Analysis superseded by a newer request for the same file");
+    }
+    if (isDeadlineExceeded()) {
+      return Status.DEADLINE_EXCEEDED.withDescription("Analysis stopped, deadline exceeded");
+    }
+    return Status.CANCELLED.withDescription("Analysis cancelled by the client");
+  }
+
+  /**
+   * Runs a task and adds the CPU time it used on the current thread, and its duration.
+   */
+  public <T> T measure(Callable<T> task) throws Exception {
+    long start = currentThreadCpuTime();
+    long wallStart = System.nanoTime();
+    try {
+      return task.call();
+    } finally {
+      engineNanos.add(System.nanoTime() - wallStart);
+      long end = currentThreadCpuTime();
+      if (start >= 0 && end >= 0) {
+        cpuNanos.add(end - start);
+      }
+    }
+  }
+
+  /**
+   * Wraps a listener to add the time spent handling issues.
+   */
+  public IssueListener timed(IssueListener listener) {
+    return issue -> {
+      long start = System.nanoTime();
+      try {
+        listener.handle(issue);
+      } finally {
+        listenerNanos.add(System.nanoTime() - start);
+      }
+    };
+  }
+
+  /**
+   * Adds CPU time measured elsewhere, for example the share of a batched analysis.
+   */
+  public void addCpuNanos(long nanos) {
+    cpuNanos.add(nanos);
+  }
+
+  /**
+   * Adds engine time measured elsewhere, for example the engine call of a batched analysis.
+   */
+  public void addEngineNanos(long nanos) {
+    engineNanos.add(nanos);
+  }
+
+  public long cpuNanos() {
+    return cpuNanos.sum();
+  }
+
+  /**
+   * Time spent in the tasks run with {@link #measure(Callable)}, summed over threads.
+   */
+  public long engineNanos() {
+    return engineNanos.sum();
+  }
+
+  public long listenerNanos() {
+    return listenerNanos.sum();
+  }
+
+  private static long currentThreadCpuTime() {
+    return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts analyses that were cut short, and estimates the CPU time that was saved by stopping them early.
+ * The estimate is based on the average CPU time per file of the analyses that completed.
+ */
+public class CancellationStats {
+  private final LongAdder completedFiles = new LongAdder();
+  private final LongAdder completedCpuNanos = new LongAdder();
+  private final LongAdder cancelled = new LongAdder();
+  private final LongAdder deadlineExceeded = new LongAdder();
+  private final LongAdder superseded = new LongAdder();
+  private final LongAdder cancelledCpuNanos = new LongAdder();
+  private final LongAdder savedCpuNanos = new LongAdder();
+
+  public void completed(int files, long cpuNanos) {
+    completedFiles.add(files);
+    completedCpuNanos.add(cpuNanos);
+  }
+
+  public void cancelled(AnalysisMonitor monitor, int files) {
+    if (monitor.isSuperseded()) {
+      superseded.increment();
+    } else if (monitor.isDeadlineExceeded()) {
+      deadlineExceeded.increment();
+    } else {
+      cancelled.increment();
+    }
+    long spent = monitor.cpuNanos();
+    cancelledCpuNanos.add(spent);
+
+    long knownFiles = completedFiles.sum();
+    if (knownFiles > 0) {
+      long expected = completedCpuNanos.sum() * files / knownFiles;
+      savedCpuNanos.add(Math.max(0, expected - spent));
+    }
+  }
+
+  public long cancelledCount() {
+    return cancelled.sum();
+  }
+
+  public long deadlineExceededCount() {
+    return deadlineExceeded.sum();
+  }
+
+  public long supersededCount() {
+    return superseded.sum();
+  }
+
+  /**
+   * CPU time spent on analyses before they were cut short.
+   */
+  public long cancelledCpuNanos() {
+    return cancelledCpuNanos.sum();
+  }
+
+  public long savedCpuNanos() {
+    return savedCpuNanos.sum();
+  }
+}
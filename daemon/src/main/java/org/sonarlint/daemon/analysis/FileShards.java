@@ -0,0 +1,106 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.sonarlint.daemon.model.InMemoryClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+
+/**
+ * Splits the files of an analysis into shards of similar total size, to be analyzed concurrently.
+ */
+public class FileShards {
+  private FileShards() {
+    // only static
+  }
+
+  /**
+   * Assigns files, biggest first, to the shard with the smallest total size so far.
+   * Returns at most {@code count} shards, none of them empty.
+   */
+  public static List<List<ClientInputFile>> partition(List<ClientInputFile> files, int count) {
+    List<Sized> sized = new ArrayList<>(files.size());
+    for (ClientInputFile f : files) {
+      sized.add(new Sized(f, sizeOf(f)));
+    }
+    sized.sort(Comparator.comparingLong((Sized s) -> s.size).reversed());
+
+    int shardCount = Math.max(1, Math.min(count, files.size()));
+    PriorityQueue<Shard> shards = new PriorityQueue<>(shardCount, Comparator.comparingLong((Shard s) -> s.totalSize).thenComparingInt(s -> s.index));
+    List<Shard> ordered = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      Shard shard = new Shard(i);
+      shards.add(shard);
+      ordered.add(shard);
+    }
+
+    for (Sized s : sized) {
+      Shard smallest = shards.poll();
+      smallest.files.add(s.file);
+      smallest.totalSize += s.size;
+      shards.add(smallest);
+    }
+
+    List<List<ClientInputFile>> result = new ArrayList<>(shardCount);
+    for (Shard shard : ordered) {
+      if (!shard.files.isEmpty()) {
+        result.add(shard.files);
+      }
+    }
+    return result;
+  }
+
+  static long sizeOf(ClientInputFile file) {
+    if (file instanceof InMemoryClientInputFile) {
+      return ((InMemoryClientInputFile) file).content().size();
+    }
+    try {
+      return Files.size(Paths.get(file.uri()));
+    } catch (IOException | RuntimeException e) {
+      return 0;
+    }
+  }
+
+  private static class Sized {
+    private final ClientInputFile file;
+    private final long size;
+
+    private Sized(ClientInputFile file, long size) {
+      this.file = file;
+      this.size = size;
+    }
+  }
+
+  private static class Shard {
+    private final int index;
+    private final List<ClientInputFile> files = new ArrayList<>();
+    private long totalSize = 0;
+
+    private Shard(int index) {
+      this.index = index;
+    }
+  }
+}
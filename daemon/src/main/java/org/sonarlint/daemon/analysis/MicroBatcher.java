@@ -0,0 +1,271 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.grpc.Context;
+import io.grpc.stub.StreamObserver;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonarlint.daemon.model.ProxyIssueListener;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+
+/**
+ * Merges small analyses requested at the same time into a single engine call, to pay the fixed cost of an analysis only once.
+ * The first request of a batch waits for the batching window, or until the batch is full, while compatible requests join it:
+ * same base directory, same properties, and no file in common. The first request then runs the whole batch. Issues are collected
+ * per request owning their file, and each request sends its own issues from its own thread once the batch is done, so that a slow
+ * client only slows down its own request. Issues not attached to a file can't be attributed to a request, and are dropped.
+ */
+public class MicroBatcher {
+  public static final int DEFAULT_MAX_FILES = 32;
+
+  private final long windowNanos;
+  private final int maxFiles;
+  private final BatchAnalyzer analyzer;
+  // guarded by this
+  private final Map<BatchKey, Batch> open = new HashMap<>();
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder requests = new LongAdder();
+
+  @FunctionalInterface
+  public interface BatchAnalyzer {
+    void analyze(Path baseDir, Map<String, String> properties, List<ClientInputFile> files, IssueListener listener, ProgressMonitor monitor) throws Exception;
+  }
+
+  public MicroBatcher(long windowMillis, BatchAnalyzer analyzer) {
+    this(windowMillis, DEFAULT_MAX_FILES, analyzer);
+  }
+
+  public MicroBatcher(long windowMillis, int maxFiles, BatchAnalyzer analyzer) {
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    this.maxFiles = maxFiles;
+    this.analyzer = analyzer;
+  }
+
+  public boolean isEnabled() {
+    return windowNanos > 0;
+  }
+
+  /**
+   * Analyzes files as part of a batch, and returns once the whole batch is analyzed and the issues of the files were sent.
+   */
+  public void analyze(Path baseDir, Map<String, String> properties, List<ClientInputFile> files, StreamObserver<Issue> observer, AnalysisMonitor monitor)
+    throws Exception {
+    BatchKey key = new BatchKey(baseDir, properties);
+    Member member = new Member(files, monitor);
+    Batch batch;
+    boolean leader;
+    synchronized (this) {
+      batch = open.get(key);
+      if (batch != null && batch.accepts(files, maxFiles)) {
+        batch.add(member);
+        leader = false;
+      } else {
+        if (batch != null && !batch.overlaps(files)) {
+          // no room left for this request: the open batch runs now, and this one is opened instead
+          close(key, batch);
+        }
+        leader = true;
+        batch = new Batch();
+        batch.add(member);
+        open.putIfAbsent(key, batch);
+      }
+      if (batch.fileCount() >= maxFiles) {
+        close(key, batch);
+      }
+    }
+
+    requests.increment();
+    if (leader) {
+      lead(key, batch);
+    }
+    try {
+      Uninterruptibles.getUninterruptibly(batch.done);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+    if (!monitor.isCanceled()) {
+      IssueListener listener = monitor.timed(new ProxyIssueListener(observer));
+      for (org.sonarsource.sonarlint.core.client.api.common.analysis.Issue issue : member.issues) {
+        listener.handle(issue);
+      }
+    }
+  }
+
+  private void lead(BatchKey key, Batch batch) {
+    try {
+      waitForMembers(key, batch);
+      batches.increment();
+      batch.run(key, analyzer);
+      batch.done.complete(null);
+    } catch (Exception e) {
+      batch.done.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Waits until the window elapsed or the batch is full. A batch that conflicts with the open one was not opened, and runs right away.
+   */
+  private synchronized void waitForMembers(BatchKey key, Batch batch) {
+    boolean interrupted = false;
+    long deadline = System.nanoTime() + windowNanos;
+    long remaining = windowNanos;
+    while (open.get(key) == batch && remaining > 0) {
+      try {
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+      remaining = deadline - System.nanoTime();
+    }
+    close(key, batch);
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void close(BatchKey key, Batch batch) {
+    open.remove(key, batch);
+    batch.closed = true;
+    notifyAll();
+  }
+
+  public long batchCount() {
+    return batches.sum();
+  }
+
+  public long requestCount() {
+    return requests.sum();
+  }
+
+  private static class Batch {
+    private final List<Member> members = new ArrayList<>();
+    private final Set<String> paths = new HashSet<>();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private boolean closed = false;
+
+    private boolean accepts(List<ClientInputFile> files, int maxFiles) {
+      return !closed && paths.size() + files.size() <= maxFiles && !overlaps(files);
+    }
+
+    private boolean overlaps(List<ClientInputFile> files) {
+      return files.stream().anyMatch(f -> paths.contains(f.getPath()));
+    }
+
+    private int fileCount() {
+      return paths.size();
+    }
+
+    private void add(Member member) {
+      members.add(member);
+      member.files.forEach(f -> paths.add(f.getPath()));
+    }
+
+    private void run(BatchKey key, BatchAnalyzer analyzer) throws Exception {
+      // files are matched by identity, since different requests may use the same client objects
+      Map<ClientInputFile, Member> owners = new IdentityHashMap<>();
+      List<ClientInputFile> files = new ArrayList<>();
+      for (Member member : members) {
+        member.files.forEach(f -> owners.put(f, member));
+        files.addAll(member.files);
+      }
+
+      IssueListener demultiplexer = issue -> {
+        Member owner = issue.getInputFile() != null ? owners.get(issue.getInputFile()) : null;
+        if (owner != null) {
+          owner.issues.add(issue);
+        }
+      };
+
+      AnalysisMonitor batchMonitor = new AnalysisMonitor(Context.ROOT) {
+        @Override
+        public boolean isCanceled() {
+          return members.stream().allMatch(m -> m.monitor.isCanceled());
+        }
+      };
+      try {
+        batchMonitor.measure(() -> {
+          analyzer.analyze(key.baseDir, key.properties, files, demultiplexer, batchMonitor);
+          return null;
+        });
+      } finally {
+        // each request waited for the whole engine call, while CPU time is shared according to their number of files
+        for (Member member : members) {
+          member.monitor.addEngineNanos(batchMonitor.engineNanos());
+          member.monitor.addCpuNanos(files.isEmpty() ? 0 : (batchMonitor.cpuNanos() * member.files.size() / files.size()));
+        }
+      }
+    }
+  }
+
+  private static class Member {
+    private final List<ClientInputFile> files;
+    private final AnalysisMonitor monitor;
+    private final List<org.sonarsource.sonarlint.core.client.api.common.analysis.Issue> issues = Collections.synchronizedList(new ArrayList<>());
+
+    private Member(List<ClientInputFile> files, AnalysisMonitor monitor) {
+      this.files = files;
+      this.monitor = monitor;
+    }
+  }
+
+  private static class BatchKey {
+    private final Path baseDir;
+    private final Map<String, String> properties;
+
+    private BatchKey(Path baseDir, Map<String, String> properties) {
+      this.baseDir = baseDir;
+      this.properties = properties;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      BatchKey other = (BatchKey) o;
+      return baseDir.equals(other.baseDir) && properties.equals(other.properties);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(baseDir, properties);
+    }
+  }
+}
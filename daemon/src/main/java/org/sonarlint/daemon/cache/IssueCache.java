@@ -0,0 +1,358 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarlint.daemon.model.InMemoryClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+
+import static com.google.common.io.BaseEncoding.base16;
+
+/**
+ * Issues found in previously analyzed files, keyed by file content, language and analysis properties.
+ * The cache is bounded by the serialized size of the issues it holds, least recently used entries being evicted first.
+ * It must be invalidated whenever the analyzers or the rules they use change.
+ */
+public class IssueCache {
+  private static final int ENTRY_OVERHEAD_BYTES = 128;
+  private static final int MAX_DISK_HASHES = 10_000;
+  private static final long RACY_MODIFICATION_MILLIS = 2_000;
+
+  @Nullable
+  private final Cache<Key, List<Issue>> cache;
+  private final Cache<String, DiskHash> diskHashes = CacheBuilder.newBuilder().maximumSize(MAX_DISK_HASHES).build();
+  private String fingerprint = "";
+
+  public IssueCache(long maxBytes) {
+    if (maxBytes > 0) {
+      cache = CacheBuilder.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher(IssueCache::weigh)
+        .recordStats()
+        .build();
+    } else {
+      cache = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  /**
+   * Invalidates all entries if the fingerprint of the analyzers changed since the last call.
+   */
+  public synchronized void setFingerprint(String fingerprint) {
+    if (!this.fingerprint.equals(fingerprint)) {
+      this.fingerprint = fingerprint;
+      invalidateAll();
+    }
+  }
+
+  public void invalidateAll() {
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  public long hitCount() {
+    return cache != null ? cache.stats().hitCount() : 0;
+  }
+
+  public long missCount() {
+    return cache != null ? cache.stats().missCount() : 0;
+  }
+
+  public long evictionCount() {
+    return cache != null ? cache.stats().evictionCount() : 0;
+  }
+
+  /**
+   * Approximate memory used by the cached entries, computed like their weight.
+   */
+  public long estimatedBytes() {
+    if (cache == null) {
+      return 0;
+    }
+    long bytes = 0;
+    for (Map.Entry<Key, List<Issue>> entry : cache.asMap().entrySet()) {
+      bytes += weigh(entry.getKey(), entry.getValue());
+    }
+    return bytes;
+  }
+
+  /**
+   * Looks up all files of an analysis. When the cache is disabled, all files are misses.
+   *
+   * @param scope identifies the configuration the files are analyzed with (for example the module key)
+   */
+  public Lookup lookup(String scope, List<ClientInputFile> files, Map<String, String> properties) throws IOException {
+    Lookup lookup = new Lookup();
+    if (cache == null) {
+      lookup.misses.addAll(files);
+      return lookup;
+    }
+
+    for (ClientInputFile file : files) {
+      Key key = new Key(scope, file, contentHash(file), properties);
+      List<Issue> issues = cache.getIfPresent(key);
+      if (issues != null) {
+        lookup.hits.put(file, issues);
+      } else {
+        lookup.misses.add(file);
+        lookup.missKeys.put(file.getPath(), key);
+      }
+    }
+    return lookup;
+  }
+
+  private static int weigh(Key key, List<Issue> issues) {
+    int weight = ENTRY_OVERHEAD_BYTES + key.weight();
+    for (Issue issue : issues) {
+      weight += issue.getSerializedSize();
+    }
+    return weight;
+  }
+
+  String contentHash(ClientInputFile file) throws IOException {
+    if (file instanceof InMemoryClientInputFile) {
+      InMemoryClientInputFile inMemory = (InMemoryClientInputFile) file;
+      if (inMemory.contentHash() != null) {
+        return "client:" + inMemory.contentHash();
+      }
+      MessageDigest digest = newDigest();
+      digest.update(inMemory.content().asReadOnlyByteBuffer());
+      return base16().lowerCase().encode(digest.digest());
+    }
+    return diskHash(Paths.get(file.getPath()));
+  }
+
+  /**
+   * Files on disk are only read again when their size or modification time changed since they were last hashed.
+   */
+  private String diskHash(Path path) throws IOException {
+    long hashedAt = System.currentTimeMillis();
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    DiskHash known = diskHashes.getIfPresent(path.toString());
+    if (known != null && known.matches(attributes)) {
+      return known.hash;
+    }
+
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = Files.newInputStream(path)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    String hash = base16().lowerCase().encode(digest.digest());
+    // a file modified just before being read could change again without its modification time changing
+    if (attributes.lastModifiedTime().toMillis() < hashedAt - RACY_MODIFICATION_MILLIS) {
+      diskHashes.put(path.toString(), new DiskHash(attributes, hash));
+    }
+    return hash;
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Result of a lookup: issues of the files that were found in the cache, and files that still need to be analyzed.
+   */
+  public class Lookup {
+    private final Map<ClientInputFile, List<Issue>> hits = new LinkedHashMap<>();
+    private final List<ClientInputFile> misses = new ArrayList<>();
+    private final Map<String, Key> missKeys = new HashMap<>();
+    private final Map<String, List<Issue>> recorded = new HashMap<>();
+    private boolean cacheable = true;
+
+    private Lookup() {
+    }
+
+    public int hitCount() {
+      return hits.size();
+    }
+
+    public List<ClientInputFile> misses() {
+      return misses;
+    }
+
+    /**
+     * Sends the cached issues, attached to the files of the current request.
+     */
+    public void replayHits(StreamObserver<Issue> observer) {
+      for (Map.Entry<ClientInputFile, List<Issue>> e : hits.entrySet()) {
+        ClientInputFile file = e.getKey();
+        for (Issue cached : e.getValue()) {
+          Issue.Builder builder = cached.toBuilder().setFilePath(file.getPath());
+          if (file.getClientObject() != null) {
+            builder.setUserObject((String) file.getClientObject());
+          }
+          observer.onNext(builder.build());
+        }
+      }
+    }
+
+    /**
+     * Returns an observer that forwards issues to the given one, and keeps them so that they can be cached once the analysis succeeded.
+     */
+    public StreamObserver<Issue> recorder(StreamObserver<Issue> observer) {
+      if (cache == null) {
+        return observer;
+      }
+      return new StreamObserver<Issue>() {
+        @Override
+        public void onNext(Issue issue) {
+          record(issue);
+          observer.onNext(issue);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          observer.onError(t);
+        }
+
+        @Override
+        public void onCompleted() {
+          observer.onCompleted();
+        }
+      };
+    }
+
+    private synchronized void record(Issue issue) {
+      Key key = missKeys.get(issue.getFilePath());
+      if (key == null) {
+        // issue not attached to an analyzed file, results can't be attributed to files
+        cacheable = false;
+        return;
+      }
+      recorded.computeIfAbsent(issue.getFilePath(), p -> new ArrayList<>())
+        .add(issue.toBuilder().clearFilePath().clearUserObject().build());
+    }
+
+    /**
+     * Stores the issues of all analyzed files, including those without any issue.
+     */
+    public synchronized void store() {
+      if (cache == null || !cacheable) {
+        return;
+      }
+      for (Map.Entry<String, Key> e : missKeys.entrySet()) {
+        List<Issue> issues = recorded.get(e.getKey());
+        cache.put(e.getValue(), issues != null ? Collections.unmodifiableList(issues) : Collections.emptyList());
+      }
+    }
+  }
+
+  private static class DiskHash {
+    private final long size;
+    private final FileTime lastModified;
+    private final String hash;
+
+    private DiskHash(BasicFileAttributes attributes, String hash) {
+      this.size = attributes.size();
+      this.lastModified = attributes.lastModifiedTime();
+      this.hash = hash;
+    }
+
+    private boolean matches(BasicFileAttributes attributes) {
+      return size == attributes.size() && lastModified.equals(attributes.lastModifiedTime());
+    }
+  }
+
+  static class Key {
+    private final String scope;
+    private final String relativePath;
+    private final String contentHash;
+    @Nullable
+    private final String language;
+    private final boolean isTest;
+    private final String charset;
+    private final Map<String, String> properties;
+
+    Key(String scope, ClientInputFile file, String contentHash, Map<String, String> properties) {
+      this.scope = scope;
+      this.relativePath = file.relativePath();
+      this.contentHash = contentHash;
+      this.language = file.language();
+      this.isTest = file.isTest();
+      this.charset = file.getCharset().name();
+      this.properties = properties;
+    }
+
+    int weight() {
+      int weight = 2 * (scope.length() + relativePath.length() + contentHash.length());
+      for (Map.Entry<String, String> e : properties.entrySet()) {
+        weight += 2 * (e.getKey().length() + e.getValue().length());
+      }
+      return weight;
+    }
+
+    @Override
+    public boolean equals(@CheckForNull Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key other = (Key) o;
+      return isTest == other.isTest
+        && contentHash.equals(other.contentHash)
+        && relativePath.equals(other.relativePath)
+        && scope.equals(other.scope)
+        && Objects.equals(language, other.language)
+        && charset.equals(other.charset)
+        && properties.equals(other.properties);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(scope, relativePath, contentHash, language, isTest, charset, properties);
+    }
+  }
+}
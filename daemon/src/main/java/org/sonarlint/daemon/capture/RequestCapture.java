@@ -0,0 +1,157 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.capture;
+
+import com.google.protobuf.ByteString;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonarlint.daemon.logging.LogSink;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.CapturedRequest;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ConnectedAnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ConnectedConfiguration;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+
+/**
+ * Writes the analysis requests received by the daemon, and the starts of the connected engine they depend on, to a log of
+ * length-delimited {@link CapturedRequest}, so that the traffic can be replayed against another build. Requests are written by a
+ * background thread, to not delay analyses, which also means that the contents of files are read shortly after the request
+ * arrived. Requests waiting to be written are bounded: when the writer falls behind, new requests are dropped and counted.
+ * Requests received once the capture is closed are ignored.
+ */
+public class RequestCapture implements Closeable {
+  static final int DEFAULT_QUEUE_SIZE = 1000;
+
+  private final OutputStream out;
+  private final boolean withContents;
+  private final LogSink logSink;
+  private final long start = System.nanoTime();
+  private final ThreadPoolExecutor writer;
+  private final LongAdder captured = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+
+  RequestCapture(OutputStream out, boolean withContents, LogSink logSink, int queueSize) {
+    this.out = out;
+    this.withContents = withContents;
+    this.logSink = logSink;
+    this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+      Thread thread = new Thread(r, "sonarlint-capture");
+      thread.setDaemon(true);
+      return thread;
+    }, (r, executor) -> {
+      if (!executor.isShutdown()) {
+        dropped.increment();
+      }
+    });
+  }
+
+  /**
+   * @param withContents whether to add the contents of the files read from disk, so that the log can be replayed without them
+   */
+  public static RequestCapture open(Path file, boolean withContents, LogSink logSink) throws IOException {
+    return new RequestCapture(new BufferedOutputStream(Files.newOutputStream(file)), withContents, logSink, DEFAULT_QUEUE_SIZE);
+  }
+
+  /**
+   * Captures a message received by a method, ignored unless it is an analysis request or the start of the connected engine.
+   */
+  public void record(String method, Object message) {
+    long arrivalNanos = System.nanoTime() - start;
+    boolean recorded = message instanceof AnalysisReq || message instanceof ConnectedAnalysisReq || message instanceof ConnectedConfiguration;
+    if (recorded && !writer.isShutdown()) {
+      writer.execute(() -> write(arrivalNanos, method, message));
+    }
+  }
+
+  public long capturedCount() {
+    return captured.sum();
+  }
+
+  /**
+   * Requests not captured because the writer was behind.
+   */
+  public long droppedCount() {
+    return dropped.sum();
+  }
+
+  private void write(long arrivalNanos, String method, Object message) {
+    CapturedRequest.Builder builder = CapturedRequest.newBuilder()
+      .setArrivalNanos(arrivalNanos)
+      .setMethod(method);
+    if (message instanceof AnalysisReq) {
+      AnalysisReq request = (AnalysisReq) message;
+      builder.setAnalysis(withContents ? request.toBuilder().clearFile().addAllFile(snapshot(request.getFileList())).build() : request);
+    } else if (message instanceof ConnectedAnalysisReq) {
+      ConnectedAnalysisReq request = (ConnectedAnalysisReq) message;
+      builder.setConnectedAnalysis(withContents ? request.toBuilder().clearFile().addAllFile(snapshot(request.getFileList())).build() : request);
+    } else {
+      builder.setConnectedStart((ConnectedConfiguration) message);
+    }
+    try {
+      builder.build().writeDelimitedTo(out);
+      out.flush();
+      captured.increment();
+    } catch (IOException e) {
+      logSink.error("Error capturing request", e);
+    }
+  }
+
+  private static List<InputFile> snapshot(List<InputFile> files) {
+    List<InputFile> snapshot = new ArrayList<>(files.size());
+    for (InputFile file : files) {
+      if (file.getContentSourceCase() == InputFile.ContentSourceCase.CONTENT) {
+        snapshot.add(file);
+        continue;
+      }
+      try {
+        snapshot.add(file.toBuilder().setContent(ByteString.copyFrom(Files.readAllBytes(Paths.get(file.getPath())))).build());
+      } catch (IOException e) {
+        // deleted since the request, replayed as is
+        snapshot.add(file);
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Writes the requests still queued, then closes the log.
+   */
+  @Override
+  public void close() throws IOException {
+    writer.shutdown();
+    try {
+      writer.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    out.close();
+  }
+}
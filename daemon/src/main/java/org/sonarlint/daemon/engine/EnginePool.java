@@ -0,0 +1,390 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.annotation.CheckForNull;
+
+/**
+ * Bounded pool of engines. Engines are created lazily, up to the size of the pool, and each one is used by a single request at a time.
+ * When all engines are in use, requests wait until one is checked in. Waiting requests are served by {@link Priority}, then in FIFO order.
+ */
+public class EnginePool<E> {
+  private final int size;
+  private final Supplier<E> factory;
+  private final Consumer<E> disposer;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Deque<E> idle = new ArrayDeque<>();
+  private final List<E> all = new ArrayList<>();
+  private final PriorityQueue<Waiter<E>> waiters = new PriorityQueue<>(
+    Comparator.comparing((Waiter<E> w) -> w.priority).thenComparingLong(w -> w.sequence));
+  private long nextSequence = 0;
+  private int reserved = 0;
+  private int inUse = 0;
+  private boolean stopped = false;
+
+  private long checkouts = 0;
+  private long saturatedCheckouts = 0;
+  private long totalWaitNanos = 0;
+  private long maxWaitNanos = 0;
+  private long maxInteractiveWaitNanos = 0;
+  private int maxWaiting = 0;
+
+  public EnginePool(int size, Supplier<E> factory, Consumer<E> disposer) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Engine pool size must be positive: " + size);
+    }
+    this.size = size;
+    this.factory = factory;
+    this.disposer = disposer;
+  }
+
+  /**
+   * Pool handing the same thread-safe engine to up to {@code concurrency} requests at a time. Requests beyond that wait, and are
+   * served by priority like with distinct engines. The engine is not stopped by the pool.
+   */
+  public static <E> EnginePool<E> shared(E engine, int concurrency) {
+    return new EnginePool<>(concurrency, () -> engine, e -> {
+      // owned by the caller
+    });
+  }
+
+  /**
+   * Creates the first engine, so that configuration problems are detected before the first request.
+   */
+  public void prestart() {
+    E engine = tryCheckout();
+    if (engine != null) {
+      checkin(engine);
+    }
+  }
+
+  /**
+   * Same as {@link #checkout(Priority)} for an interactive request.
+   */
+  public E checkout() throws InterruptedException {
+    return checkout(Priority.INTERACTIVE);
+  }
+
+  /**
+   * Same as {@link #checkout(Priority, Cancellation)} for a request that can't be cancelled.
+   */
+  public E checkout(Priority priority) throws InterruptedException {
+    return checkout(priority, Cancellation.NONE);
+  }
+
+  /**
+   * Returns an engine, waiting for one to be checked in if all of them are in use.
+   * The engine must be given back with {@link #checkin(Object)}.
+   *
+   * @throws CancellationException if the request is cancelled before it gets an engine
+   */
+  public E checkout(Priority priority, Cancellation cancellation) throws InterruptedException {
+    long start = System.nanoTime();
+    lock.lock();
+    try {
+      checkNotStopped();
+      checkNotCancelled(cancellation);
+      if (waiters.isEmpty() && !idle.isEmpty()) {
+        return take(idle.pop(), priority, 0);
+      }
+      if (!waiters.isEmpty() || !reserveSlot()) {
+        Waiter<E> waiter = await(priority, cancellation);
+        saturatedCheckouts++;
+        if (waiter.engine != null) {
+          return take(waiter.engine, priority, System.nanoTime() - start);
+        }
+        // the creation of another engine failed, and its slot was reserved for this request
+      }
+    } finally {
+      lock.unlock();
+    }
+    return create(priority, System.nanoTime() - start);
+  }
+
+  /**
+   * Returns an idle engine, creating one if the pool is not full, or null if all engines are in use or other requests are waiting.
+   */
+  @CheckForNull
+  public E tryCheckout() {
+    lock.lock();
+    try {
+      checkNotStopped();
+      if (!waiters.isEmpty()) {
+        return null;
+      }
+      if (!idle.isEmpty()) {
+        return take(idle.pop(), Priority.BACKGROUND, 0);
+      }
+      if (!reserveSlot()) {
+        return null;
+      }
+    } finally {
+      lock.unlock();
+    }
+    return create(Priority.BACKGROUND, 0);
+  }
+
+  /**
+   * Returns an engine that was already created, without checking it out, for read-only operations that can run alongside analyses.
+   * An engine is created if none was yet.
+   */
+  public E anyStarted() throws InterruptedException {
+    lock.lock();
+    try {
+      checkNotStopped();
+      if (!all.isEmpty()) {
+        return all.get(0);
+      }
+    } finally {
+      lock.unlock();
+    }
+    E engine = checkout();
+    checkin(engine);
+    return engine;
+  }
+
+  private boolean reserveSlot() {
+    if (all.size() + reserved >= size) {
+      return false;
+    }
+    reserved++;
+    return true;
+  }
+
+  /**
+   * Waits until the waiter is given an engine, or a reserved slot to create one.
+   */
+  private Waiter<E> await(Priority priority, Cancellation cancellation) throws InterruptedException {
+    Waiter<E> waiter = new Waiter<>(lock.newCondition(), priority, nextSequence++);
+    waiters.add(waiter);
+    maxWaiting = Math.max(maxWaiting, waiters.size());
+    cancellation.onCancel(() -> cancel(waiter));
+    while (waiter.engine == null && !waiter.mayCreate) {
+      if (waiter.cancelled) {
+        throw new CancellationException("Request cancelled while waiting for an engine");
+      }
+      try {
+        waiter.ready.await();
+      } catch (InterruptedException e) {
+        abandon(waiter);
+        throw e;
+      }
+      checkNotStopped();
+    }
+    return waiter;
+  }
+
+  /**
+   * Wakes a request that was cancelled while waiting, unless it was already given an engine or a slot.
+   */
+  private void cancel(Waiter<E> waiter) {
+    lock.lock();
+    try {
+      if (waiters.remove(waiter)) {
+        waiter.cancelled = true;
+        waiter.ready.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Hands what was given to a waiter that stops waiting over to the next one.
+   */
+  private void abandon(Waiter<E> waiter) {
+    waiters.remove(waiter);
+    if (waiter.engine != null) {
+      release(waiter.engine);
+    } else if (waiter.mayCreate) {
+      reserved--;
+      grantCreation();
+    }
+  }
+
+  /**
+   * Lets the first waiter create an engine, if the pool is not full. Called when a slot is freed without an engine to hand over.
+   */
+  private void grantCreation() {
+    if (!waiters.isEmpty() && reserveSlot()) {
+      Waiter<E> waiter = waiters.poll();
+      waiter.mayCreate = true;
+      waiter.ready.signal();
+    }
+  }
+
+  private E create(Priority priority, long waitNanos) {
+    E engine;
+    try {
+      engine = factory.get();
+    } catch (RuntimeException e) {
+      lock.lock();
+      try {
+        reserved--;
+        // requests that queued behind this creation would otherwise wait forever
+        grantCreation();
+      } finally {
+        lock.unlock();
+      }
+      throw e;
+    }
+    lock.lock();
+    try {
+      reserved--;
+      all.add(engine);
+      return take(engine, priority, waitNanos);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void checkin(E engine) {
+    lock.lock();
+    try {
+      inUse--;
+      if (stopped) {
+        disposer.accept(engine);
+      } else {
+        release(engine);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(E engine) {
+    Waiter<E> waiter = waiters.poll();
+    if (waiter != null) {
+      waiter.engine = engine;
+      waiter.ready.signal();
+    } else {
+      idle.push(engine);
+    }
+  }
+
+  private E take(E engine, Priority priority, long waitNanos) {
+    inUse++;
+    checkouts++;
+    totalWaitNanos += waitNanos;
+    maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    if (priority == Priority.INTERACTIVE) {
+      maxInteractiveWaitNanos = Math.max(maxInteractiveWaitNanos, waitNanos);
+    }
+    return engine;
+  }
+
+  private void checkNotStopped() {
+    if (stopped) {
+      throw new IllegalStateException("Engine pool is stopped");
+    }
+  }
+
+  private void checkNotCancelled(Cancellation cancellation) {
+    if (cancellation.isCanceled()) {
+      throw new CancellationException("Request cancelled before getting an engine");
+    }
+  }
+
+  /**
+   * Stops idle engines. Engines still in use are stopped when checked in.
+   */
+  public void stop() {
+    lock.lock();
+    try {
+      stopped = true;
+      for (E engine : idle) {
+        disposer.accept(engine);
+      }
+      idle.clear();
+      for (Waiter<E> waiter : waiters) {
+        waiter.ready.signal();
+      }
+      waiters.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public PoolStats stats() {
+    lock.lock();
+    try {
+      return new PoolStats(size, all.size(), inUse, waiters.size(), maxWaiting, checkouts, saturatedCheckouts, totalWaitNanos, maxWaitNanos,
+        maxInteractiveWaitNanos);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Cancellation of the request checking out an engine, so that it stops waiting as soon as it is cancelled.
+   */
+  public interface Cancellation {
+    Cancellation NONE = new Cancellation() {
+      @Override
+      public boolean isCanceled() {
+        return false;
+      }
+
+      @Override
+      public void onCancel(Runnable listener) {
+        // never cancelled
+      }
+    };
+
+    boolean isCanceled();
+
+    /**
+     * Registers a listener run once when the request is cancelled, or right away if it already is. It may run on any thread.
+     */
+    void onCancel(Runnable listener);
+  }
+
+  private static class Waiter<E> {
+    private final Condition ready;
+    private final Priority priority;
+    private final long sequence;
+    @CheckForNull
+    private E engine;
+    private boolean mayCreate;
+    private boolean cancelled;
+
+    private Waiter(Condition ready, Priority priority, long sequence) {
+      this.ready = ready;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.engine;
+
+/**
+ * Snapshot of the usage of an {@link EnginePool}.
+ */
+public class PoolStats {
+  private final int size;
+  private final int created;
+  private final int inUse;
+  private final int waiting;
+  private final int maxWaiting;
+  private final long checkouts;
+  private final long saturatedCheckouts;
+  private final long totalWaitNanos;
+  private final long maxWaitNanos;
+  private final long maxInteractiveWaitNanos;
+
+  PoolStats(int size, int created, int inUse, int waiting, int maxWaiting, long checkouts, long saturatedCheckouts, long totalWaitNanos,
+    long maxWaitNanos, long maxInteractiveWaitNanos) {
+    this.size = size;
+    this.created = created;
+    this.inUse = inUse;
+    this.waiting = waiting;
+    this.maxWaiting = maxWaiting;
+    this.checkouts = checkouts;
+    this.saturatedCheckouts = saturatedCheckouts;
+    this.totalWaitNanos = totalWaitNanos;
+    this.maxWaitNanos = maxWaitNanos;
+    this.maxInteractiveWaitNanos = maxInteractiveWaitNanos;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int created() {
+    return created;
+  }
+
+  public int inUse() {
+    return inUse;
+  }
+
+  /**
+   * Number of requests currently waiting for an engine.
+   */
+  public int waiting() {
+    return waiting;
+  }
+
+  public int maxWaiting() {
+    return maxWaiting;
+  }
+
+  public long checkouts() {
+    return checkouts;
+  }
+
+  /**
+   * Number of checkouts that had to wait because all engines were in use.
+   */
+  public long saturatedCheckouts() {
+    return saturatedCheckouts;
+  }
+
+  public long totalWaitNanos() {
+    return totalWaitNanos;
+  }
+
+  public long maxWaitNanos() {
+    return maxWaitNanos;
+  }
+
+  /**
+   * Longest time an interactive request waited for an engine.
+   */
+  public long maxInteractiveWaitNanos() {
+    return maxInteractiveWaitNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "engines=" + created + "/" + size + " inUse=" + inUse + " waiting=" + waiting + " maxWaiting=" + maxWaiting + " checkouts=" + checkouts
+      + " saturated=" + saturatedCheckouts + " totalWaitMs=" + (totalWaitNanos / 1_000_000) + " maxWaitMs=" + (maxWaitNanos / 1_000_000)
+      + " maxInteractiveWaitMs=" + (maxInteractiveWaitNanos / 1_000_000);
+  }
+}
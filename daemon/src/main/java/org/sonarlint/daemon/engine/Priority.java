@@ -0,0 +1,45 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.engine;
+
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisPriority;
+
+/**
+ * Order in which requests waiting for an engine are served: all interactive requests are served before background ones.
+ */
+public enum Priority {
+  INTERACTIVE,
+  BACKGROUND;
+
+  /**
+   * Priority of an analysis. When the client doesn't give one, analyses of at most {@code interactiveMaxFiles} files are interactive.
+   */
+  public static Priority of(AnalysisPriority requested, int fileCount, int interactiveMaxFiles) {
+    switch (requested) {
+      case INTERACTIVE:
+        return INTERACTIVE;
+      case BACKGROUND:
+        return BACKGROUND;
+      case AUTO:
+      default:
+        return fileCount <= interactiveMaxFiles ? INTERACTIVE : BACKGROUND;
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.interceptors;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCall.Listener;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonarlint.daemon.metrics.Histogram;
+import org.sonarlint.daemon.metrics.MetricsRegistry;
+
+/**
+ * Records, per method, the duration of calls, the time to the first response message, the number and serialized size of messages,
+ * and the status of completed calls. Only lock-free counters are updated once the metrics of a method are created.
+ */
+public class MetricsInterceptor implements ServerInterceptor {
+  private final MetricsRegistry registry;
+  private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+  public MetricsInterceptor(MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public <ReqT, RespT> Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+    MethodMetrics metrics = methods.computeIfAbsent(call.getMethodDescriptor().getFullMethodName(), m -> new MethodMetrics(registry, m));
+    MeteredServerCall<ReqT, RespT> meteredCall = new MeteredServerCall<>(call, metrics);
+    return new SimpleForwardingServerCallListener<ReqT>(next.startCall(meteredCall, headers)) {
+      @Override
+      public void onMessage(ReqT message) {
+        metrics.received(message);
+        super.onMessage(message);
+      }
+
+      @Override
+      public void onComplete() {
+        try {
+          super.onComplete();
+        } finally {
+          meteredCall.finished();
+        }
+      }
+
+      @Override
+      public void onCancel() {
+        try {
+          super.onCancel();
+        } finally {
+          meteredCall.cancelled();
+          meteredCall.finished();
+        }
+      }
+    };
+  }
+
+  static class MeteredServerCall<ReqT, RespT> extends SimpleForwardingServerCall<ReqT, RespT> {
+    private final MethodMetrics metrics;
+    private final long start = System.nanoTime();
+    // messages are sent by one thread at a time
+    private boolean firstMessageSent = false;
+    private volatile boolean closed = false;
+
+    MeteredServerCall(ServerCall<ReqT, RespT> delegate, MethodMetrics metrics) {
+      super(delegate);
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void sendMessage(RespT message) {
+      if (!firstMessageSent) {
+        firstMessageSent = true;
+        metrics.timeToFirstMessage.record(System.nanoTime() - start);
+      }
+      metrics.sent(message);
+      super.sendMessage(message);
+    }
+
+    @Override
+    public void close(Status status, Metadata trailers) {
+      closed = true;
+      metrics.closed(status);
+      super.close(status, trailers);
+    }
+
+    void cancelled() {
+      if (!closed) {
+        // cancelled by the client or by the deadline, before the service closed the call
+        closed = true;
+        metrics.closed(Status.CANCELLED);
+      }
+    }
+
+    void finished() {
+      metrics.duration.record(System.nanoTime() - start);
+    }
+  }
+
+  static class MethodMetrics {
+    private final Histogram duration;
+    private final Histogram timeToFirstMessage;
+    private final LongAdder messagesReceived;
+    private final LongAdder messagesSent;
+    private final LongAdder bytesReceived;
+    private final LongAdder bytesSent;
+    private final LongAdder[] statuses = new LongAdder[Status.Code.values().length];
+
+    MethodMetrics(MetricsRegistry registry, String method) {
+      String labels = "{method=\"" + method + "\"}";
+      this.duration = registry.histogram("rpc_duration" + labels);
+      this.timeToFirstMessage = registry.histogram("rpc_first_message_duration" + labels);
+      this.messagesReceived = registry.counter("rpc_messages_received_total" + labels);
+      this.messagesSent = registry.counter("rpc_messages_sent_total" + labels);
+      this.bytesReceived = registry.counter("rpc_bytes_received_total" + labels);
+      this.bytesSent = registry.counter("rpc_bytes_sent_total" + labels);
+      for (Status.Code code : Status.Code.values()) {
+        statuses[code.ordinal()] = registry.counter("rpc_completed_total{method=\"" + method + "\",status=\"" + bucket(code) + "\"}");
+      }
+    }
+
+    /**
+     * Groups status codes, to keep the number of counters small.
+     */
+    static String bucket(Status.Code code) {
+      switch (code) {
+        case OK:
+          return "ok";
+        case CANCELLED:
+          return "cancelled";
+        case DEADLINE_EXCEEDED:
+          return "deadline_exceeded";
+        case ABORTED:
+          return "aborted";
+        case INVALID_ARGUMENT:
+        case NOT_FOUND:
+        case ALREADY_EXISTS:
+        case PERMISSION_DENIED:
+        case UNAUTHENTICATED:
+        case FAILED_PRECONDITION:
+        case OUT_OF_RANGE:
+          return "client_error";
+        default:
+          return "server_error";
+      }
+    }
+
+    void received(Object message) {
+      messagesReceived.increment();
+      bytesReceived.add(serializedSize(message));
+    }
+
+    void sent(Object message) {
+      messagesSent.increment();
+      bytesSent.add(serializedSize(message));
+    }
+
+    void closed(Status status) {
+      statuses[status.getCode().ordinal()].increment();
+    }
+
+    private static int serializedSize(Object message) {
+      // protobuf messages cache their size, which is computed anyway to serialize them
+      return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : 0;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Analyze call, from the request to the last issue sent. Tells how the time was split between the engine, the conversion of issues
+ * and sending them to the client.
+ */
+@Name("org.sonarlint.daemon.Analysis")
+@Label("Analysis")
+@Category("SonarLint Daemon")
+@Description("Analyze call, from the request to the last issue sent")
+@StackTrace(false)
+public class AnalysisEvent extends Event {
+  @Label("Mode")
+  String mode;
+
+  @Label("Files")
+  int files;
+
+  @Label("Issues")
+  long issues;
+
+  @Label("Status")
+  String status;
+
+  @Label("Engine Time")
+  @Description("Time spent in engine calls, including the issue listener")
+  @Timespan(Timespan.NANOSECONDS)
+  long engineTime;
+
+  @Label("Issue Listener Time")
+  @Description("Time spent converting issues to protobuf and sending them")
+  @Timespan(Timespan.NANOSECONDS)
+  long issueListenerTime;
+
+  @Label("Issue Send Time")
+  @Description("Time spent sending issues, including waiting for the client to read them")
+  @Timespan(Timespan.NANOSECONDS)
+  long issueSendTime;
+
+  public void end(String mode, int files, long issues, String status, long engineTime, long issueListenerTime, long issueSendTime) {
+    if (!shouldCommit()) {
+      return;
+    }
+    this.mode = mode;
+    this.files = files;
+    this.issues = issues;
+    this.status = status;
+    this.engineTime = engineTime;
+    this.issueListenerTime = issueListenerTime;
+    this.issueSendTime = issueSendTime;
+    commit();
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.sonarlint.daemon.EngineLifecycle")
+@Label("Engine Start or Stop")
+@Category("SonarLint Daemon")
+@StackTrace(false)
+public class EngineLifecycleEvent extends Event {
+  @Label("Mode")
+  String mode;
+
+  @Label("Action")
+  String action;
+
+  public static EngineLifecycleEvent start(String mode) {
+    return begin(mode, "start");
+  }
+
+  public static EngineLifecycleEvent stop(String mode) {
+    return begin(mode, "stop");
+  }
+
+  private static EngineLifecycleEvent begin(String mode, String action) {
+    EngineLifecycleEvent event = new EngineLifecycleEvent();
+    event.mode = mode;
+    event.action = action;
+    event.begin();
+    return event;
+  }
+}
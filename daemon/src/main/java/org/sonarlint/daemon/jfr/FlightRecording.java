@@ -0,0 +1,52 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.jfr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Continuous recording with the low-overhead "default" settings. Only the last chunks are kept on disk, within the given size, and
+ * the recording is written to the destination when the JVM exits. It can also be dumped at any time with
+ * {@code jcmd <pid> JFR.dump name=sonarlint-daemon filename=<file>}.
+ */
+public class FlightRecording {
+  public static final String NAME = "sonarlint-daemon";
+
+  private FlightRecording() {
+    // only static
+  }
+
+  public static Recording start(Path destination, long maxSizeBytes) throws IOException, ParseException {
+    Recording recording = new Recording(Configuration.getConfiguration("default"));
+    recording.setName(NAME);
+    recording.setToDisk(true);
+    recording.setMaxSize(maxSizeBytes);
+    recording.setMaxAge(Duration.ofHours(24));
+    recording.setDumpOnExit(true);
+    recording.setDestination(destination);
+    recording.start();
+    return recording;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.jfr;
+
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Logs sent to a client after waiting long in its queue, because the client did not read them fast enough.
+ */
+@Name("org.sonarlint.daemon.LogStreamStall")
+@Label("Log Stream Stall")
+@Category("SonarLint Daemon")
+@Description("Logs waited for a slow client before being sent")
+@StackTrace(false)
+public class LogStreamStallEvent extends Event {
+  static final long THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  @Label("Events")
+  int events;
+
+  @Label("Wait Time")
+  @Description("Time the oldest log of the batch waited in the queue of the client")
+  @Timespan(Timespan.NANOSECONDS)
+  long waitTime;
+
+  /**
+   * Records a batch of logs if its oldest log waited for more than 10 ms.
+   */
+  public static void sent(int events, long waitNanos) {
+    if (waitNanos < THRESHOLD_NANOS) {
+      return;
+    }
+    LogStreamStallEvent event = new LogStreamStallEvent();
+    if (event.shouldCommit()) {
+      event.events = events;
+      event.waitTime = waitNanos;
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.logging;
+
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+
+/**
+ * Prints logs to the standard output, errors to the standard error, on the calling thread.
+ */
+public class ConsoleLogSink implements LogSink {
+  @Override
+  public void log(Level level, String message) {
+    if (level == Level.ERROR) {
+      System.err.println("[" + level.name() + "] " + message);
+    } else {
+      System.out.println("[" + level.name() + "] " + message);
+    }
+  }
+
+  @Override
+  public void close() {
+    System.out.flush();
+    System.err.flush();
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.logging;
+
+import com.google.common.base.Throwables;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+
+/**
+ * Where the logs go when no client streams them, and the diagnostics of the daemon itself.
+ */
+public interface LogSink {
+  void log(Level level, String message);
+
+  default void error(String message, Throwable t) {
+    log(Level.ERROR, message + System.lineSeparator() + Throwables.getStackTraceAsString(t));
+  }
+
+  /**
+   * Writes what is pending. Logs received afterwards may be lost.
+   */
+  void close();
+}
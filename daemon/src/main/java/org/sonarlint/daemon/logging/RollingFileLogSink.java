@@ -0,0 +1,214 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+
+/**
+ * Appends logs to a file from a background thread, so that logging threads never wait on the disk. When the queue is full, logs
+ * are dropped and the number of dropped logs is written instead. When the file reaches its maximum size, it is compressed to
+ * {@code <file>.1.gz}, older files are shifted to {@code <file>.2.gz} and so on, and the oldest is deleted.
+ */
+public class RollingFileLogSink implements LogSink {
+  static final int QUEUE_CAPACITY = 10_000;
+  private static final long CLOSE_TIMEOUT_MILLIS = 5_000;
+  private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  private final Path file;
+  private final long maxBytes;
+  private final int maxFiles;
+  private final BlockingQueue<Entry> queue;
+  private final LongAdder dropped = new LongAdder();
+  private final Thread writer;
+  private volatile boolean closed = false;
+
+  // only used by the writer thread
+  private OutputStream out;
+  private long size;
+  private long droppedWritten;
+
+  RollingFileLogSink(Path file, long maxBytes, int maxFiles, int queueCapacity) throws IOException {
+    this.file = file.toAbsolutePath();
+    this.maxBytes = maxBytes;
+    this.maxFiles = maxFiles;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    Files.createDirectories(this.file.getParent());
+    openFile();
+    this.writer = new Thread(this::writeLogs, "sonarlint-log-file");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * @param maxFiles number of rotated files kept
+   */
+  public static RollingFileLogSink open(Path file, long maxBytes, int maxFiles) throws IOException {
+    return new RollingFileLogSink(file, maxBytes, maxFiles, QUEUE_CAPACITY);
+  }
+
+  @Override
+  public void log(Level level, String message) {
+    if (closed || !queue.offer(new Entry(System.currentTimeMillis(), level, message))) {
+      dropped.increment();
+    }
+  }
+
+  public long droppedCount() {
+    return dropped.sum();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      writer.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeLogs() {
+    try {
+      while (!closed || !queue.isEmpty()) {
+        Entry entry = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (entry == null) {
+          continue;
+        }
+        do {
+          write(entry);
+          entry = queue.poll();
+        } while (entry != null);
+        long droppedTotal = dropped.sum();
+        if (droppedTotal > droppedWritten) {
+          write(new Entry(System.currentTimeMillis(), Level.WARN, (droppedTotal - droppedWritten) + " logs were dropped, the log file could not keep up"));
+          droppedWritten = droppedTotal;
+        }
+        flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      closeFile();
+    }
+  }
+
+  private void write(Entry entry) {
+    try {
+      if (out == null) {
+        openFile();
+      }
+      byte[] line = entry.format().getBytes(StandardCharsets.UTF_8);
+      out.write(line);
+      out.write(LINE_SEPARATOR);
+      size += line.length + LINE_SEPARATOR.length;
+      if (size >= maxBytes) {
+        roll();
+      }
+    } catch (IOException e) {
+      // nowhere else to log it
+      System.err.println("Error writing log file " + file);
+      e.printStackTrace(System.err);
+      closeFile();
+    }
+  }
+
+  private void flush() {
+    try {
+      if (out != null) {
+        out.flush();
+      }
+    } catch (IOException e) {
+      System.err.println("Error writing log file " + file);
+      e.printStackTrace(System.err);
+      closeFile();
+    }
+  }
+
+  private void openFile() throws IOException {
+    out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+    size = Files.size(file);
+  }
+
+  private void closeFile() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      System.err.println("Error closing log file " + file);
+      e.printStackTrace(System.err);
+    }
+    out = null;
+  }
+
+  void roll() throws IOException {
+    closeFile();
+    if (maxFiles > 0) {
+      Files.deleteIfExists(rotated(maxFiles));
+      for (int i = maxFiles - 1; i >= 1; i--) {
+        if (Files.exists(rotated(i))) {
+          Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      try (InputStream in = Files.newInputStream(file);
+        OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(rotated(1)))) {
+        in.transferTo(gzip);
+      }
+    }
+    Files.delete(file);
+    openFile();
+  }
+
+  Path rotated(int index) {
+    return file.resolveSibling(file.getFileName() + "." + index + ".gz");
+  }
+
+  private static class Entry {
+    private final long timestamp;
+    private final Level level;
+    private final String message;
+
+    private Entry(long timestamp, Level level, String message) {
+      this.timestamp = timestamp;
+      this.level = level;
+      this.message = message;
+    }
+
+    private String format() {
+      return Instant.ofEpochMilli(timestamp) + " [" + level.name() + "] " + message;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+
+/**
+ * Latencies and throughput of the analyses of a service.
+ * The engine doesn't report its progress, so the end of file indexing is detected from the log it writes, on the thread running the
+ * analysis, once files are indexed: "1 file indexed" or "N files indexed". The rest of an engine call is spent executing sensors.
+ * The integration tests check that an analysis still records its indexing time, in case the engine changes this log.
+ */
+public class AnalysisMetrics {
+  private static final Pattern INDEXED_LOG = Pattern.compile("\\d+ files? indexed");
+
+  private final Histogram duration;
+  private final Histogram engineDuration;
+  private final Histogram indexing;
+  private final Histogram sensors;
+  private final Histogram streaming;
+  private final LongAdder analyses;
+  private final LongAdder files;
+  private final LongAdder issues;
+  // start of the current engine call of the thread, and end of its file indexing
+  private final ThreadLocal<long[]> engineCall = ThreadLocal.withInitial(() -> new long[2]);
+
+  public AnalysisMetrics(MetricsRegistry registry, String mode) {
+    String labels = "{mode=\"" + mode + "\"}";
+    this.duration = registry.histogram("analysis_duration" + labels);
+    this.engineDuration = registry.histogram("analysis_engine_duration" + labels);
+    this.indexing = registry.histogram("analysis_indexing_duration" + labels);
+    this.sensors = registry.histogram("analysis_sensors_duration" + labels);
+    this.streaming = registry.histogram("analysis_streaming_duration" + labels);
+    this.analyses = registry.counter("analysis_total" + labels);
+    this.files = registry.counter("analysis_files_total" + labels);
+    this.issues = registry.counter("analysis_issues_total" + labels);
+  }
+
+  /**
+   * Log output to give to the engine, to detect the end of file indexing.
+   */
+  public LogOutput wrap(LogOutput delegate) {
+    return (formattedMessage, level) -> {
+      logged(formattedMessage);
+      delegate.log(formattedMessage, level);
+    };
+  }
+
+  private void logged(String message) {
+    long[] call = engineCall.get();
+    if (call[0] != 0 && call[1] == 0 && INDEXED_LOG.matcher(message).matches()) {
+      call[1] = System.nanoTime();
+      indexing.record(call[1] - call[0]);
+    }
+  }
+
+  /**
+   * Runs an engine call on the current thread and records the time spent in each of its phases.
+   */
+  public <T> T timeEngine(Callable<T> engineCallTask) throws Exception {
+    long[] call = engineCall.get();
+    call[0] = System.nanoTime();
+    call[1] = 0;
+    try {
+      return engineCallTask.call();
+    } finally {
+      long end = System.nanoTime();
+      if (call[1] != 0) {
+        sensors.record(end - call[1]);
+      }
+      engineDuration.record(end - call[0]);
+      call[0] = 0;
+    }
+  }
+
+  /**
+   * Wraps the stream of issues of an analysis, to record the time spent sending them.
+   */
+  public MeteredStreamObserver meter(StreamObserver<Issue> observer) {
+    return new MeteredStreamObserver(observer);
+  }
+
+  /**
+   * Records a completed analysis request, including files served from the cache.
+   */
+  public void analyzed(int fileCount, long durationNanos) {
+    analyses.increment();
+    files.add(fileCount);
+    duration.record(durationNanos);
+  }
+
+  public class MeteredStreamObserver implements StreamObserver<Issue> {
+    private final StreamObserver<Issue> delegate;
+    private long sendingNanos = 0;
+    private long count = 0;
+
+    private MeteredStreamObserver(StreamObserver<Issue> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void onNext(Issue value) {
+      long start = System.nanoTime();
+      try {
+        delegate.onNext(value);
+      } finally {
+        sendingNanos += System.nanoTime() - start;
+        count++;
+        issues.increment();
+      }
+    }
+
+    public long sendingNanos() {
+      return sendingNanos;
+    }
+
+    public long count() {
+      return count;
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      delegate.onError(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      long start = System.nanoTime();
+      delegate.onCompleted();
+      streaming.record(sendingNanos + System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import com.sun.management.ThreadMXBean;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.netty.util.internal.PlatformDependent;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReport;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReport.ClassHistogramEntry;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReport.NettyMemory;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReq;
+
+/**
+ * Memory used by the JVM, Netty and the components of the daemon. Everything but the class histogram comes from counters maintained
+ * by the JVM, so building a report is cheap. Components register their approximate size as gauges named with
+ * {@link #componentGauge(String)}. Engines are too large to be measured, they instead register the bytes allocated while they
+ * loaded, with {@link #loadAllocationGauge(String)}: an upper bound of what they retain, as part of it is garbage.
+ */
+public class MemoryReports {
+  static final int DEFAULT_CLASS_HISTOGRAM_SIZE = 50;
+  private static final String COMPONENT_PREFIX = "memory_retained_bytes{component=\"";
+  private static final String LOAD_ALLOCATION_PREFIX = "memory_load_allocated_bytes{component=\"";
+  private static final Pattern CLASS_HISTOGRAM_LINE = Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+)");
+
+  private MemoryReports() {
+    // only static
+  }
+
+  public static String componentGauge(String component) {
+    return COMPONENT_PREFIX + component + "\"}";
+  }
+
+  public static String loadAllocationGauge(String component) {
+    return LOAD_ALLOCATION_PREFIX + component + "\"}";
+  }
+
+  /**
+   * Bytes allocated so far by the current thread, -1 when the JVM doesn't count them.
+   */
+  public static long allocatedBytes() {
+    Object threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof ThreadMXBean && ((ThreadMXBean) threads).isThreadAllocatedMemoryEnabled()) {
+      return ((ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  public static MemoryReport toProto(MetricsRegistry registry, MemoryReq request) throws JMException {
+    MemoryReport.Builder builder = MemoryReport.newBuilder()
+      .setHeap(usage(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()))
+      .setNonHeap(usage(ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage()));
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      MemoryReport.MemoryPool.Builder poolBuilder = MemoryReport.MemoryPool.newBuilder()
+        .setName(pool.getName())
+        .setType(pool.getType().name())
+        .setUsage(usage(pool.getUsage()))
+        .setPeak(usage(pool.getPeakUsage()));
+      if (pool.getCollectionUsage() != null) {
+        poolBuilder.setAfterLastCollection(usage(pool.getCollectionUsage()));
+      }
+      builder.addPool(poolBuilder);
+    }
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      MemoryReport.GarbageCollector.Builder gcBuilder = MemoryReport.GarbageCollector.newBuilder()
+        .setName(gc.getName())
+        .setCollectionCount(gc.getCollectionCount())
+        .setCollectionTimeMillis(gc.getCollectionTime());
+      for (String pool : gc.getMemoryPoolNames()) {
+        gcBuilder.addPool(pool);
+      }
+      builder.addGarbageCollector(gcBuilder);
+    }
+    for (BufferPoolMXBean buffers : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      builder.addBufferPool(MemoryReport.BufferPool.newBuilder()
+        .setName(buffers.getName())
+        .setCount(buffers.getCount())
+        .setUsed(buffers.getMemoryUsed())
+        .setCapacity(buffers.getTotalCapacity()));
+    }
+    builder.setNetty(netty());
+    for (Map.Entry<String, LongSupplier> gauge : registry.gauges().entrySet()) {
+      String name = gauge.getKey();
+      if (name.startsWith(COMPONENT_PREFIX)) {
+        builder.addComponent(component(name, COMPONENT_PREFIX, gauge.getValue()));
+      } else if (name.startsWith(LOAD_ALLOCATION_PREFIX)) {
+        builder.addLoadAllocation(component(name, LOAD_ALLOCATION_PREFIX, gauge.getValue()));
+      }
+    }
+    if (request.getClassHistogram()) {
+      int size = request.getClassHistogramSize() > 0 ? request.getClassHistogramSize() : DEFAULT_CLASS_HISTOGRAM_SIZE;
+      builder.addAllClassHistogram(classHistogram(size));
+    }
+    return builder.build();
+  }
+
+  private static MemoryReport.Component component(String gauge, String prefix, LongSupplier bytes) {
+    return MemoryReport.Component.newBuilder()
+      .setName(gauge.substring(prefix.length(), gauge.length() - 2))
+      .setBytes(bytes.getAsLong())
+      .build();
+  }
+
+  private static MemoryReport.MemoryUsage usage(MemoryUsage usage) {
+    return MemoryReport.MemoryUsage.newBuilder()
+      .setUsed(usage.getUsed())
+      .setCommitted(usage.getCommitted())
+      .setMax(usage.getMax())
+      .build();
+  }
+
+  static NettyMemory netty() {
+    NettyMemory.Builder builder = NettyMemory.newBuilder()
+      .setDirectUsed(PlatformDependent.usedDirectMemory())
+      .setDirectMax(PlatformDependent.maxDirectMemory());
+    ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+    if (allocator instanceof PooledByteBufAllocator) {
+      PooledByteBufAllocatorMetric metric = ((PooledByteBufAllocator) allocator).metric();
+      builder.setPooledDirect(metric.usedDirectMemory())
+        .setPooledHeap(metric.usedHeapMemory())
+        .setDirectArenas(metric.numDirectArenas())
+        .setHeapArenas(metric.numHeapArenas())
+        .setThreadLocalCaches(metric.numThreadLocalCaches())
+        .setChunkSize(metric.chunkSize());
+    } else {
+      builder.setPooledDirect(-1).setPooledHeap(-1);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Same as {@code jcmd <pid> GC.class_histogram}, which inspects the whole heap.
+   */
+  static List<ClassHistogramEntry> classHistogram(int size) throws JMException {
+    Object histogram = ManagementFactory.getPlatformMBeanServer().invoke(new ObjectName("com.sun.management:type=DiagnosticCommand"),
+      "gcClassHistogram", new Object[] {new String[0]}, new String[] {String[].class.getName()});
+    return parseClassHistogram((String) histogram, size);
+  }
+
+  static List<ClassHistogramEntry> parseClassHistogram(String histogram, int size) {
+    List<ClassHistogramEntry> entries = new ArrayList<>(size);
+    for (String line : histogram.split("\n")) {
+      Matcher matcher = CLASS_HISTOGRAM_LINE.matcher(line);
+      if (matcher.find()) {
+        entries.add(ClassHistogramEntry.newBuilder()
+          .setClassName(matcher.group(3))
+          .setInstances(Long.parseLong(matcher.group(1)))
+          .setBytes(Long.parseLong(matcher.group(2)))
+          .build());
+        if (entries.size() == size) {
+          break;
+        }
+      }
+    }
+    return entries;
+  }
+}
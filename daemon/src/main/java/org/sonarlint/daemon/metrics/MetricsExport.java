@@ -0,0 +1,55 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Metrics;
+
+public class MetricsExport {
+  private MetricsExport() {
+    // only static
+  }
+
+  public static Metrics toProto(MetricsRegistry registry) {
+    Metrics.Builder builder = Metrics.newBuilder();
+    for (Map.Entry<String, LongSupplier> e : registry.counters().entrySet()) {
+      builder.addCounter(Metrics.Counter.newBuilder().setName(e.getKey()).setValue(e.getValue().getAsLong()));
+    }
+    for (Map.Entry<String, LongSupplier> e : registry.gauges().entrySet()) {
+      builder.addGauge(Metrics.Gauge.newBuilder().setName(e.getKey()).setValue(e.getValue().getAsLong()));
+    }
+    for (Map.Entry<String, Histogram> e : registry.histograms().entrySet()) {
+      Histogram.Snapshot snapshot = e.getValue().snapshot();
+      Metrics.Histogram.Builder histogram = Metrics.Histogram.newBuilder()
+        .setName(e.getKey())
+        .setCount(snapshot.count())
+        .setSum(snapshot.sum())
+        .setMax(snapshot.max())
+        .setP50(snapshot.percentile(0.5))
+        .setP90(snapshot.percentile(0.9))
+        .setP99(snapshot.percentile(0.99))
+        .setP999(snapshot.percentile(0.999));
+      snapshot.forEachBucket((upperBound, count) -> histogram.addBucket(Metrics.Bucket.newBuilder().setUpperBound(upperBound).setCount(count)));
+      builder.addHistogram(histogram);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import org.sonarlint.daemon.logging.LogSink;
+
+/**
+ * Serves metrics in the Prometheus text format on http://localhost:port/metrics.
+ */
+public class MetricsHttpServer {
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final HttpServer server;
+  private final PrometheusExporter exporter;
+  private final LogSink logSink;
+
+  private MetricsHttpServer(HttpServer server, PrometheusExporter exporter, LogSink logSink) {
+    this.server = server;
+    this.exporter = exporter;
+    this.logSink = logSink;
+  }
+
+  public static MetricsHttpServer start(int port, MetricsRegistry registry, LogSink logSink) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    MetricsHttpServer metricsServer = new MetricsHttpServer(server, new PrometheusExporter(registry), logSink);
+    server.createContext("/metrics", metricsServer::handle);
+    server.start();
+    return metricsServer;
+  }
+
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      StringWriter text = new StringWriter();
+      exporter.write(text);
+      byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } catch (IOException | RuntimeException e) {
+      logSink.error("Error serving metrics", e);
+      throw e;
+    } finally {
+      exchange.close();
+    }
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+}
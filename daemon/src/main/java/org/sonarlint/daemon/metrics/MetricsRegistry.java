@@ -0,0 +1,83 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of the daemon, shared by both services. Names may carry labels, in the Prometheus way: {@code rpc_duration{method="..."}}.
+ * Histograms and counters should be looked up once and kept by the code updating them, so that updates don't allocate.
+ */
+public class MetricsRegistry {
+  private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> adders = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongSupplier> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+  public Histogram histogram(String name) {
+    return histograms.computeIfAbsent(name, n -> new Histogram());
+  }
+
+  public LongAdder counter(String name) {
+    return adders.computeIfAbsent(name, n -> {
+      LongAdder adder = new LongAdder();
+      counters.put(n, adder::sum);
+      return adder;
+    });
+  }
+
+  /**
+   * Registers a counter maintained elsewhere. It must only increase.
+   */
+  public void counter(String name, LongSupplier value) {
+    counters.put(name, value);
+  }
+
+  public void gauge(String name, LongSupplier value) {
+    gauges.put(name, value);
+  }
+
+  /**
+   * Unregisters the metrics with this name, for metrics of components that are gone.
+   */
+  public void remove(String name) {
+    histograms.remove(name);
+    adders.remove(name);
+    counters.remove(name);
+    gauges.remove(name);
+  }
+
+  public SortedMap<String, Histogram> histograms() {
+    return new TreeMap<>(histograms);
+  }
+
+  public SortedMap<String, LongSupplier> counters() {
+    return new TreeMap<>(counters);
+  }
+
+  public SortedMap<String, LongSupplier> gauges() {
+    return new TreeMap<>(gauges);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Writes metrics in the Prometheus text format. Durations, recorded in nanoseconds, are exported in seconds, and histograms with
+ * fixed buckets so that they can be aggregated over time. Rates, such as files or issues per second, are computed by Prometheus
+ * from the counters.
+ */
+public class PrometheusExporter {
+  private static final String NANOS_SUFFIX = "_nanos_total";
+  private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+  private static final double[] BUCKETS_SECONDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+  private final MetricsRegistry registry;
+
+  public PrometheusExporter(MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  public void write(Writer writer) throws IOException {
+    writeValues(writer, registry.counters(), "counter");
+    writeValues(writer, registry.gauges(), "gauge");
+    writeHistograms(writer);
+    writeJvm(writer);
+  }
+
+  private static void writeValues(Writer writer, SortedMap<String, LongSupplier> metrics, String type) throws IOException {
+    for (Map.Entry<String, List<Map.Entry<String, LongSupplier>>> entry : byFamily(metrics).entrySet()) {
+      String family = entry.getKey();
+      boolean nanos = family.endsWith(NANOS_SUFFIX);
+      String exportedFamily = nanos ? (family.substring(0, family.length() - NANOS_SUFFIX.length()) + "_seconds_total") : family;
+      writer.write("# TYPE " + exportedFamily + " " + type + "\n");
+      for (Map.Entry<String, LongSupplier> metric : entry.getValue()) {
+        long value = metric.getValue().getAsLong();
+        writer.write(exportedFamily + labels(metric.getKey()) + " " + (nanos ? Double.toString(value / NANOS_PER_SECOND) : Long.toString(value)) + "\n");
+      }
+    }
+  }
+
+  private void writeHistograms(Writer writer) throws IOException {
+    for (Map.Entry<String, List<Map.Entry<String, Histogram>>> family : byFamily(registry.histograms()).entrySet()) {
+      String name = family.getKey() + "_seconds";
+      writer.write("# TYPE " + name + " histogram\n");
+      for (Map.Entry<String, Histogram> metric : family.getValue()) {
+        Histogram.Snapshot snapshot = metric.getValue().snapshot();
+        String labels = labels(metric.getKey());
+        String labelPrefix = labels.isEmpty() ? "{" : (labels.substring(0, labels.length() - 1) + ",");
+        for (double bucket : BUCKETS_SECONDS) {
+          long count = snapshot.countAtMost((long) (bucket * NANOS_PER_SECOND));
+          writer.write(name + "_bucket" + labelPrefix + "le=\"" + bucket + "\"} " + count + "\n");
+        }
+        writer.write(name + "_bucket" + labelPrefix + "le=\"+Inf\"} " + snapshot.count() + "\n");
+        writer.write(name + "_sum" + labels + " " + (snapshot.sum() / NANOS_PER_SECOND) + "\n");
+        writer.write(name + "_count" + labels + " " + snapshot.count() + "\n");
+      }
+    }
+  }
+
+  private static void writeJvm(Writer writer) throws IOException {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    MemoryUsage heap = memory.getHeapMemoryUsage();
+    MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+    writer.write("# TYPE jvm_memory_bytes_used gauge\n");
+    writer.write("jvm_memory_bytes_used{area=\"heap\"} " + heap.getUsed() + "\n");
+    writer.write("jvm_memory_bytes_used{area=\"nonheap\"} " + nonHeap.getUsed() + "\n");
+    writer.write("# TYPE jvm_memory_bytes_committed gauge\n");
+    writer.write("jvm_memory_bytes_committed{area=\"heap\"} " + heap.getCommitted() + "\n");
+    writer.write("jvm_memory_bytes_committed{area=\"nonheap\"} " + nonHeap.getCommitted() + "\n");
+    writer.write("# TYPE jvm_memory_bytes_max gauge\n");
+    writer.write("jvm_memory_bytes_max{area=\"heap\"} " + heap.getMax() + "\n");
+
+    List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    writer.write("# TYPE jvm_gc_collections_total counter\n");
+    for (GarbageCollectorMXBean gc : collectors) {
+      writer.write("jvm_gc_collections_total{gc=\"" + gc.getName() + "\"} " + Math.max(0, gc.getCollectionCount()) + "\n");
+    }
+    writer.write("# TYPE jvm_gc_collection_seconds_total counter\n");
+    for (GarbageCollectorMXBean gc : collectors) {
+      writer.write("jvm_gc_collection_seconds_total{gc=\"" + gc.getName() + "\"} " + (Math.max(0, gc.getCollectionTime()) / 1000.0) + "\n");
+    }
+
+    writer.write("# TYPE jvm_threads_current gauge\n");
+    writer.write("jvm_threads_current " + ManagementFactory.getThreadMXBean().getThreadCount() + "\n");
+  }
+
+  /**
+   * Groups metrics by name without labels, since Prometheus expects all the series of a metric to follow its TYPE line.
+   */
+  private static <T> Map<String, List<Map.Entry<String, T>>> byFamily(SortedMap<String, T> metrics) {
+    Map<String, List<Map.Entry<String, T>>> families = new LinkedHashMap<>();
+    for (Map.Entry<String, T> metric : metrics.entrySet()) {
+      families.computeIfAbsent(family(metric.getKey()), f -> new ArrayList<>()).add(metric);
+    }
+    return families;
+  }
+
+  static String family(String name) {
+    int labels = name.indexOf('{');
+    return labels < 0 ? name : name.substring(0, labels);
+  }
+
+  static String labels(String name) {
+    int labels = name.indexOf('{');
+    return labels < 0 ? "" : name.substring(labels);
+  }
+}
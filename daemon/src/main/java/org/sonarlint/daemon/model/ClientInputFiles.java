@@ -0,0 +1,55 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile.ContentSourceCase;
+
+import static com.google.common.base.Strings.emptyToNull;
+
+public class ClientInputFiles {
+  private ClientInputFiles() {
+    // only static
+  }
+
+  public static List<ClientInputFile> toClientInputFiles(Path baseDir, List<InputFile> requestFiles) {
+    List<ClientInputFile> files = new ArrayList<>(requestFiles.size());
+    for (InputFile f : requestFiles) {
+      files.add(toClientInputFile(baseDir, f));
+    }
+    return files;
+  }
+
+  public static ClientInputFile toClientInputFile(Path baseDir, InputFile f) {
+    Path path = Paths.get(f.getPath());
+    Charset charset = Charset.forName(f.getCharset());
+    if (f.getContentSourceCase() == ContentSourceCase.CONTENT) {
+      return new InMemoryClientInputFile(baseDir, path, f.getIsTest(), charset, f.getUserObject(), emptyToNull(f.getLanguage()),
+        f.getContent(), emptyToNull(f.getContentHash()));
+    }
+    return new DefaultClientInputFile(baseDir, path, f.getIsTest(), charset, f.getUserObject(), emptyToNull(f.getLanguage()));
+  }
+}
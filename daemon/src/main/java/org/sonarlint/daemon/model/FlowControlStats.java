@@ -0,0 +1,46 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent by analyzers waiting for slow clients to read the issues that were found.
+ */
+public class FlowControlStats {
+  private final LongAdder blockedNanos = new LongAdder();
+  private final LongAdder blockedCount = new LongAdder();
+
+  void blocked(long nanos) {
+    blockedNanos.add(nanos);
+    blockedCount.increment();
+  }
+
+  public long blockedNanos() {
+    return blockedNanos.sum();
+  }
+
+  /**
+   * Number of times a producer was paused because the queue of a client was full.
+   */
+  public long blockedCount() {
+    return blockedCount.sum();
+  }
+}
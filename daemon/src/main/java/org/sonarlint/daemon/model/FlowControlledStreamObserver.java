@@ -0,0 +1,164 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Only sends messages when the transport is ready to accept them, instead of letting gRPC buffer them without limit.
+ * Messages produced while the client is not ready are queued. When the queue is full, the producing thread is paused until
+ * the client catches up, and the time spent waiting is counted.
+ * <p>
+ * The onReady and onCancel handlers run on the executor of the call, which the producing thread usually occupies, so a paused
+ * producer polls the transport and the cancellation of the call itself instead of waiting for the handlers.
+ */
+public class FlowControlledStreamObserver<T> implements StreamObserver<T> {
+  public static final int DEFAULT_CAPACITY = 1000;
+  private static final long POLL_MILLIS = 10;
+
+  private final ServerCallStreamObserver<T> delegate;
+  private final int capacity;
+  private final FlowControlStats stats;
+  private final Context context;
+  private final Deque<T> queue = new ArrayDeque<>();
+  private boolean completed = false;
+  private boolean closed = false;
+  private boolean cancelled = false;
+  private long blockedNanos = 0;
+
+  FlowControlledStreamObserver(ServerCallStreamObserver<T> delegate, int capacity, FlowControlStats stats) {
+    this.delegate = delegate;
+    this.capacity = capacity;
+    this.stats = stats;
+    this.context = Context.current();
+    delegate.setOnReadyHandler(this::onReady);
+    delegate.setOnCancelHandler(this::onCancel);
+  }
+
+  /**
+   * Must be called by the service method before it returns. Observers that are not server call observers (in tests for example) are returned as is.
+   */
+  public static <T> StreamObserver<T> wrap(StreamObserver<T> observer, FlowControlStats stats) {
+    if (observer instanceof ServerCallStreamObserver) {
+      return new FlowControlledStreamObserver<>((ServerCallStreamObserver<T>) observer, DEFAULT_CAPACITY, stats);
+    }
+    return observer;
+  }
+
+  @Override
+  public synchronized void onNext(T value) {
+    drain();
+    if (isCancelled()) {
+      // client is gone, nobody will read it
+      return;
+    }
+    if (queue.size() >= capacity) {
+      waitForRoom();
+      if (cancelled) {
+        return;
+      }
+    }
+    if (queue.isEmpty() && delegate.isReady()) {
+      delegate.onNext(value);
+    } else {
+      queue.add(value);
+    }
+  }
+
+  private void waitForRoom() {
+    long start = System.nanoTime();
+    try {
+      while (queue.size() >= capacity && !isCancelled()) {
+        wait(POLL_MILLIS);
+        drain();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Status.CANCELLED.withDescription("Interrupted while waiting for the client").withCause(e).asRuntimeException();
+    } finally {
+      long blocked = System.nanoTime() - start;
+      blockedNanos += blocked;
+      stats.blocked(blocked);
+    }
+  }
+
+  private boolean isCancelled() {
+    if (!cancelled && (delegate.isCancelled() || context.isCancelled())) {
+      // the cancel handler may not have run yet
+      onCancel();
+    }
+    return cancelled;
+  }
+
+  private synchronized void onReady() {
+    drain();
+    notifyAll();
+  }
+
+  private synchronized void onCancel() {
+    cancelled = true;
+    queue.clear();
+    notifyAll();
+  }
+
+  private void drain() {
+    while (!queue.isEmpty() && delegate.isReady()) {
+      delegate.onNext(queue.poll());
+    }
+    if (completed && !closed && queue.isEmpty()) {
+      closed = true;
+      delegate.onCompleted();
+    }
+  }
+
+  /**
+   * Completes the call once all queued messages were sent.
+   */
+  @Override
+  public synchronized void onCompleted() {
+    completed = true;
+    if (!cancelled) {
+      drain();
+    }
+  }
+
+  @Override
+  public synchronized void onError(Throwable t) {
+    queue.clear();
+    closed = true;
+    delegate.onError(t);
+  }
+
+  /**
+   * Time spent by the producer waiting for the client since this observer was created.
+   */
+  public synchronized long blockedNanos() {
+    return blockedNanos;
+  }
+
+  synchronized int queued() {
+    return queue.size();
+  }
+}
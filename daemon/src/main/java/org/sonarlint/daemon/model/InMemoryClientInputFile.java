@@ -0,0 +1,62 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import com.google.protobuf.ByteString;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Input file whose content was sent by the client (for example an unsaved editor buffer), instead of being read from disk.
+ * The content is shared with the request message and never copied.
+ */
+public class InMemoryClientInputFile extends DefaultClientInputFile {
+  private final ByteString content;
+  private final String contentHash;
+
+  public InMemoryClientInputFile(Path baseDir, Path path, boolean isTest, Charset charset, String userObject, @Nullable String language,
+    ByteString content, @Nullable String contentHash) {
+    super(baseDir, path, isTest, charset, userObject, language);
+    this.content = content;
+    this.contentHash = contentHash;
+  }
+
+  @Override
+  public InputStream inputStream() {
+    return content.newInput();
+  }
+
+  @Override
+  public String contents() {
+    return content.toString(getCharset());
+  }
+
+  public ByteString content() {
+    return content;
+  }
+
+  @CheckForNull
+  public String contentHash() {
+    return contentHash;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import io.grpc.stub.StreamObserver;
+import java.util.HashMap;
+import java.util.Map;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.BatchedIssue;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.IssueBatch;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.IssueBatch.FileEntry;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.IssueBatch.RuleEntry;
+
+/**
+ * Groups issues in {@link IssueBatch} messages, where rule keys, rule names and file paths are sent only once per stream.
+ */
+public class IssueBatcher implements StreamObserver<Issue> {
+  public static final int DEFAULT_BATCH_SIZE = 500;
+
+  private final StreamObserver<IssueBatch> delegate;
+  private final int batchSize;
+  private final Map<String, Integer> ruleIds = new HashMap<>();
+  private final Map<String, Integer> fileIds = new HashMap<>();
+  private IssueBatch.Builder batch = IssueBatch.newBuilder();
+
+  public IssueBatcher(StreamObserver<IssueBatch> delegate) {
+    this(delegate, DEFAULT_BATCH_SIZE);
+  }
+
+  IssueBatcher(StreamObserver<IssueBatch> delegate, int batchSize) {
+    this.delegate = delegate;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void onNext(Issue issue) {
+    batch.addIssue(BatchedIssue.newBuilder()
+      .setSeverity(issue.getSeverity())
+      .setType(issue.getType())
+      .setStartLine(issue.getStartLine())
+      .setStartLineOffset(issue.getStartLineOffset())
+      .setEndLine(issue.getEndLine())
+      .setEndLineOffset(issue.getEndLineOffset())
+      .setMessage(issue.getMessage())
+      .setRuleId(ruleId(issue))
+      .setFileId(fileId(issue)));
+
+    if (batch.getIssueCount() >= batchSize) {
+      flush();
+    }
+  }
+
+  private int ruleId(Issue issue) {
+    Integer id = ruleIds.get(issue.getRuleKey());
+    if (id == null) {
+      id = ruleIds.size() + 1;
+      ruleIds.put(issue.getRuleKey(), id);
+      batch.addNewRule(RuleEntry.newBuilder()
+        .setKey(issue.getRuleKey())
+        .setName(issue.getRuleName()));
+    }
+    return id;
+  }
+
+  private int fileId(Issue issue) {
+    if (issue.getFilePath().isEmpty()) {
+      return 0;
+    }
+    Integer id = fileIds.get(issue.getFilePath());
+    if (id == null) {
+      id = fileIds.size() + 1;
+      fileIds.put(issue.getFilePath(), id);
+      batch.addNewFile(FileEntry.newBuilder()
+        .setPath(issue.getFilePath())
+        .setUserObject(issue.getUserObject()));
+    }
+    return id;
+  }
+
+  private void flush() {
+    if (batch.getIssueCount() > 0) {
+      delegate.onNext(batch.build());
+      batch = IssueBatch.newBuilder();
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    delegate.onError(t);
+  }
+
+  @Override
+  public void onCompleted() {
+    flush();
+    delegate.onCompleted();
+  }
+}
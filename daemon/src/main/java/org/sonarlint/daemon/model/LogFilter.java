@@ -0,0 +1,124 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import io.grpc.Status;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogSubscription;
+
+/**
+ * Logs a subscriber wants to receive. The level is checked by the logging thread, before the log is queued. The pattern and the
+ * rate limit are checked when the log is dispatched to the subscriber.
+ */
+public class LogFilter {
+  private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final boolean[] enabledLevels = new boolean[Level.values().length];
+  private final LogEvent.Level minLevel;
+  @Nullable
+  private final Pattern pattern;
+  private final int maxEventsPerSecond;
+
+  // only used while dispatching logs, which is done by one thread at a time
+  private long windowStart;
+  private int windowCount;
+  private long suppressed;
+  private long suppressedSince;
+
+  LogFilter(LogEvent.Level minLevel, @Nullable Pattern pattern, int maxEventsPerSecond) {
+    for (Level level : Level.values()) {
+      enabledLevels[level.ordinal()] = LogEvent.Level.valueOf(level.name()).getNumber() <= minLevel.getNumber();
+    }
+    this.minLevel = minLevel;
+    this.pattern = pattern;
+    this.maxEventsPerSecond = maxEventsPerSecond;
+  }
+
+  public static LogFilter all() {
+    return new LogFilter(LogEvent.Level.TRACE, null, 0);
+  }
+
+  public static LogFilter of(LogSubscription subscription) {
+    LogEvent.Level minLevel = subscription.getLevelFilterCase() == LogSubscription.LevelFilterCase.MIN_LEVEL
+      ? subscription.getMinLevel()
+      : LogEvent.Level.TRACE;
+    Pattern pattern = null;
+    if (!subscription.getPattern().isEmpty()) {
+      try {
+        pattern = Pattern.compile(subscription.getPattern());
+      } catch (PatternSyntaxException e) {
+        throw Status.INVALID_ARGUMENT.withDescription("Invalid log pattern: " + e.getMessage()).withCause(e).asRuntimeException();
+      }
+    }
+    return new LogFilter(minLevel, pattern, subscription.getMaxEventsPerSecond());
+  }
+
+  public boolean isEnabled(Level level) {
+    return enabledLevels[level.ordinal()];
+  }
+
+  public boolean isEnabled(LogEvent.Level level) {
+    return level.getNumber() <= minLevel.getNumber();
+  }
+
+  /**
+   * @param nanoTime current {@link System#nanoTime()}
+   */
+  public boolean accept(String message, long nanoTime) {
+    if (pattern != null && !pattern.matcher(message).find()) {
+      return false;
+    }
+    if (maxEventsPerSecond == 0) {
+      return true;
+    }
+    if (windowCount == 0 || nanoTime - windowStart >= SECOND_NANOS) {
+      windowStart = nanoTime;
+      windowCount = 0;
+    }
+    if (windowCount < maxEventsPerSecond) {
+      windowCount++;
+      return true;
+    }
+    if (suppressed == 0) {
+      suppressedSince = nanoTime;
+    }
+    suppressed++;
+    return false;
+  }
+
+  /**
+   * Summary of the logs dropped by the rate limit, a second after the first of them was dropped.
+   */
+  @CheckForNull
+  public String takeNotice(long nanoTime) {
+    if (suppressed == 0 || nanoTime - suppressedSince < SECOND_NANOS) {
+      return null;
+    }
+    String notice = suppressed + " logs were not sent, above the limit of " + maxEventsPerSecond + " logs per second";
+    suppressed = 0;
+    return notice;
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+
+/**
+ * Bounded lock-free queue of logs, written by any thread. Each slot carries a sequence number telling whether it is ready to be
+ * written or read, so that producers and consumers only contend on a compare-and-set of the tail or head (D. Vyukov's bounded
+ * queue). Logs are stored in place, without allocating an entry per log.
+ */
+public class LogRing {
+  private final int mask;
+  private final AtomicLongArray sequences;
+  private final String[] messages;
+  private final Level[] levels;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * @param capacity rounded up to a power of two
+   */
+  public LogRing(int capacity) {
+    int size = capacity <= 2 ? 2 : (Integer.highestOneBit(capacity - 1) << 1);
+    this.mask = size - 1;
+    this.sequences = new AtomicLongArray(size);
+    this.messages = new String[size];
+    this.levels = new Level[size];
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @return false if the ring is full
+   */
+  public boolean offer(String message, Level level) {
+    long pos = tail.get();
+    while (true) {
+      int index = (int) (pos & mask);
+      long available = sequences.get(index) - pos;
+      if (available == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          messages[index] = message;
+          levels[index] = level;
+          // publishes the slot to consumers
+          sequences.set(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (available < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest log and gives it to the consumer.
+   * @return false if the ring is empty
+   */
+  public boolean poll(BiConsumer<String, Level> consumer) {
+    long pos = head.get();
+    while (true) {
+      int index = (int) (pos & mask);
+      long available = sequences.get(index) - (pos + 1);
+      if (available == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          String message = messages[index];
+          Level level = levels[index];
+          messages[index] = null;
+          levels[index] = null;
+          // gives the slot back to producers, one lap later
+          sequences.set(index, pos + mask + 1);
+          consumer.accept(message, level);
+          return true;
+        }
+        pos = head.get();
+      } else if (available < 0) {
+        return false;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  public int size() {
+    long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(size, capacity()));
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+}
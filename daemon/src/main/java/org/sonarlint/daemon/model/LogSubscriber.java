@@ -0,0 +1,164 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonarlint.daemon.jfr.LogStreamStallEvent;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogBatch;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
+
+/**
+ * A client streaming the logs, either one {@link LogEvent} per message or in {@link LogBatch}. Logs are queued until the transport
+ * is ready to accept them. When the queue is full, the oldest logs are dropped, so that a slow client never holds back the log
+ * sender or the other clients.
+ */
+class LogSubscriber {
+  static final int DEFAULT_CAPACITY = 4096;
+
+  // only one of them is set
+  @Nullable
+  private final StreamObserver<LogEvent> events;
+  @Nullable
+  private final StreamObserver<LogBatch> batches;
+  private final LogFilter filter;
+  private final int capacity;
+  private final Deque<Queued> queue = new ArrayDeque<>();
+  private long dropped = 0;
+  private boolean closed = false;
+
+  private LogSubscriber(@Nullable StreamObserver<LogEvent> events, @Nullable StreamObserver<LogBatch> batches, LogFilter filter, int capacity,
+    Consumer<LogSubscriber> onCancel) {
+    this.events = events;
+    this.batches = batches;
+    this.filter = filter;
+    this.capacity = capacity;
+    ServerCallStreamObserver<?> serverObserver = serverObserver();
+    if (serverObserver != null) {
+      serverObserver.setOnReadyHandler(this::flush);
+      serverObserver.setOnCancelHandler(() -> {
+        close();
+        onCancel.accept(this);
+      });
+    }
+  }
+
+  static LogSubscriber unbatched(StreamObserver<LogEvent> observer, LogFilter filter, int capacity, Consumer<LogSubscriber> onCancel) {
+    return new LogSubscriber(observer, null, filter, capacity, onCancel);
+  }
+
+  static LogSubscriber batched(StreamObserver<LogBatch> observer, LogFilter filter, int capacity, Consumer<LogSubscriber> onCancel) {
+    return new LogSubscriber(null, observer, filter, capacity, onCancel);
+  }
+
+  LogFilter filter() {
+    return filter;
+  }
+
+  /**
+   * @param now when the log is queued, from {@link System#nanoTime()}
+   */
+  synchronized void offer(LogEvent log, long now) {
+    if (closed) {
+      return;
+    }
+    if (queue.size() >= capacity) {
+      queue.poll();
+      dropped++;
+    }
+    queue.add(new Queued(log, now));
+  }
+
+  /**
+   * Logs dropped before reaching this subscriber.
+   */
+  synchronized void dropped(long count) {
+    dropped += count;
+  }
+
+  synchronized int queued() {
+    return queue.size();
+  }
+
+  /**
+   * Sends the queued logs, as long as the transport accepts them.
+   * @throws io.grpc.StatusRuntimeException if the stream is broken
+   */
+  synchronized void flush() {
+    while (!closed && !queue.isEmpty() && isReady()) {
+      long waited = System.nanoTime() - queue.peek().queuedAt;
+      LogStreamStallEvent.sent(batches != null ? sendBatch(batches) : sendEvent(events), waited);
+    }
+  }
+
+  private int sendBatch(StreamObserver<LogBatch> observer) {
+    LogBatch.Builder batch = LogBatch.newBuilder().setDropped(dropped);
+    while (batch.getEventCount() < ProxyLogOutput.MAX_BATCH_SIZE && !queue.isEmpty()) {
+      batch.addEvent(queue.poll().log);
+    }
+    dropped = 0;
+    observer.onNext(batch.build());
+    return batch.getEventCount();
+  }
+
+  /**
+   * Without batches to carry it, the number of dropped logs is sent as a log of its own.
+   */
+  private int sendEvent(StreamObserver<LogEvent> observer) {
+    if (dropped > 0) {
+      observer.onNext(ProxyLogOutput.toProto(dropped + " logs were not sent, the client could not keep up", Level.WARN));
+      dropped = 0;
+    }
+    observer.onNext(queue.poll().log);
+    return 1;
+  }
+
+  private boolean isReady() {
+    ServerCallStreamObserver<?> serverObserver = serverObserver();
+    return serverObserver == null || serverObserver.isReady();
+  }
+
+  @CheckForNull
+  private ServerCallStreamObserver<?> serverObserver() {
+    StreamObserver<?> observer = batches != null ? batches : events;
+    return observer instanceof ServerCallStreamObserver ? (ServerCallStreamObserver<?>) observer : null;
+  }
+
+  synchronized void close() {
+    closed = true;
+    queue.clear();
+  }
+
+  private static class Queued {
+    private final LogEvent log;
+    private final long queuedAt;
+
+    private Queued(LogEvent log, long queuedAt) {
+      this.log = log;
+      this.queuedAt = queuedAt;
+    }
+  }
+}
@@ -19,46 +19,350 @@
  */
 package org.sonarlint.daemon.model;
 
+import com.google.common.base.Throwables;
 import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
-import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 import org.sonarlint.daemon.Daemon;
+import org.sonarlint.daemon.logging.ConsoleLogSink;
+import org.sonarlint.daemon.logging.LogSink;
 import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogBatch;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
 
+/**
+ * Streams logs to any number of clients. Logging threads only put the log in a {@link LogRing}, a single sender thread filters
+ * the logs and dispatches them to the queue of each {@link LogSubscriber}, building messages only for the logs a subscriber accepts.
+ * If the sender does not keep up, the oldest logs are dropped rather than blocking the analysis. Levels no client subscribed to are
+ * filtered out before being queued, see {@link LogFilter}.
+ * <p>
+ * The most recent logs are kept so that clients joining late can get them first. Without subscribers, the sender gives logs to
+ * a {@link LogSink}. Once {@link #close() closed}, logs are given to the {@link LogSink} directly.
+ */
 public class ProxyLogOutput implements LogOutput {
+  static final int DEFAULT_CAPACITY = 8192;
+  static final int DEFAULT_REPLAY_SIZE = 1000;
+  static final int MAX_BATCH_SIZE = 256;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final LogEvent.Level[] LEVELS = new LogEvent.Level[Level.values().length];
+  private static final boolean[] ALL_LEVELS = new boolean[Level.values().length];
+
+  static {
+    for (Level level : Level.values()) {
+      LEVELS[level.ordinal()] = LogEvent.Level.valueOf(level.name());
+    }
+    Arrays.fill(ALL_LEVELS, true);
+  }
+
   private final Daemon daemon;
-  private StreamObserver<LogEvent> response;
+  private final LogSink fallback;
+  private final LogRing ring;
+  private final LongAdder dropped = new LongAdder();
+  private final Thread sender;
+  private final BiConsumer<String, Level> discard = (message, level) -> dropped.increment();
+  private final List<LogSubscriber> subscribers = new CopyOnWriteArrayList<>();
+  private volatile boolean[] enabledLevels = ALL_LEVELS;
+  private volatile boolean senderWaiting;
+  private volatile boolean running = true;
+
+  // guarded by itself, also orders the dispatch of logs with new subscriptions
+  private final RecentLogs replay;
+
+  // only used by the sender thread
+  private final String[] chunkMessages = new String[MAX_BATCH_SIZE];
+  private final Level[] chunkLevels = new Level[MAX_BATCH_SIZE];
+  private final LogEvent[] chunkEvents = new LogEvent[MAX_BATCH_SIZE];
+  private int chunkSize;
+  private final BiConsumer<String, Level> addToChunk = (message, level) -> {
+    chunkMessages[chunkSize] = message;
+    chunkLevels[chunkSize] = level;
+    chunkSize++;
+  };
+  private long droppedSent;
 
   public ProxyLogOutput(Daemon daemon) {
+    this(daemon, new ConsoleLogSink());
+  }
+
+  public ProxyLogOutput(Daemon daemon, LogSink fallback) {
+    this(daemon, fallback, DEFAULT_CAPACITY, DEFAULT_REPLAY_SIZE);
+  }
+
+  public ProxyLogOutput(Daemon daemon, LogSink fallback, int capacity, int replaySize) {
     this.daemon = daemon;
+    this.fallback = fallback;
+    this.ring = new LogRing(capacity);
+    this.replay = new RecentLogs(replaySize);
+    this.sender = new Thread(this::sendLogs, "sonarlint-log-sender");
+    sender.setDaemon(true);
+    sender.start();
   }
 
-  public void setObserver(@Nullable StreamObserver<LogEvent> response) {
-    if (this.response != null) {
-      this.response.onCompleted();
+  public void subscribe(StreamObserver<LogEvent> observer) {
+    subscribe(observer, LogFilter.all(), 0);
+  }
+
+  /**
+   * Streams logs one by one. Must be called by the service method before it returns.
+   * @param replayCount number of recent logs to send first, among those accepted by the filter
+   */
+  public void subscribe(StreamObserver<LogEvent> observer, LogFilter filter, int replayCount) {
+    subscribe(LogSubscriber.unbatched(observer, filter, LogSubscriber.DEFAULT_CAPACITY, this::streamClosed), replayCount);
+  }
+
+  public void subscribeBatched(StreamObserver<LogBatch> observer) {
+    subscribeBatched(observer, LogFilter.all(), 0);
+  }
+
+  /**
+   * Streams logs in batches. Must be called by the service method before it returns.
+   * @param replayCount number of recent logs to send first, among those accepted by the filter
+   */
+  public void subscribeBatched(StreamObserver<LogBatch> observer, LogFilter filter, int replayCount) {
+    subscribe(LogSubscriber.batched(observer, filter, LogSubscriber.DEFAULT_CAPACITY, this::streamClosed), replayCount);
+  }
+
+  private void subscribe(LogSubscriber subscriber, int replayCount) {
+    LogFilter filter = subscriber.filter();
+    synchronized (replay) {
+      if (replayCount > 0) {
+        long now = System.nanoTime();
+        replay.forEachLast(replayCount, (message, level) -> {
+          if (filter.isEnabled(level) && filter.accept(message, now)) {
+            subscriber.offer(toProto(message, level), now);
+          }
+        });
+      }
+      subscribers.add(subscriber);
+      updateEnabledLevels();
     }
-    this.response = response;
+    send(subscriber);
+  }
+
+  private void unsubscribe(LogSubscriber subscriber) {
+    synchronized (replay) {
+      subscribers.remove(subscriber);
+      updateEnabledLevels();
+    }
+  }
+
+  private void updateEnabledLevels() {
+    if (subscribers.isEmpty()) {
+      enabledLevels = ALL_LEVELS;
+      return;
+    }
+    boolean[] enabled = new boolean[Level.values().length];
+    for (LogSubscriber subscriber : subscribers) {
+      for (Level level : Level.values()) {
+        enabled[level.ordinal()] |= subscriber.filter().isEnabled(level);
+      }
+    }
+    enabledLevels = enabled;
   }
 
   @Override
-  public synchronized void log(String formattedMessage, Level level) {
-    if (response != null) {
-      LogEvent log = LogEvent.newBuilder()
-        .setLevel(level.name())
-        .setLog(formattedMessage)
-        .setIsDebug(level == Level.DEBUG || level == Level.TRACE)
-        .build();
-      try {
-        response.onNext(log);
-      } catch (StatusRuntimeException e) {
-        System.err.println("Log stream closed, stopping server");
-        e.printStackTrace(System.err);
-        response = null;
-        daemon.stop();
+  public void log(String formattedMessage, Level level) {
+    if (!running) {
+      fallback.log(level, formattedMessage);
+      return;
+    }
+    if (!enabledLevels[level.ordinal()]) {
+      return;
+    }
+    while (!ring.offer(formattedMessage, level)) {
+      ring.poll(discard);
+    }
+    if (senderWaiting) {
+      LockSupport.unpark(sender);
+    }
+  }
+
+  public void error(String message, Throwable t) {
+    log(message + System.lineSeparator() + Throwables.getStackTraceAsString(t), Level.ERROR);
+  }
+
+  /**
+   * Logs waiting to be dispatched to the subscribers.
+   */
+  public long backlog() {
+    return ring.size();
+  }
+
+  public long droppedCount() {
+    return dropped.sum();
+  }
+
+  public int subscriberCount() {
+    return subscribers.size();
+  }
+
+  /**
+   * Sends the logs still in the ring, then stops the sender thread. Subscribers get what their transport accepts, the
+   * {@link LogSink} gets the logs if there is no subscriber.
+   */
+  public void close() {
+    running = false;
+    LockSupport.unpark(sender);
+    if (Thread.currentThread() == sender) {
+      // closed by a subscriber while the sender dispatched logs, it stops on its own
+      return;
+    }
+    try {
+      sender.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void sendLogs() {
+    while (running) {
+      if (sendChunk() == 0) {
+        awaitLogs();
+      }
+    }
+    // logs offered before the close, some possibly still being written
+    while (sendChunk() > 0 || !ring.isEmpty()) {
+      Thread.onSpinWait();
+    }
+  }
+
+  private int sendChunk() {
+    for (int i = 0; i < MAX_BATCH_SIZE && ring.poll(addToChunk); i++) {
+      // drain
+    }
+    long droppedTotal = dropped.sum();
+    dispatch(droppedTotal - droppedSent);
+    droppedSent = droppedTotal;
+    int sent = chunkSize;
+    Arrays.fill(chunkMessages, 0, sent, null);
+    Arrays.fill(chunkEvents, 0, sent, null);
+    chunkSize = 0;
+    return sent;
+  }
+
+  private void dispatch(long newlyDropped) {
+    long now = System.nanoTime();
+    synchronized (replay) {
+      for (int i = 0; i < chunkSize; i++) {
+        replay.add(chunkMessages[i], chunkLevels[i]);
+      }
+      if (subscribers.isEmpty()) {
+        for (int i = 0; i < chunkSize; i++) {
+          fallback.log(chunkLevels[i], chunkMessages[i]);
+        }
+        return;
+      }
+      for (LogSubscriber subscriber : subscribers) {
+        LogFilter filter = subscriber.filter();
+        subscriber.dropped(newlyDropped);
+        for (int i = 0; i < chunkSize; i++) {
+          if (filter.isEnabled(chunkLevels[i]) && filter.accept(chunkMessages[i], now)) {
+            subscriber.offer(chunkEvent(i), now);
+          }
+        }
+        String notice = filter.takeNotice(now);
+        if (notice != null) {
+          subscriber.offer(toProto(notice, Level.WARN), now);
+        }
       }
+    }
+    for (LogSubscriber subscriber : subscribers) {
+      send(subscriber);
+    }
+  }
+
+  /**
+   * Message of a log of the chunk, built once for all the subscribers accepting it.
+   */
+  private LogEvent chunkEvent(int index) {
+    LogEvent event = chunkEvents[index];
+    if (event == null) {
+      event = toProto(chunkMessages[index], chunkLevels[index]);
+      chunkEvents[index] = event;
+    }
+    return event;
+  }
+
+  private void awaitLogs() {
+    senderWaiting = true;
+    // checked after announcing the wait, so that a log offered meanwhile either is seen here or unparks the sender
+    if (ring.isEmpty()) {
+      LockSupport.parkNanos(this, IDLE_PARK_NANOS);
     } else {
-      System.out.println("[" + level.name() + "] " + formattedMessage);
+      // a producer is still writing its slot
+      Thread.onSpinWait();
+    }
+    senderWaiting = false;
+  }
+
+  private void send(LogSubscriber subscriber) {
+    try {
+      subscriber.flush();
+    } catch (StatusRuntimeException e) {
+      fallback.error("Log stream closed", e);
+      subscriber.close();
+      streamClosed(subscriber);
+    }
+  }
+
+  /**
+   * The daemon stops when no client is streaming the logs anymore.
+   */
+  private void streamClosed(LogSubscriber subscriber) {
+    unsubscribe(subscriber);
+    if (subscribers.isEmpty()) {
+      fallback.log(Level.INFO, "No more log stream, stopping server");
+      daemon.stop();
+    }
+  }
+
+  static LogEvent toProto(String message, Level level) {
+    return LogEvent.newBuilder()
+      .setLevel(level.name())
+      .setSeverity(LEVELS[level.ordinal()])
+      .setLog(message)
+      .setIsDebug(level == Level.DEBUG || level == Level.TRACE)
+      .build();
+  }
+
+  /**
+   * Most recent logs, kept as logged so that messages are only built for the logs replayed to a new subscriber.
+   */
+  private static final class RecentLogs {
+    private final String[] messages;
+    private final Level[] levels;
+    private int next;
+    private int size;
+
+    private RecentLogs(int capacity) {
+      this.messages = new String[capacity];
+      this.levels = new Level[capacity];
+    }
+
+    private void add(String message, Level level) {
+      if (messages.length == 0) {
+        return;
+      }
+      messages[next] = message;
+      levels[next] = level;
+      next = (next + 1) % messages.length;
+      size = Math.min(size + 1, messages.length);
+    }
+
+    /**
+     * Visits the {@code count} most recent logs, oldest first.
+     */
+    private void forEachLast(int count, BiConsumer<String, Level> consumer) {
+      for (int i = Math.min(count, size); i > 0; i--) {
+        int index = Math.floorMod(next - i, messages.length);
+        consumer.accept(messages[index], levels[index]);
+      }
     }
   }
 }
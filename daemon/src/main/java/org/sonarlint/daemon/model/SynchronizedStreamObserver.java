@@ -0,0 +1,48 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * gRPC observers are not thread-safe. This one can be shared by threads analyzing files concurrently.
+ */
+public class SynchronizedStreamObserver<T> implements StreamObserver<T> {
+  private final StreamObserver<T> delegate;
+
+  public SynchronizedStreamObserver(StreamObserver<T> delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public synchronized void onNext(T value) {
+    delegate.onNext(value);
+  }
+
+  @Override
+  public synchronized void onError(Throwable t) {
+    delegate.onError(t);
+  }
+
+  @Override
+  public synchronized void onCompleted() {
+    delegate.onCompleted();
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.profiling;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Profile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ProfileReq;
+
+/**
+ * Samples the stacks of the daemon threads with {@link ThreadMXBean}, and aggregates them as collapsed stacks, the input format of
+ * flame graph tools. Threads of a pool are merged by removing the number at the end of their names.
+ * <p>
+ * To be safe in production, a single profile runs at a time, for at most a minute, stacks are truncated, and the sampling interval
+ * is doubled whenever taking samples costs more than 2% of the time of the thread running the profile.
+ */
+public class SamplingProfiler {
+  static final long DEFAULT_DURATION_MILLIS = 10_000;
+  static final long MAX_DURATION_MILLIS = 60_000;
+  static final long DEFAULT_INTERVAL_MILLIS = 20;
+  static final long MIN_INTERVAL_MILLIS = 10;
+  static final long MAX_INTERVAL_MILLIS = 1_000;
+  static final double MAX_OVERHEAD = 0.02;
+  static final int MAX_DEPTH = 128;
+  static final int MAX_STACKS = 20_000;
+
+  private static final AtomicBoolean RUNNING = new AtomicBoolean();
+  private static final Pattern THREAD_NUMBER = Pattern.compile("[-#]?\\d+$");
+
+  private final ThreadMXBean threads;
+
+  public SamplingProfiler() {
+    this(ManagementFactory.getThreadMXBean());
+  }
+
+  SamplingProfiler(ThreadMXBean threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * Samples on the calling thread until the duration elapses or the call is cancelled.
+   */
+  public Profile profile(ProfileReq request) throws InterruptedException {
+    if (!RUNNING.compareAndSet(false, true)) {
+      throw Status.RESOURCE_EXHAUSTED.withDescription("A profile is already running").asRuntimeException();
+    }
+    try {
+      long durationMillis = request.getDurationMillis() > 0 ? Math.min(request.getDurationMillis(), MAX_DURATION_MILLIS) : DEFAULT_DURATION_MILLIS;
+      long intervalMillis = request.getIntervalMillis() > 0
+        ? Math.min(Math.max(request.getIntervalMillis(), MIN_INTERVAL_MILLIS), MAX_INTERVAL_MILLIS)
+        : DEFAULT_INTERVAL_MILLIS;
+      return sample(TimeUnit.MILLISECONDS.toNanos(durationMillis), TimeUnit.MILLISECONDS.toNanos(intervalMillis), request.getIncludeWaiting());
+    } finally {
+      RUNNING.set(false);
+    }
+  }
+
+  private Profile sample(long durationNanos, long initialIntervalNanos, boolean includeWaiting) throws InterruptedException {
+    Context context = Context.current();
+    long self = Thread.currentThread().getId();
+    Map<String, Integer> stacks = new TreeMap<>();
+    long intervalNanos = initialIntervalNanos;
+    long samplingNanos = 0;
+    int samples = 0;
+
+    long start = System.nanoTime();
+    long end = start + durationNanos;
+    long next = start;
+    while (next < end && !context.isCancelled()) {
+      long before = System.nanoTime();
+      for (ThreadInfo info : threads.dumpAllThreads(false, false, MAX_DEPTH)) {
+        if (info == null || info.getThreadId() == self || info.getStackTrace().length == 0) {
+          continue;
+        }
+        if (includeWaiting || info.getThreadState() == Thread.State.RUNNABLE) {
+          add(stacks, info);
+        }
+      }
+      samples++;
+      samplingNanos += System.nanoTime() - before;
+
+      if (samplingNanos / samples > MAX_OVERHEAD * intervalNanos) {
+        intervalNanos = Math.min(intervalNanos * 2, TimeUnit.MILLISECONDS.toNanos(MAX_INTERVAL_MILLIS));
+      }
+      next += intervalNanos;
+      long sleep = Math.min(next, end) - System.nanoTime();
+      if (sleep > 0) {
+        TimeUnit.NANOSECONDS.sleep(sleep);
+      }
+    }
+
+    StringBuilder collapsed = new StringBuilder();
+    for (Map.Entry<String, Integer> entry : stacks.entrySet()) {
+      collapsed.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+    }
+    return Profile.newBuilder()
+      .setCollapsedStacks(collapsed.toString())
+      .setSamples(samples)
+      .setIntervalMillis((int) TimeUnit.NANOSECONDS.toMillis(intervalNanos))
+      .setSamplingNanos(samplingNanos)
+      .setDurationNanos(System.nanoTime() - start)
+      .build();
+  }
+
+  private static void add(Map<String, Integer> stacks, ThreadInfo info) {
+    String pool = threadPool(info.getThreadName());
+    String stack = collapse(pool, info.getStackTrace());
+    if (stacks.size() >= MAX_STACKS && !stacks.containsKey(stack)) {
+      stack = pool + ";[truncated]";
+    }
+    stacks.merge(stack, 1, Integer::sum);
+  }
+
+  static String threadPool(String threadName) {
+    String pool = THREAD_NUMBER.matcher(threadName).replaceFirst("");
+    return sanitize(pool.isEmpty() ? threadName : pool);
+  }
+
+  static String collapse(String pool, StackTraceElement[] frames) {
+    StringBuilder sb = new StringBuilder(pool);
+    for (int i = frames.length - 1; i >= 0; i--) {
+      sb.append(';').append(sanitize(frames[i].getClassName())).append('.').append(sanitize(frames[i].getMethodName()));
+    }
+    return sb.toString();
+  }
+
+  private static String sanitize(String name) {
+    return name.replace(';', ':').replace(' ', '_');
+  }
+}
@@ -19,18 +19,42 @@
  */
 package org.sonarlint.daemon.services;
 
+import com.google.common.collect.Lists;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
-import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.sonarlint.daemon.Daemon;
-import org.sonarlint.daemon.model.DefaultClientInputFile;
+import org.sonarlint.daemon.Options;
+import org.sonarlint.daemon.analysis.AnalysisCoalescer;
+import org.sonarlint.daemon.analysis.AnalysisMonitor;
+import org.sonarlint.daemon.analysis.CancellationStats;
+import org.sonarlint.daemon.cache.IssueCache;
+import org.sonarlint.daemon.engine.EnginePool;
+import org.sonarlint.daemon.engine.Priority;
+import org.sonarlint.daemon.jfr.AnalysisEvent;
+import org.sonarlint.daemon.jfr.EngineLifecycleEvent;
+import org.sonarlint.daemon.jfr.StorageUpdateEvent;
+import org.sonarlint.daemon.logging.LogSink;
+import org.sonarlint.daemon.metrics.AnalysisMetrics;
+import org.sonarlint.daemon.metrics.MemoryReports;
+import org.sonarlint.daemon.metrics.MetricsExport;
+import org.sonarlint.daemon.metrics.MetricsRegistry;
+import org.sonarlint.daemon.model.ClientInputFiles;
+import org.sonarlint.daemon.model.FlowControlStats;
+import org.sonarlint.daemon.model.FlowControlledStreamObserver;
+import org.sonarlint.daemon.model.IssueBatcher;
+import org.sonarlint.daemon.model.LogFilter;
 import org.sonarlint.daemon.model.ProxyIssueListener;
 import org.sonarlint.daemon.model.ProxyLogOutput;
+import org.sonarlint.daemon.profiling.SamplingProfiler;
 import org.sonarsource.sonarlint.core.ConnectedSonarLintEngineImpl;
 import org.sonarsource.sonarlint.core.client.api.common.Language;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedAnalysisConfiguration;
 import org.sonarsource.sonarlint.core.client.api.connected.ConnectedGlobalConfiguration;
@@ -40,8 +64,15 @@ import org.sonarsource.sonarlint.core.client.api.connected.ServerConfiguration;
 import org.sonarsource.sonarlint.daemon.proto.ConnectedSonarLintGrpc;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ConnectedAnalysisReq;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ConnectedConfiguration;
-import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.IssueBatch;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogBatch;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogSubscription;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReport;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Metrics;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Profile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ProfileReq;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ModuleUpdateReq;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleDetails;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleKey;
@@ -50,22 +81,66 @@ import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.StorageState;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.StorageState.State;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Void;
 
-import static com.google.common.base.Strings.emptyToNull;
-
 public class ConnectedSonarLintImpl extends ConnectedSonarLintGrpc.ConnectedSonarLintImplBase {
   private final Daemon daemon;
   private final ProxyLogOutput logOutput;
+  private final IssueCache issueCache;
+  private final FlowControlStats flowControlStats = new FlowControlStats();
+  private final CancellationStats cancellationStats = new CancellationStats();
+  private final AnalysisCoalescer coalescer;
+  private final MetricsRegistry metrics;
+  private final AnalysisMetrics analysisMetrics;
+  // log output given to the engine for analyses, to time their phases
+  private final LogOutput analysisLogOutput;
+  private final int interactiveMaxFiles;
+  private final int backgroundChunkSize;
   private ConnectedSonarLintEngine engine;
+  // analyses share the engine, up to one per processor, and wait by priority beyond that
+  private EnginePool<ConnectedSonarLintEngine> analysisSlots;
 
-  public ConnectedSonarLintImpl(Daemon daemon) {
+  public ConnectedSonarLintImpl(Daemon daemon, Options options, MetricsRegistry metrics, LogSink logSink) {
     this.daemon = daemon;
-    this.logOutput = new ProxyLogOutput(daemon);
+    this.logOutput = new ProxyLogOutput(daemon, logSink);
+    this.issueCache = new IssueCache(options.getCacheSize() * 1024L * 1024L);
+    this.interactiveMaxFiles = options.getInteractiveMaxFiles();
+    this.backgroundChunkSize = options.getBackgroundChunkSize();
+    this.coalescer = new AnalysisCoalescer(options.isCoalesce());
+    this.metrics = metrics;
+    this.analysisMetrics = new AnalysisMetrics(metrics, "connected");
+    this.analysisLogOutput = analysisMetrics.wrap(logOutput);
+    registerMetrics();
+  }
+
+  private void registerMetrics() {
+    String labels = "{mode=\"connected\"}";
+    metrics.gauge("engine_pool_size" + labels, () -> analysisSlots != null ? analysisSlots.stats().size() : 0);
+    metrics.gauge("engine_pool_in_use" + labels, () -> analysisSlots != null ? analysisSlots.stats().inUse() : 0);
+    metrics.gauge("engine_pool_waiting" + labels, () -> analysisSlots != null ? analysisSlots.stats().waiting() : 0);
+    metrics.counter("analysis_cache_hits_total" + labels, issueCache::hitCount);
+    metrics.counter("analysis_cache_misses_total" + labels, issueCache::missCount);
+    metrics.counter("issue_cache_evictions_total" + labels, issueCache::evictionCount);
+    metrics.counter("analysis_cancelled_total" + labels, cancellationStats::cancelledCount);
+    metrics.counter("analysis_deadline_exceeded_total" + labels, cancellationStats::deadlineExceededCount);
+    metrics.counter("analysis_superseded_total" + labels, cancellationStats::supersededCount);
+    metrics.counter("analysis_coalesce_registered_total" + labels, coalescer::registeredCount);
+    metrics.gauge("analysis_coalesce_rate_percent" + labels, () -> Math.round(coalescer.coalescingRate() * 100));
+    metrics.counter("analysis_cpu_saved_nanos_total" + labels, cancellationStats::savedCpuNanos);
+    metrics.counter("stream_blocked_total" + labels, flowControlStats::blockedCount);
+    metrics.counter("stream_blocked_nanos_total" + labels, flowControlStats::blockedNanos);
+    metrics.gauge("log_backlog" + labels, logOutput::backlog);
+    metrics.gauge("log_subscribers" + labels, logOutput::subscriberCount);
+    metrics.counter("log_events_dropped_total" + labels, logOutput::droppedCount);
+    metrics.gauge(MemoryReports.componentGauge("connected_issue_cache"), issueCache::estimatedBytes);
   }
 
   @Override
   public void start(ConnectedConfiguration requestConfig, StreamObserver<Void> response) {
     if (engine != null) {
+      analysisSlots.stop();
+      EngineLifecycleEvent stopEvent = EngineLifecycleEvent.stop("connected");
       engine.stop(false);
+      stopEvent.commit();
+      metrics.remove(MemoryReports.loadAllocationGauge("connected_engine"));
       engine = null;
     }
 
@@ -78,58 +153,148 @@ public class ConnectedSonarLintImpl extends ConnectedSonarLintGrpc.ConnectedSona
         .addEnabledLanguage(Language.JS)
         .setServerId(requestConfig.getStorageId());
 
-      engine = new ConnectedSonarLintEngineImpl(builder.build());
+      EngineLifecycleEvent startEvent = EngineLifecycleEvent.start("connected");
+      long allocatedBefore = MemoryReports.allocatedBytes();
+      ConnectedSonarLintEngine created = new ConnectedSonarLintEngineImpl(builder.build());
+      long allocated = allocatedBefore < 0 ? -1 : MemoryReports.allocatedBytes() - allocatedBefore;
+      startEvent.commit();
+      metrics.gauge(MemoryReports.loadAllocationGauge("connected_engine"), () -> allocated);
+      analysisSlots = EnginePool.shared(created, Runtime.getRuntime().availableProcessors());
+      engine = created;
+      issueCache.invalidateAll();
       response.onNext(Void.newBuilder().build());
       response.onCompleted();
     } catch (Exception e) {
-      System.err.println("Error registering");
-      e.printStackTrace(System.err);
+      logOutput.error("Error registering", e);
       response.onError(e);
     }
   }
 
   @Override
   public void analyze(ConnectedAnalysisReq requestConfig, StreamObserver<org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue> response) {
-    try {
-      List<ClientInputFile> files = new LinkedList<>();
-      List<InputFile> requestFiles = requestConfig.getFileList();
+    runAnalysis(requestConfig, FlowControlledStreamObserver.wrap(response, flowControlStats));
+  }
+
+  @Override
+  public void analyzeBatched(ConnectedAnalysisReq requestConfig, StreamObserver<IssueBatch> response) {
+    runAnalysis(requestConfig, new IssueBatcher(FlowControlledStreamObserver.wrap(response, flowControlStats)));
+  }
 
+  private void runAnalysis(ConnectedAnalysisReq requestConfig, StreamObserver<org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue> response) {
+    long start = System.nanoTime();
+    AnalysisEvent event = new AnalysisEvent();
+    event.begin();
+    boolean completed = false;
+    AnalysisMetrics.MeteredStreamObserver output = analysisMetrics.meter(response);
+    AnalysisMonitor monitor = AnalysisMonitor.forCurrentCall();
+    try (AnalysisCoalescer.Registration coalescing = coalescer.register(requestConfig.getBaseDir(), requestConfig.getFileList(), monitor)) {
       Path baseDir = Paths.get(requestConfig.getBaseDir());
-      for (InputFile f : requestFiles) {
-        files.add(new DefaultClientInputFile(baseDir, Paths.get(f.getPath()), f.getIsTest(), Charset.forName(f.getCharset()), f.getUserObject(), emptyToNull(f.getLanguage())));
+      List<ClientInputFile> files = ClientInputFiles.toClientInputFiles(baseDir, requestConfig.getFileList());
+
+      IssueCache.Lookup cached = issueCache.lookup(requestConfig.getModuleKey(), files, requestConfig.getPropertiesMap());
+      cached.replayHits(output);
+
+      if (files.isEmpty() || !cached.misses().isEmpty()) {
+        Priority priority = Priority.of(requestConfig.getPriority(), cached.misses().size(), interactiveMaxFiles);
+        List<List<ClientInputFile>> chunks = priority == Priority.BACKGROUND && backgroundChunkSize > 0 && cached.misses().size() > backgroundChunkSize
+          ? Lists.partition(cached.misses(), backgroundChunkSize)
+          : Collections.singletonList(cached.misses());
+        StreamObserver<org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue> recorder = cached.recorder(output);
+        // background analyses give the engine back between chunks, so that waiting interactive analyses can run
+        for (List<ClientInputFile> chunk : chunks) {
+          if (monitor.isCanceled()) {
+            break;
+          }
+          analyzeChunk(requestConfig.getModuleKey(), baseDir, requestConfig.getPropertiesMap(), chunk, recorder, priority, monitor);
+        }
+        if (monitor.isCanceled()) {
+          // partial results are not stored in the cache
+          onCancelled(monitor, cached.misses().size(), output);
+          return;
+        }
+        cancellationStats.completed(cached.misses().size(), monitor.cpuNanos());
+        cached.store();
       }
+      output.onCompleted();
+      completed = true;
+      analysisMetrics.analyzed(files.size(), System.nanoTime() - start);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      output.onError(e);
+    } catch (Exception e) {
+      if (monitor.isCanceled()) {
+        onCancelled(monitor, requestConfig.getFileCount(), output);
+        return;
+      }
+      logOutput.error("Error analyzing", e);
+      output.onError(e);
+    } finally {
+      String status = completed ? "OK" : (monitor.isCanceled() ? monitor.cancellationStatus().getCode().name() : "ERROR");
+      event.end("connected", requestConfig.getFileCount(), output.count(), status, monitor.engineNanos(), monitor.listenerNanos(), output.sendingNanos());
+    }
+  }
 
+  private void analyzeChunk(String moduleKey, Path baseDir, Map<String, String> properties, List<ClientInputFile> files,
+    StreamObserver<org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue> observer, Priority priority, AnalysisMonitor monitor) throws Exception {
+    ConnectedSonarLintEngine analysisEngine = analysisSlots.checkout(priority, monitor);
+    try {
+      if (monitor.isCanceled()) {
+        // the client gave up while waiting for the engine
+        return;
+      }
       ConnectedAnalysisConfiguration config = ConnectedAnalysisConfiguration.builder()
-        .setProjectKey(requestConfig.getModuleKey())
+        .setProjectKey(moduleKey)
         .setBaseDir(baseDir)
         .addInputFiles(files)
-        .putAllExtraProperties(requestConfig.getPropertiesMap())
+        .putAllExtraProperties(properties)
         .build();
 
-      engine.analyze(config, new ProxyIssueListener(response), logOutput, null);
-      response.onCompleted();
+      monitor.measure(() -> analysisMetrics.timeEngine(() -> analysisEngine.analyze(config, monitor.timed(new ProxyIssueListener(observer)), analysisLogOutput, monitor)));
+    } finally {
+      analysisSlots.checkin(analysisEngine);
+    }
+  }
+
+  private void onCancelled(AnalysisMonitor monitor, int fileCount, StreamObserver<org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue> output) {
+    cancellationStats.cancelled(monitor, fileCount);
+    Status status = monitor.cancellationStatus();
+    logOutput.log(status.getDescription(), Level.DEBUG);
+    output.onError(status.asRuntimeException());
+  }
+
+  @Override
+  public void streamLogs(LogSubscription request, StreamObserver<LogEvent> response) {
+    try {
+      logOutput.subscribe(response, LogFilter.of(request), request.getReplay());
     } catch (Exception e) {
-      System.err.println("Error analyzing");
-      e.printStackTrace(System.err);
+      logOutput.error("streamLogs", e);
       response.onError(e);
     }
   }
 
   @Override
-  public void streamLogs(Void request, StreamObserver<LogEvent> response) {
-    logOutput.setObserver(response);
+  public void streamLogsBatched(LogSubscription request, StreamObserver<LogBatch> response) {
+    try {
+      logOutput.subscribeBatched(response, LogFilter.of(request), request.getReplay());
+    } catch (Exception e) {
+      logOutput.error("streamLogsBatched", e);
+      response.onError(e);
+    }
   }
 
   @Override
   public void update(ServerConfig request, StreamObserver<Void> response) {
+    StorageUpdateEvent event = StorageUpdateEvent.begin("");
     try {
       ServerConfiguration config = transformServerConfig(request);
       engine.update(config, null);
+      event.end(true);
+      issueCache.invalidateAll();
       response.onNext(Void.newBuilder().build());
       response.onCompleted();
     } catch (Exception e) {
-      System.err.println("update");
-      e.printStackTrace(System.err);
+      event.end(false);
+      logOutput.error("update", e);
       response.onError(e);
     }
   }
@@ -181,22 +346,24 @@ public class ConnectedSonarLintImpl extends ConnectedSonarLintGrpc.ConnectedSona
       response.onNext(StorageState.newBuilder().setState(transformed).build());
       response.onCompleted();
     } catch (Exception e) {
-      System.err.println("status");
-      e.printStackTrace(System.err);
+      logOutput.error("status", e);
       response.onError(e);
     }
   }
 
   @Override
   public void updateModule(ModuleUpdateReq request, StreamObserver<Void> response) {
+    StorageUpdateEvent event = StorageUpdateEvent.begin(request.getModuleKey());
     try {
       ServerConfiguration serverConfig = transformServerConfig(request.getServerConfig());
       engine.updateProject(serverConfig, request.getModuleKey(), null);
+      event.end(true);
+      issueCache.invalidateAll();
       response.onNext(Void.newBuilder().build());
       response.onCompleted();
     } catch (Exception e) {
-      System.err.println("updateProject");
-      e.printStackTrace(System.err);
+      event.end(false);
+      logOutput.error("updateProject", e);
       response.onError(e);
     }
   }
@@ -214,16 +381,58 @@ public class ConnectedSonarLintImpl extends ConnectedSonarLintGrpc.ConnectedSona
         .build());
       response.onCompleted();
     } catch (Exception e) {
-      System.err.println("getRuleDetails");
-      e.printStackTrace(System.err);
+      logOutput.error("getRuleDetails", e);
+      response.onError(e);
+    }
+  }
+
+  @Override
+  public void getMetrics(Void request, StreamObserver<Metrics> response) {
+    try {
+      response.onNext(MetricsExport.toProto(metrics));
+      response.onCompleted();
+    } catch (Exception e) {
+      logOutput.error("getMetrics", e);
+      response.onError(e);
+    }
+  }
+
+  @Override
+  public void getMemory(MemoryReq request, StreamObserver<MemoryReport> response) {
+    try {
+      response.onNext(MemoryReports.toProto(metrics, request));
+      response.onCompleted();
+    } catch (Exception e) {
+      logOutput.error("getMemory", e);
+      response.onError(e);
+    }
+  }
+
+  @Override
+  public void profile(ProfileReq request, StreamObserver<Profile> response) {
+    try {
+      response.onNext(new SamplingProfiler().profile(request));
+      response.onCompleted();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      response.onError(e);
+    } catch (Exception e) {
+      logOutput.error("profile", e);
       response.onError(e);
     }
   }
 
   @Override
   public void shutdown(Void request, StreamObserver<Void> responseObserver) {
-    System.out.println("Shutdown requested");
+    logOutput.log("Shutdown requested", Level.INFO);
     responseObserver.onCompleted();
     daemon.stop();
   }
+
+  /**
+   * Sends the logs not streamed yet and stops the log sender thread, once the server stopped.
+   */
+  public void close() {
+    logOutput.close();
+  }
 }
@@ -19,26 +19,61 @@
  */
 package org.sonarlint.daemon.services;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import io.grpc.Status;
 import io.grpc.Status.Code;
 import io.grpc.stub.StreamObserver;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.sonarlint.daemon.Daemon;
+import org.sonarlint.daemon.Options;
 import org.sonarlint.daemon.Utils;
-import org.sonarlint.daemon.model.DefaultClientInputFile;
+import org.sonarlint.daemon.analysis.AnalysisCoalescer;
+import org.sonarlint.daemon.analysis.AnalysisMonitor;
+import org.sonarlint.daemon.analysis.CancellationStats;
+import org.sonarlint.daemon.analysis.FileShards;
+import org.sonarlint.daemon.analysis.MicroBatcher;
+import org.sonarlint.daemon.cache.IssueCache;
+import org.sonarlint.daemon.engine.EnginePool;
+import org.sonarlint.daemon.engine.Priority;
+import org.sonarlint.daemon.jfr.AnalysisEvent;
+import org.sonarlint.daemon.jfr.EngineLifecycleEvent;
+import org.sonarlint.daemon.logging.LogSink;
+import org.sonarlint.daemon.metrics.AnalysisMetrics;
+import org.sonarlint.daemon.metrics.MemoryReports;
+import org.sonarlint.daemon.metrics.MetricsExport;
+import org.sonarlint.daemon.metrics.MetricsRegistry;
+import org.sonarlint.daemon.model.ClientInputFiles;
+import org.sonarlint.daemon.model.FlowControlStats;
+import org.sonarlint.daemon.model.FlowControlledStreamObserver;
+import org.sonarlint.daemon.model.IssueBatcher;
+import org.sonarlint.daemon.model.LogFilter;
 import org.sonarlint.daemon.model.ProxyIssueListener;
 import org.sonarlint.daemon.model.ProxyLogOutput;
+import org.sonarlint.daemon.model.SynchronizedStreamObserver;
+import org.sonarlint.daemon.profiling.SamplingProfiler;
 import org.sonarsource.sonarlint.core.StandaloneSonarLintEngineImpl;
 import org.sonarsource.sonarlint.core.client.api.common.Language;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneAnalysisConfiguration;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneGlobalConfiguration;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneGlobalConfiguration.Builder;
@@ -46,27 +81,63 @@ import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneRuleDetail
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneSonarLintEngine;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisReq;
-import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.IssueBatch;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogBatch;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogSubscription;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReport;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Metrics;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Profile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ProfileReq;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleDetails;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleKey;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Void;
 import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc;
 
-import static com.google.common.base.Strings.emptyToNull;
-
 public class StandaloneSonarLintImpl extends StandaloneSonarLintGrpc.StandaloneSonarLintImplBase {
   private final ProxyLogOutput logOutput;
   private final Collection<URL> analyzers;
   private final Daemon daemon;
-  private StandaloneSonarLintEngine engine;
+  private final IssueCache issueCache;
+  private final FlowControlStats flowControlStats = new FlowControlStats();
+  private final CancellationStats cancellationStats = new CancellationStats();
+  private final AnalysisCoalescer coalescer;
+  private final MicroBatcher microBatcher;
+  private final MetricsRegistry metrics;
+  private final AnalysisMetrics analysisMetrics;
+  // log output given to the engine for analyses, to time their phases
+  private final LogOutput analysisLogOutput;
+  private final int enginePoolSize;
+  private final int parallelMinFiles;
+  private final int interactiveMaxFiles;
+  private final int backgroundChunkSize;
+  private final ExecutorService shardExecutor;
+  private final AtomicInteger enginesCreated = new AtomicInteger();
+  private final Map<StandaloneSonarLintEngine, String> engineGauges = new ConcurrentHashMap<>();
+  private EnginePool<StandaloneSonarLintEngine> engines;
 
-  public StandaloneSonarLintImpl(Daemon daemon, Collection<URL> analyzers) {
+  public StandaloneSonarLintImpl(Daemon daemon, Options options, MetricsRegistry metrics, LogSink logSink, Collection<URL> analyzers) {
     this.daemon = daemon;
     this.analyzers = analyzers;
-    this.logOutput = new ProxyLogOutput(daemon);
+    this.logOutput = new ProxyLogOutput(daemon, logSink);
+    this.issueCache = new IssueCache(options.getCacheSize() * 1024L * 1024L);
+    this.enginePoolSize = options.getEnginePoolSize();
+    this.parallelMinFiles = options.getParallelMinFiles();
+    this.interactiveMaxFiles = options.getInteractiveMaxFiles();
+    this.backgroundChunkSize = options.getBackgroundChunkSize();
+    this.coalescer = new AnalysisCoalescer(options.isCoalesce());
+    this.microBatcher = new MicroBatcher(options.getBatchWindow(), this::analyzeBatch);
+    this.metrics = metrics;
+    this.analysisMetrics = new AnalysisMetrics(metrics, "standalone");
+    this.analysisLogOutput = analysisMetrics.wrap(logOutput);
+    this.shardExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+      .setNameFormat("sonarlint-analysis-%d")
+      .setDaemon(true)
+      .build());
     start();
+    registerMetrics();
   }
 
   private void start() {
@@ -79,42 +150,252 @@ public class StandaloneSonarLintImpl extends StandaloneSonarLintGrpc.StandaloneS
 
     builder.setLogOutput(logOutput);
     builder.setSonarLintUserHome(Utils.getStandaloneHome());
-    engine = new StandaloneSonarLintEngineImpl(builder.build());
+    StandaloneGlobalConfiguration globalConfig = builder.build();
+    engines = new EnginePool<>(enginePoolSize, () -> createEngine(globalConfig), this::stopEngine);
+    engines.prestart();
+  }
+
+  private StandaloneSonarLintEngine createEngine(StandaloneGlobalConfiguration globalConfig) {
+    EngineLifecycleEvent event = EngineLifecycleEvent.start("standalone");
+    long allocatedBefore = MemoryReports.allocatedBytes();
+    StandaloneSonarLintEngine engine = new StandaloneSonarLintEngineImpl(globalConfig);
+    long allocated = allocatedBefore < 0 ? -1 : MemoryReports.allocatedBytes() - allocatedBefore;
+    issueCache.setFingerprint(Utils.getAnalyzersFingerprint(engine.getPluginDetails()));
+    event.commit();
+    String gauge = MemoryReports.loadAllocationGauge("standalone_engine_" + enginesCreated.getAndIncrement());
+    engineGauges.put(engine, gauge);
+    metrics.gauge(gauge, () -> allocated);
+    return engine;
+  }
+
+  private void stopEngine(StandaloneSonarLintEngine engine) {
+    EngineLifecycleEvent event = EngineLifecycleEvent.stop("standalone");
+    engine.stop();
+    event.commit();
+    String gauge = engineGauges.remove(engine);
+    if (gauge != null) {
+      metrics.remove(gauge);
+    }
+  }
+
+  private void registerMetrics() {
+    String labels = "{mode=\"standalone\"}";
+    metrics.gauge("engine_pool_size" + labels, () -> engines.stats().size());
+    metrics.gauge("engine_pool_in_use" + labels, () -> engines.stats().inUse());
+    metrics.gauge("engine_pool_waiting" + labels, () -> engines.stats().waiting());
+    metrics.counter("engine_pool_checkouts_total" + labels, () -> engines.stats().checkouts());
+    metrics.counter("engine_pool_saturated_checkouts_total" + labels, () -> engines.stats().saturatedCheckouts());
+    metrics.counter("analysis_cache_hits_total" + labels, issueCache::hitCount);
+    metrics.counter("analysis_cache_misses_total" + labels, issueCache::missCount);
+    metrics.counter("issue_cache_evictions_total" + labels, issueCache::evictionCount);
+    metrics.counter("analysis_cancelled_total" + labels, cancellationStats::cancelledCount);
+    metrics.counter("analysis_deadline_exceeded_total" + labels, cancellationStats::deadlineExceededCount);
+    metrics.counter("analysis_superseded_total" + labels, cancellationStats::supersededCount);
+    metrics.counter("analysis_coalesce_registered_total" + labels, coalescer::registeredCount);
+    metrics.gauge("analysis_coalesce_rate_percent" + labels, () -> Math.round(coalescer.coalescingRate() * 100));
+    metrics.counter("analysis_cpu_saved_nanos_total" + labels, cancellationStats::savedCpuNanos);
+    metrics.counter("analysis_batches_total" + labels, microBatcher::batchCount);
+    metrics.counter("stream_blocked_total" + labels, flowControlStats::blockedCount);
+    metrics.counter("stream_blocked_nanos_total" + labels, flowControlStats::blockedNanos);
+    metrics.gauge("log_backlog" + labels, logOutput::backlog);
+    metrics.gauge("log_subscribers" + labels, logOutput::subscriberCount);
+    metrics.counter("log_events_dropped_total" + labels, logOutput::droppedCount);
+    metrics.gauge(MemoryReports.componentGauge("standalone_issue_cache"), issueCache::estimatedBytes);
   }
 
   @Override
   public void analyze(AnalysisReq requestConfig, StreamObserver<Issue> response) {
-    if (engine == null) {
+    if (engines == null) {
       response.onError(new IllegalStateException("Not registered"));
       return;
     }
 
-    try {
-      List<ClientInputFile> files = new LinkedList<>();
-      List<InputFile> requestFiles = requestConfig.getFileList();
+    runAnalysis(requestConfig, FlowControlledStreamObserver.wrap(response, flowControlStats));
+  }
 
+  @Override
+  public void analyzeBatched(AnalysisReq requestConfig, StreamObserver<IssueBatch> response) {
+    if (engines == null) {
+      response.onError(new IllegalStateException("Not registered"));
+      return;
+    }
+
+    runAnalysis(requestConfig, new IssueBatcher(FlowControlledStreamObserver.wrap(response, flowControlStats)));
+  }
+
+  private void runAnalysis(AnalysisReq requestConfig, StreamObserver<Issue> response) {
+    long start = System.nanoTime();
+    AnalysisEvent event = new AnalysisEvent();
+    event.begin();
+    boolean completed = false;
+    AnalysisMetrics.MeteredStreamObserver output = analysisMetrics.meter(response);
+    AnalysisMonitor monitor = AnalysisMonitor.forCurrentCall();
+    try (AnalysisCoalescer.Registration coalescing = coalescer.register(requestConfig.getBaseDir(), requestConfig.getFileList(), monitor)) {
       Path baseDir = Paths.get(requestConfig.getBaseDir());
-      for (InputFile f : requestFiles) {
-        files.add(new DefaultClientInputFile(baseDir, Paths.get(f.getPath()), f.getIsTest(), Charset.forName(f.getCharset()), f.getUserObject(), emptyToNull(f.getLanguage())));
+      List<ClientInputFile> files = ClientInputFiles.toClientInputFiles(baseDir, requestConfig.getFileList());
+
+      IssueCache.Lookup cached = issueCache.lookup(baseDir.toString(), files, requestConfig.getPropertiesMap());
+      cached.replayHits(output);
+
+      if (files.isEmpty() || !cached.misses().isEmpty()) {
+        Priority priority = Priority.of(requestConfig.getPriority(), cached.misses().size(), interactiveMaxFiles);
+        if (microBatcher.isEnabled() && priority == Priority.INTERACTIVE && !cached.misses().isEmpty()) {
+          microBatcher.analyze(baseDir, requestConfig.getPropertiesMap(), cached.misses(), cached.recorder(output), monitor);
+        } else {
+          analyzeFiles(baseDir, requestConfig.getPropertiesMap(), cached.misses(), cached.recorder(output), priority, monitor);
+        }
+        if (monitor.isCanceled()) {
+          // partial results are not stored in the cache
+          onCancelled(monitor, cached.misses().size(), output);
+          return;
+        }
+        cancellationStats.completed(cached.misses().size(), monitor.cpuNanos());
+        cached.store();
+      }
+      if (cached.hitCount() > 0) {
+        logOutput.log(cached.hitCount() + " file(s) found in the analysis cache", Level.DEBUG);
+      }
+      output.onCompleted();
+      completed = true;
+      analysisMetrics.analyzed(files.size(), System.nanoTime() - start);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      output.onError(e);
+    } catch (Exception e) {
+      if (monitor.isCanceled()) {
+        onCancelled(monitor, requestConfig.getFileCount(), output);
+        return;
       }
+      logOutput.error("Error analyzing", e);
+      output.onError(e);
+    } finally {
+      String status = completed ? "OK" : (monitor.isCanceled() ? monitor.cancellationStatus().getCode().name() : "ERROR");
+      event.end("standalone", requestConfig.getFileCount(), output.count(), status, monitor.engineNanos(), monitor.listenerNanos(), output.sendingNanos());
+    }
+  }
 
-      StandaloneAnalysisConfiguration config = StandaloneAnalysisConfiguration.builder()
-        .setBaseDir(baseDir)
-        .addInputFiles(files)
-        .putAllExtraProperties(requestConfig.getPropertiesMap())
-        .build();
+  private void onCancelled(AnalysisMonitor monitor, int fileCount, StreamObserver<Issue> output) {
+    cancellationStats.cancelled(monitor, fileCount);
+    Status status = monitor.cancellationStatus();
+    logOutput.log(status.getDescription(), Level.DEBUG);
+    output.onError(status.asRuntimeException());
+  }
 
-      logOutput.log("Analysis configuration:\n" + config.toString(), Level.DEBUG);
+  /**
+   * Background analyses are run in chunks of files, giving their engines back between chunks so that waiting interactive analyses
+   * are not delayed until the end of a whole project scan.
+   */
+  private void analyzeFiles(Path baseDir, Map<String, String> properties, List<ClientInputFile> files, StreamObserver<Issue> observer,
+    Priority priority, AnalysisMonitor monitor) throws Exception {
+    boolean parallel = parallelMinFiles > 0 && files.size() >= parallelMinFiles;
+    if (priority != Priority.BACKGROUND || backgroundChunkSize <= 0 || files.size() <= backgroundChunkSize) {
+      analyzeChunk(baseDir, properties, files, observer, priority, parallel, monitor);
+      return;
+    }
+    for (List<ClientInputFile> chunk : Lists.partition(files, backgroundChunkSize)) {
+      if (monitor.isCanceled()) {
+        return;
+      }
+      analyzeChunk(baseDir, properties, chunk, observer, priority, parallel, monitor);
+    }
+  }
 
-      engine.analyze(config, new ProxyIssueListener(response), logOutput, null);
-      response.onCompleted();
+  /**
+   * Analyzes files with one engine or, for big analyses, splits them across all the engines that are idle.
+   */
+  private void analyzeChunk(Path baseDir, Map<String, String> properties, List<ClientInputFile> files, StreamObserver<Issue> observer,
+    Priority priority, boolean parallel, AnalysisMonitor monitor) throws Exception {
+    List<StandaloneSonarLintEngine> checkedOut = new ArrayList<>();
+    try {
+      checkedOut.add(engines.checkout(priority, monitor));
+      if (monitor.isCanceled()) {
+        // the client gave up while waiting for an engine
+        return;
+      }
+      if (parallel) {
+        StandaloneSonarLintEngine extra;
+        while (checkedOut.size() < files.size() && (extra = engines.tryCheckout()) != null) {
+          checkedOut.add(extra);
+        }
+      }
+
+      if (checkedOut.size() == 1) {
+        StandaloneSonarLintEngine engine = checkedOut.get(0);
+        StandaloneAnalysisConfiguration config = analysisConfig(baseDir, properties, files);
+        runEngine(engine, config, new ProxyIssueListener(observer), monitor);
+      } else {
+        analyzeShards(baseDir, properties, FileShards.partition(files, checkedOut.size()), checkedOut, new SynchronizedStreamObserver<>(observer), monitor);
+      }
+    } finally {
+      checkedOut.forEach(engines::checkin);
+    }
+  }
+
+  private void analyzeShards(Path baseDir, Map<String, String> properties, List<List<ClientInputFile>> shards, List<StandaloneSonarLintEngine> shardEngines,
+    StreamObserver<Issue> observer, AnalysisMonitor monitor) throws Exception {
+    logOutput.log("Analyzing files in " + shards.size() + " parallel shards", Level.DEBUG);
+    List<Future<AnalysisResults>> futures = new ArrayList<>();
+    for (int i = 1; i < shards.size(); i++) {
+      StandaloneSonarLintEngine engine = shardEngines.get(i);
+      StandaloneAnalysisConfiguration config = analysisConfig(baseDir, properties, shards.get(i));
+      futures.add(shardExecutor.submit(() -> runEngine(engine, config, new ProxyIssueListener(observer), monitor)));
+    }
+
+    Exception failure = null;
+    try {
+      StandaloneSonarLintEngine engine = shardEngines.get(0);
+      StandaloneAnalysisConfiguration config = analysisConfig(baseDir, properties, shards.get(0));
+      runEngine(engine, config, new ProxyIssueListener(observer), monitor);
     } catch (Exception e) {
-      System.err.println("Error analyzing");
-      e.printStackTrace(System.err);
-      response.onError(e);
+      failure = e;
+    }
+    // engines can only be checked in once all shards are done
+    for (Future<AnalysisResults> future : futures) {
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
     }
   }
 
+  /**
+   * Runs a batch of small analyses, merged by the {@link MicroBatcher}.
+   */
+  private void analyzeBatch(Path baseDir, Map<String, String> properties, List<ClientInputFile> files, IssueListener listener, ProgressMonitor monitor)
+    throws Exception {
+    StandaloneSonarLintEngine engine = engines.checkout(Priority.INTERACTIVE);
+    try {
+      if (!monitor.isCanceled()) {
+        StandaloneAnalysisConfiguration config = analysisConfig(baseDir, properties, files);
+        analysisMetrics.timeEngine(() -> engine.analyze(config, listener, analysisLogOutput, monitor));
+      }
+    } finally {
+      engines.checkin(engine);
+    }
+  }
+
+  private AnalysisResults runEngine(StandaloneSonarLintEngine engine, StandaloneAnalysisConfiguration config, IssueListener listener, AnalysisMonitor monitor)
+    throws Exception {
+    return monitor.measure(() -> analysisMetrics.timeEngine(() -> engine.analyze(config, monitor.timed(listener), analysisLogOutput, monitor)));
+  }
+
+  private StandaloneAnalysisConfiguration analysisConfig(Path baseDir, Map<String, String> properties, List<ClientInputFile> files) {
+    StandaloneAnalysisConfiguration config = StandaloneAnalysisConfiguration.builder()
+      .setBaseDir(baseDir)
+      .addInputFiles(files)
+      .putAllExtraProperties(properties)
+      .build();
+
+    logOutput.log("Analysis configuration:\n" + config.toString(), Level.DEBUG);
+    return config;
+  }
+
   @Override
   public StreamObserver<Void> heartBeat(StreamObserver<Void> responseObserver) {
     return new StreamObserver<SonarlintDaemon.Void>() {
@@ -129,14 +410,13 @@ public class StandaloneSonarLintImpl extends StandaloneSonarLintGrpc.StandaloneS
         if (Status.fromThrowable(t).getCode() == Code.CANCELLED) {
           return;
         }
-        System.err.println("Received an error during heartbeat, stopping");
-        t.printStackTrace(System.err);
+        logOutput.error("Received an error during heartbeat, stopping", t);
         daemon.stop();
       }
 
       @Override
       public void onCompleted() {
-        System.err.println("Heartbeat stream completed, stopping");
+        logOutput.log("Heartbeat stream completed, stopping", Level.WARN);
         daemon.stop();
       }
 
@@ -144,14 +424,30 @@ public class StandaloneSonarLintImpl extends StandaloneSonarLintGrpc.StandaloneS
   }
 
   @Override
-  public void streamLogs(Void request, StreamObserver<LogEvent> response) {
-    logOutput.setObserver(response);
+  public void streamLogs(LogSubscription request, StreamObserver<LogEvent> response) {
+    try {
+      logOutput.subscribe(response, LogFilter.of(request), request.getReplay());
+    } catch (Exception e) {
+      logOutput.error("streamLogs", e);
+      response.onError(e);
+    }
+  }
+
+  @Override
+  public void streamLogsBatched(LogSubscription request, StreamObserver<LogBatch> response) {
+    try {
+      logOutput.subscribeBatched(response, LogFilter.of(request), request.getReplay());
+    } catch (Exception e) {
+      logOutput.error("streamLogsBatched", e);
+      response.onError(e);
+    }
   }
 
   @Override
   public void getRuleDetails(RuleKey key, StreamObserver<RuleDetails> response) {
     try {
-      StandaloneRuleDetails ruleDetails = engine.getRuleDetails(key.getKey()).get();
+      // rule metadata is read-only, it doesn't wait for running analyses
+      StandaloneRuleDetails ruleDetails = engines.anyStarted().getRuleDetails(key.getKey()).get();
       response.onNext(RuleDetails.newBuilder()
         .setKey(ruleDetails.getKey())
         .setName(ruleDetails.getName())
@@ -161,18 +457,63 @@ public class StandaloneSonarLintImpl extends StandaloneSonarLintGrpc.StandaloneS
         .addAllTags(Arrays.asList(ruleDetails.getTags()))
         .build());
       response.onCompleted();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      response.onError(e);
+    } catch (Exception e) {
+      logOutput.error("getRuleDetails", e);
+      response.onError(e);
+    }
+  }
+
+  @Override
+  public void getMetrics(Void request, StreamObserver<Metrics> response) {
+    try {
+      response.onNext(MetricsExport.toProto(metrics));
+      response.onCompleted();
     } catch (Exception e) {
-      System.err.println("getRuleDetails");
-      e.printStackTrace(System.err);
+      logOutput.error("getMetrics", e);
+      response.onError(e);
+    }
+  }
+
+  @Override
+  public void getMemory(MemoryReq request, StreamObserver<MemoryReport> response) {
+    try {
+      response.onNext(MemoryReports.toProto(metrics, request));
+      response.onCompleted();
+    } catch (Exception e) {
+      logOutput.error("getMemory", e);
+      response.onError(e);
+    }
+  }
+
+  @Override
+  public void profile(ProfileReq request, StreamObserver<Profile> response) {
+    try {
+      response.onNext(new SamplingProfiler().profile(request));
+      response.onCompleted();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      response.onError(e);
+    } catch (Exception e) {
+      logOutput.error("profile", e);
       response.onError(e);
     }
   }
 
   @Override
   public void shutdown(Void request, StreamObserver<Void> responseObserver) {
-    System.out.println("Shutdown requested");
+    logOutput.log("Shutdown requested", Level.INFO);
     responseObserver.onCompleted();
     daemon.stop();
   }
 
+  /**
+   * Sends the logs not streamed yet and stops the log sender thread, once the server stopped.
+   */
+  public void close() {
+    logOutput.close();
+  }
+
 }
@@ -0,0 +1,86 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.transport;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+
+/**
+ * Everything using Netty's epoll transport, which is only shipped in the Linux distribution. Kept apart so that
+ * {@link ServerTransport} loads without it.
+ */
+final class EpollTransport {
+  private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+  private EpollTransport() {
+    // only static
+  }
+
+  static void checkAvailable() {
+    if (!Epoll.isAvailable()) {
+      throw new IllegalStateException("The epoll transport is not available on this platform", Epoll.unavailabilityCause());
+    }
+  }
+
+  static EventLoopGroup eventLoopGroup(int threads, DefaultThreadFactory threadFactory) {
+    return new EpollEventLoopGroup(threads, threadFactory);
+  }
+
+  static Class<? extends ServerChannel> serverChannelType(boolean domainSocket) {
+    return domainSocket ? EpollServerDomainSocketChannel.class : EpollServerSocketChannel.class;
+  }
+
+  static SocketAddress domainSocketAddress(Path socket) {
+    return new DomainSocketAddress(socket.toFile());
+  }
+
+  /**
+   * Whether something accepts connections on this socket, as opposed to a socket file left by a process that died.
+   */
+  static boolean isListening(Path socket, EventLoopGroup group) {
+    ChannelFuture connect = new Bootstrap()
+      .group(group)
+      .channel(EpollDomainSocketChannel.class)
+      .handler(new ChannelInboundHandlerAdapter())
+      .connect(domainSocketAddress(socket));
+    if (!connect.awaitUninterruptibly(CONNECT_TIMEOUT_MILLIS)) {
+      // accepted by the kernel but not served, still owned by a live process
+      connect.cancel(false);
+      return true;
+    }
+    if (connect.isSuccess()) {
+      connect.channel().close().awaitUninterruptibly();
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.transport;
+
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.annotation.Nullable;
+import org.sonarlint.daemon.Options;
+
+/**
+ * Where and how the gRPC server listens: a TCP port on localhost with Netty's NIO transport by default, or Linux's native epoll
+ * transport, which can also listen on a Unix domain socket. The epoll transport is only in the classpath of the Linux
+ * distribution, see {@link EpollTransport}.
+ */
+public class ServerTransport {
+  private final SocketAddress address;
+  @Nullable
+  private final Path socket;
+  private final boolean epoll;
+  private final Class<? extends ServerChannel> channelType;
+  private final EventLoopGroup bossGroup;
+  private final EventLoopGroup workerGroup;
+  private final int flowControlWindow;
+  private final int maxInboundMessageSize;
+
+  private ServerTransport(Options options, int port) throws IOException {
+    this.socket = options.getSocket();
+    this.epoll = options.isEpoll();
+    if (epoll) {
+      checkEpollAvailable();
+    }
+    this.bossGroup = eventLoopGroup(options.getBossThreads(), "sonarlint-grpc-boss");
+    this.workerGroup = eventLoopGroup(options.getWorkerThreads(), "sonarlint-grpc-worker");
+    if (socket != null) {
+      try {
+        deleteStaleSocket(socket, workerGroup);
+      } catch (RuntimeException | IOException e) {
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
+        throw e;
+      }
+      this.address = EpollTransport.domainSocketAddress(socket);
+    } else {
+      this.address = new InetSocketAddress("localhost", port);
+    }
+    this.channelType = epoll ? EpollTransport.serverChannelType(socket != null) : NioServerSocketChannel.class;
+    this.flowControlWindow = options.getFlowControlWindow() * 1024;
+    this.maxInboundMessageSize = options.getMaxInboundMessageSize() * 1024 * 1024;
+  }
+
+  private static void checkEpollAvailable() {
+    try {
+      Class.forName("io.netty.channel.epoll.Epoll", false, ServerTransport.class.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("The epoll transport is only included in the Linux distribution", e);
+    }
+    EpollTransport.checkAvailable();
+  }
+
+  /**
+   * A socket file is left behind by a daemon that did not shut down cleanly. It is only removed if nothing listens on it anymore.
+   */
+  private static void deleteStaleSocket(Path socket, EventLoopGroup group) throws IOException {
+    if (!Files.exists(socket)) {
+      return;
+    }
+    if (Files.isRegularFile(socket) || Files.isDirectory(socket)) {
+      throw new IllegalStateException("Not a socket: " + socket);
+    }
+    if (EpollTransport.isListening(socket, group)) {
+      throw new IllegalStateException("Socket already in use, is another daemon running? " + socket);
+    }
+    Files.deleteIfExists(socket);
+  }
+
+  /**
+   * @param port ignored when listening on a Unix domain socket
+   */
+  public static ServerTransport create(Options options, int port) throws IOException {
+    return new ServerTransport(options, port);
+  }
+
+  private EventLoopGroup eventLoopGroup(int threads, String name) {
+    // daemon threads, like gRPC's own
+    DefaultThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+    return epoll ? EpollTransport.eventLoopGroup(threads, threadFactory) : new NioEventLoopGroup(threads, threadFactory);
+  }
+
+  public NettyServerBuilder serverBuilder() {
+    return NettyServerBuilder.forAddress(address)
+      .channelType(channelType)
+      .bossEventLoopGroup(bossGroup)
+      .workerEventLoopGroup(workerGroup)
+      .flowControlWindow(flowControlWindow)
+      .maxInboundMessageSize(maxInboundMessageSize);
+  }
+
+  /**
+   * Releases the event loops, once the server is terminated.
+   */
+  public void shutdown() throws IOException {
+    bossGroup.shutdownGracefully();
+    workerGroup.shutdownGracefully();
+    if (socket != null) {
+      Files.deleteIfExists(socket);
+    }
+  }
+
+  @Override
+  public String toString() {
+    if (socket != null) {
+      return "unix:" + socket;
+    }
+    return "port " + ((InetSocketAddress) address).getPort() + (epoll ? " (epoll)" : "");
+  }
+}
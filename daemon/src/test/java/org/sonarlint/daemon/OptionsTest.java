@@ -21,6 +21,7 @@ package org.sonarlint.daemon;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.nio.file.Paths;
 import java.text.ParseException;
 
 import org.junit.Test;
@@ -32,6 +33,118 @@ public class OptionsTest {
     assertThat(Options.parse(args).getPort()).isEqualTo(1234);
   }
 
+  @Test
+  public void testCacheSize() throws ParseException {
+    assertThat(Options.parse(new String[0]).getCacheSize()).isZero();
+    String[] args = {"--cache-size", "64"};
+    assertThat(Options.parse(args).getCacheSize()).isEqualTo(64);
+  }
+
+  @Test
+  public void testEnginePoolSize() throws ParseException {
+    assertThat(Options.parse(new String[0]).getEnginePoolSize()).isEqualTo(1);
+    String[] args = {"--engines", "4"};
+    assertThat(Options.parse(args).getEnginePoolSize()).isEqualTo(4);
+  }
+
+  @Test
+  public void testParallelMinFiles() throws ParseException {
+    assertThat(Options.parse(new String[0]).getParallelMinFiles()).isZero();
+    String[] args = {"--parallel-min-files", "500"};
+    assertThat(Options.parse(args).getParallelMinFiles()).isEqualTo(500);
+  }
+
+  @Test
+  public void testInteractiveMaxFiles() throws ParseException {
+    assertThat(Options.parse(new String[0]).getInteractiveMaxFiles()).isEqualTo(1);
+    String[] args = {"--interactive-max-files", "3"};
+    assertThat(Options.parse(args).getInteractiveMaxFiles()).isEqualTo(3);
+  }
+
+  @Test
+  public void testBackgroundChunkSize() throws ParseException {
+    assertThat(Options.parse(new String[0]).getBackgroundChunkSize()).isZero();
+    String[] args = {"--background-chunk-size", "50"};
+    assertThat(Options.parse(args).getBackgroundChunkSize()).isEqualTo(50);
+  }
+
+  @Test
+  public void testCoalesce() throws ParseException {
+    assertThat(Options.parse(new String[0]).isCoalesce()).isFalse();
+    String[] args = {"--coalesce"};
+    assertThat(Options.parse(args).isCoalesce()).isTrue();
+  }
+
+  @Test
+  public void testBatchWindow() throws ParseException {
+    assertThat(Options.parse(new String[0]).getBatchWindow()).isZero();
+    String[] args = {"--batch-window", "5"};
+    assertThat(Options.parse(args).getBatchWindow()).isEqualTo(5);
+  }
+
+  @Test
+  public void testMetricsPort() throws ParseException {
+    assertThat(Options.parse(new String[0]).getMetricsPort()).isNull();
+    String[] args = {"--metrics-port", "9100"};
+    assertThat(Options.parse(args).getMetricsPort()).isEqualTo(9100);
+  }
+
+  @Test
+  public void testJfrRecording() throws ParseException {
+    Options defaults = Options.parse(new String[0]);
+    assertThat(defaults.getJfrRecording()).isNull();
+    assertThat(defaults.getJfrMaxSize()).isEqualTo(100);
+    String[] args = {"--jfr-recording", "daemon.jfr", "--jfr-max-size", "20"};
+    Options options = Options.parse(args);
+    assertThat(options.getJfrRecording()).isEqualTo(Paths.get("daemon.jfr"));
+    assertThat(options.getJfrMaxSize()).isEqualTo(20);
+  }
+
+  @Test
+  public void testCapture() throws ParseException {
+    Options defaults = Options.parse(new String[0]);
+    assertThat(defaults.getCapture()).isNull();
+    assertThat(defaults.isCaptureContents()).isFalse();
+    String[] args = {"--capture", "requests.bin", "--capture-contents"};
+    Options options = Options.parse(args);
+    assertThat(options.getCapture()).isEqualTo(Paths.get("requests.bin"));
+    assertThat(options.isCaptureContents()).isTrue();
+  }
+
+  @Test
+  public void testLogFile() throws ParseException {
+    Options defaults = Options.parse(new String[0]);
+    assertThat(defaults.getLogFile()).isNull();
+    assertThat(defaults.getLogFileSize()).isEqualTo(10);
+    assertThat(defaults.getLogFileCount()).isEqualTo(5);
+    String[] args = {"--log-file", "daemon.log", "--log-file-size", "2", "--log-file-count", "3"};
+    Options options = Options.parse(args);
+    assertThat(options.getLogFile()).isEqualTo(Paths.get("daemon.log"));
+    assertThat(options.getLogFileSize()).isEqualTo(2);
+    assertThat(options.getLogFileCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void testTransport() throws ParseException {
+    Options defaults = Options.parse(new String[0]);
+    assertThat(defaults.getSocket()).isNull();
+    assertThat(defaults.isEpoll()).isFalse();
+    assertThat(defaults.getBossThreads()).isEqualTo(1);
+    assertThat(defaults.getWorkerThreads()).isZero();
+    assertThat(defaults.getFlowControlWindow()).isEqualTo(1024);
+    assertThat(defaults.getMaxInboundMessageSize()).isEqualTo(4);
+    String[] args = {"--epoll", "--boss-threads", "2", "--worker-threads", "4", "--flow-control-window", "256", "--max-inbound-message-size", "16"};
+    Options options = Options.parse(args);
+    assertThat(options.isEpoll()).isTrue();
+    assertThat(options.getBossThreads()).isEqualTo(2);
+    assertThat(options.getWorkerThreads()).isEqualTo(4);
+    assertThat(options.getFlowControlWindow()).isEqualTo(256);
+    assertThat(options.getMaxInboundMessageSize()).isEqualTo(16);
+    Options socket = Options.parse(new String[] {"--socket", "daemon.sock"});
+    assertThat(socket.getSocket()).isEqualTo(Paths.get("daemon.sock"));
+    assertThat(socket.isEpoll()).isTrue();
+  }
+
   @Test
   public void testHelp() throws ParseException {
     String[] args = {"-h"};
@@ -20,11 +20,14 @@
 package org.sonarlint.daemon;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.junit.After;
 import org.junit.Assume;
@@ -33,6 +36,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
 
 public class UtilsTest {
   @Rule
@@ -101,4 +105,18 @@ public class UtilsTest {
     assertThat(Utils.getAnalyzers(plugins.getParent())).contains(jar.toUri().toURL());
   }
 
+  @Test
+  public void fingerprint_changes_with_analyzers() {
+    String fingerprint = Utils.getAnalyzersFingerprint(Arrays.asList(plugin("javascript", "6.2"), plugin("java", "6.5")));
+    assertThat(Utils.getAnalyzersFingerprint(Arrays.asList(plugin("java", "6.5"), plugin("javascript", "6.2")))).isEqualTo(fingerprint);
+    assertThat(Utils.getAnalyzersFingerprint(Arrays.asList(plugin("java", "6.5"), plugin("javascript", "6.3")))).isNotEqualTo(fingerprint);
+  }
+
+  private static PluginDetails plugin(String key, String version) {
+    PluginDetails plugin = mock(PluginDetails.class);
+    when(plugin.key()).thenReturn(key);
+    when(plugin.version()).thenReturn(version);
+    return plugin;
+  }
+
 }
@@ -0,0 +1,126 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.sonarlint.daemon.engine.EnginePool;
+import org.sonarlint.daemon.engine.Priority;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AnalysisCoalescerTest {
+  private final AnalysisCoalescer coalescer = new AnalysisCoalescer(true);
+
+  @Test
+  public void supersede_older_analysis_of_same_file() {
+    AnalysisMonitor older = new AnalysisMonitor(Context.ROOT);
+    AnalysisMonitor newer = new AnalysisMonitor(Context.ROOT);
+
+    coalescer.register("/base", files("a.js"), older);
+    coalescer.register("/base", files("a.js"), newer);
+
+    assertThat(older.isSuperseded()).isTrue();
+    assertThat(newer.isSuperseded()).isFalse();
+    assertThat(coalescer.registeredCount()).isEqualTo(2);
+    assertThat(coalescer.supersededCount()).isEqualTo(1);
+    assertThat(coalescer.coalescingRate()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void stop_superseded_analysis_waiting_for_engine() throws Exception {
+    EnginePool<String> pool = EnginePool.shared("engine", 1);
+    pool.checkout();
+    AnalysisMonitor older = new AnalysisMonitor(Context.ROOT);
+    coalescer.register("/base", files("a.js"), older);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> waiting = executor.submit(() -> pool.checkout(Priority.INTERACTIVE, older));
+      while (pool.stats().waiting() == 0) {
+        Thread.sleep(10);
+      }
+
+      coalescer.register("/base", files("a.js"), new AnalysisMonitor(Context.ROOT));
+
+      assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(CancellationException.class);
+      assertThat(pool.stats().waiting()).isZero();
+      assertThat(older.cancellationStatus().getCode()).isEqualTo(Status.Code.ABORTED);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void ignore_finished_and_unrelated_analyses() {
+    AnalysisMonitor finished = new AnalysisMonitor(Context.ROOT);
+    AnalysisMonitor otherFile = new AnalysisMonitor(Context.ROOT);
+    AnalysisMonitor otherBaseDir = new AnalysisMonitor(Context.ROOT);
+
+    coalescer.register("/base", files("a.js"), finished).close();
+    coalescer.register("/base", files("b.js"), otherFile);
+    coalescer.register("/other", files("a.js"), otherBaseDir);
+    coalescer.register("/base", files("a.js"), new AnalysisMonitor(Context.ROOT));
+
+    assertThat(finished.isSuperseded()).isFalse();
+    assertThat(otherFile.isSuperseded()).isFalse();
+    assertThat(otherBaseDir.isSuperseded()).isFalse();
+    assertThat(coalescer.supersededCount()).isZero();
+  }
+
+  @Test
+  public void only_coalesce_single_file_analyses() {
+    AnalysisMonitor older = new AnalysisMonitor(Context.ROOT);
+
+    coalescer.register("/base", files("a.js", "b.js"), older);
+    coalescer.register("/base", files("a.js", "b.js"), new AnalysisMonitor(Context.ROOT));
+
+    assertThat(older.isSuperseded()).isFalse();
+    assertThat(coalescer.registeredCount()).isZero();
+    assertThat(coalescer.coalescingRate()).isZero();
+  }
+
+  @Test
+  public void do_nothing_when_disabled() {
+    AnalysisCoalescer disabled = new AnalysisCoalescer(false);
+    AnalysisMonitor older = new AnalysisMonitor(Context.ROOT);
+
+    disabled.register("/base", files("a.js"), older);
+    disabled.register("/base", files("a.js"), new AnalysisMonitor(Context.ROOT));
+
+    assertThat(older.isSuperseded()).isFalse();
+  }
+
+  private static List<InputFile> files(String... paths) {
+    return Arrays.stream(paths)
+      .map(p -> InputFile.newBuilder().setPath(p).build())
+      .collect(Collectors.toList());
+  }
+}
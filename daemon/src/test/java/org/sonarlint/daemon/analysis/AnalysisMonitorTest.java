@@ -0,0 +1,153 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import io.grpc.Context;
+import io.grpc.Context.CancellableContext;
+import io.grpc.Status;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.After;
+import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class AnalysisMonitorTest {
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void follows_context_cancellation() {
+    CancellableContext context = Context.ROOT.withCancellation();
+    AnalysisMonitor monitor = new AnalysisMonitor(context);
+    assertThat(monitor.isCanceled()).isFalse();
+
+    context.cancel(null);
+
+    assertThat(monitor.isCanceled()).isTrue();
+    assertThat(monitor.isDeadlineExceeded()).isFalse();
+    assertThat(monitor.cancellationStatus().getCode()).isEqualTo(Status.Code.CANCELLED);
+  }
+
+  @Test
+  public void reports_expired_deadline() {
+    CancellableContext context = Context.ROOT.withDeadlineAfter(-1, TimeUnit.SECONDS, scheduler);
+    AnalysisMonitor monitor = new AnalysisMonitor(context);
+
+    assertThat(monitor.isCanceled()).isTrue();
+    assertThat(monitor.isDeadlineExceeded()).isTrue();
+    assertThat(monitor.cancellationStatus().getCode()).isEqualTo(Status.Code.DEADLINE_EXCEEDED);
+  }
+
+  @Test
+  public void notifies_cancellation_listeners() {
+    CancellableContext context = Context.ROOT.withCancellation();
+    AnalysisMonitor monitor = new AnalysisMonitor(context);
+    AtomicInteger notified = new AtomicInteger();
+    monitor.onCancel(notified::incrementAndGet);
+    assertThat(notified.get()).isZero();
+
+    context.cancel(null);
+    assertThat(notified.get()).isEqualTo(1);
+
+    monitor.onCancel(notified::incrementAndGet);
+    assertThat(notified.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void notifies_cancellation_listeners_when_deadline_expires() throws InterruptedException {
+    CancellableContext context = Context.ROOT.withDeadlineAfter(50, TimeUnit.MILLISECONDS, scheduler);
+    AnalysisMonitor monitor = new AnalysisMonitor(context);
+    CountDownLatch notified = new CountDownLatch(1);
+    monitor.onCancel(notified::countDown);
+
+    assertThat(notified.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(monitor.cancellationStatus().getCode()).isEqualTo(Status.Code.DEADLINE_EXCEEDED);
+  }
+
+  @Test
+  public void notifies_cancellation_listeners_when_superseded() {
+    AnalysisMonitor monitor = new AnalysisMonitor(Context.ROOT);
+    AtomicInteger notified = new AtomicInteger();
+    monitor.onCancel(notified::incrementAndGet);
+
+    monitor.supersede();
+    assertThat(notified.get()).isEqualTo(1);
+
+    monitor.onCancel(notified::incrementAndGet);
+    assertThat(notified.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void reports_superseded_analysis() {
+    AnalysisMonitor monitor = new AnalysisMonitor(Context.ROOT);
+
+    monitor.supersede();
+
+    assertThat(monitor.isCanceled()).isTrue();
+    assertThat(monitor.cancellationStatus().getCode()).isEqualTo(Status.Code.ABORTED);
+  }
+
+  @Test
+  public void measures_cpu_time() throws Exception {
+    AnalysisMonitor monitor = new AnalysisMonitor(Context.ROOT);
+
+    long result = monitor.measure(() -> {
+      long sum = 0;
+      for (int i = 0; i < 10_000_000; i++) {
+        sum += i % 7;
+      }
+      return sum;
+    });
+
+    assertThat(result).isPositive();
+    assertThat(monitor.cpuNanos()).isGreaterThanOrEqualTo(0);
+    assertThat(monitor.engineNanos()).isPositive();
+  }
+
+  @Test
+  public void measures_issue_listener_time() {
+    AnalysisMonitor monitor = new AnalysisMonitor(Context.ROOT);
+    Issue issue = mock(Issue.class);
+    List<Issue> handled = new ArrayList<>();
+
+    IssueListener listener = monitor.timed(i -> {
+      handled.add(i);
+      LockSupport.parkNanos(1_000_000);
+    });
+    listener.handle(issue);
+
+    assertThat(handled).containsExactly(issue);
+    assertThat(monitor.listenerNanos()).isGreaterThanOrEqualTo(1_000_000);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CancellationStatsTest {
+  private final CancellationStats stats = new CancellationStats();
+
+  @Test
+  public void estimates_saved_cpu_from_completed_analyses() {
+    stats.completed(10, 1000);
+
+    stats.cancelled(monitor(false, 300), 5);
+
+    assertThat(stats.cancelledCount()).isEqualTo(1);
+    assertThat(stats.deadlineExceededCount()).isZero();
+    assertThat(stats.cancelledCpuNanos()).isEqualTo(300);
+    assertThat(stats.savedCpuNanos()).isEqualTo(200);
+  }
+
+  @Test
+  public void counts_deadlines_separately() {
+    stats.cancelled(monitor(true, 300), 5);
+
+    assertThat(stats.cancelledCount()).isZero();
+    assertThat(stats.deadlineExceededCount()).isEqualTo(1);
+    // nothing to estimate from yet
+    assertThat(stats.savedCpuNanos()).isZero();
+  }
+
+  @Test
+  public void saved_time_is_never_negative() {
+    stats.completed(1, 100);
+
+    stats.cancelled(monitor(false, 500), 1);
+
+    assertThat(stats.savedCpuNanos()).isZero();
+  }
+
+  private static AnalysisMonitor monitor(boolean deadlineExceeded, long cpuNanos) {
+    AnalysisMonitor monitor = mock(AnalysisMonitor.class);
+    when(monitor.isDeadlineExceeded()).thenReturn(deadlineExceeded);
+    when(monitor.cpuNanos()).thenReturn(cpuNanos);
+    return monitor;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import com.google.protobuf.ByteString;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.sonarlint.daemon.model.InMemoryClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileShardsTest {
+  private final Path baseDir = Paths.get("project").toAbsolutePath();
+
+  @Test
+  public void balance_shards_by_size() {
+    List<ClientInputFile> files = Arrays.asList(file("a", 100), file("b", 60), file("c", 50), file("d", 40), file("e", 10));
+
+    List<List<ClientInputFile>> shards = FileShards.partition(files, 2);
+
+    assertThat(shards).hasSize(2);
+    assertThat(shards.get(0)).extracting(ClientInputFile::relativePath).containsExactly("a", "d");
+    assertThat(shards.get(1)).extracting(ClientInputFile::relativePath).containsExactly("b", "c", "e");
+    assertThat(totalSize(shards.get(0))).isEqualTo(140);
+    assertThat(totalSize(shards.get(1))).isEqualTo(120);
+  }
+
+  @Test
+  public void no_empty_shards() {
+    List<ClientInputFile> files = Arrays.asList(file("a", 1), file("b", 2));
+
+    assertThat(FileShards.partition(files, 8)).hasSize(2);
+    assertThat(FileShards.partition(files, 1)).hasSize(1);
+    assertThat(FileShards.partition(Collections.emptyList(), 4)).isEmpty();
+  }
+
+  @Test
+  public void all_files_assigned_once() {
+    List<ClientInputFile> files = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      files.add(file("f" + i, (i * 7919) % 1013));
+    }
+
+    List<List<ClientInputFile>> shards = FileShards.partition(files, 7);
+
+    List<ClientInputFile> all = new ArrayList<>();
+    shards.forEach(all::addAll);
+    assertThat(all).containsExactlyInAnyOrderElementsOf(files);
+    long min = shards.stream().mapToLong(FileShardsTest::totalSize).min().getAsLong();
+    long max = shards.stream().mapToLong(FileShardsTest::totalSize).max().getAsLong();
+    assertThat(max - min).isLessThanOrEqualTo(1013);
+  }
+
+  private static long totalSize(List<ClientInputFile> shard) {
+    return shard.stream().mapToLong(FileShards::sizeOf).sum();
+  }
+
+  private ClientInputFile file(String name, int size) {
+    byte[] content = new byte[size];
+    Arrays.fill(content, (byte) 'x');
+    return new InMemoryClientInputFile(baseDir, baseDir.resolve(name), false, StandardCharsets.UTF_8, "", "js", ByteString.copyFrom(content), null);
+  }
+}
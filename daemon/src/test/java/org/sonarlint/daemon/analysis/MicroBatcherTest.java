@@ -0,0 +1,206 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.analysis;
+
+import io.grpc.Context;
+import io.grpc.stub.StreamObserver;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MicroBatcherTest {
+  private final Path baseDir = Paths.get("base");
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final List<List<ClientInputFile>> analyzed = Collections.synchronizedList(new ArrayList<>());
+
+  private final MicroBatcher batcher = new MicroBatcher(1000, (dir, props, files, listener, monitor) -> {
+    analyzed.add(new ArrayList<>(files));
+    for (ClientInputFile file : files) {
+      listener.handle(issue(file));
+    }
+  });
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void merge_concurrent_requests_and_send_issues_to_their_owner() throws Exception {
+    ClientInputFile a = file("a.js");
+    ClientInputFile b = file("b.js");
+    StreamObserver<Issue> observerA = mock(StreamObserver.class);
+    StreamObserver<Issue> observerB = mock(StreamObserver.class);
+
+    Future<?> first = executor.submit(() -> analyze(a, observerA));
+    Thread.sleep(100);
+    Future<?> second = executor.submit(() -> analyze(b, observerB));
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    assertThat(analyzed).containsExactly(Arrays.asList(a, b));
+    assertThat(batcher.batchCount()).isEqualTo(1);
+    assertThat(batcher.requestCount()).isEqualTo(2);
+    assertThat(captureIssues(observerA)).extracting(Issue::getFilePath).containsExactly("a.js");
+    assertThat(captureIssues(observerB)).extracting(Issue::getFilePath).containsExactly("b.js");
+  }
+
+  @Test
+  public void send_issues_from_the_thread_of_their_request() throws Exception {
+    ClientInputFile a = file("a.js");
+    ClientInputFile b = file("b.js");
+    Map<String, Thread> senders = new ConcurrentHashMap<>();
+    Map<String, Thread> requesters = new ConcurrentHashMap<>();
+
+    Future<?> first = executor.submit(() -> analyzeFrom(a, senders, requesters));
+    Thread.sleep(100);
+    Future<?> second = executor.submit(() -> analyzeFrom(b, senders, requesters));
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    assertThat(senders).isEqualTo(requesters).hasSize(2);
+  }
+
+  @Test
+  public void drop_issues_not_attached_to_a_file() throws Exception {
+    MicroBatcher withProjectIssue = new MicroBatcher(1000, (dir, props, files, listener, monitor) -> {
+      listener.handle(issue(null));
+      files.forEach(f -> listener.handle(issue(f)));
+    });
+    StreamObserver<Issue> observerA = mock(StreamObserver.class);
+    StreamObserver<Issue> observerB = mock(StreamObserver.class);
+
+    Future<?> first = executor.submit(() -> analyze(withProjectIssue, file("a.js"), observerA));
+    Thread.sleep(100);
+    Future<?> second = executor.submit(() -> analyze(withProjectIssue, file("b.js"), observerB));
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    assertThat(captureIssues(observerA)).extracting(Issue::getFilePath).containsExactly("a.js");
+    assertThat(captureIssues(observerB)).extracting(Issue::getFilePath).containsExactly("b.js");
+  }
+
+  @Test
+  public void run_full_batch_without_waiting_for_the_window() throws Exception {
+    MicroBatcher small = new MicroBatcher(60_000, 2, (dir, props, files, listener, monitor) -> analyzed.add(new ArrayList<>(files)));
+    StreamObserver<Issue> observer = mock(StreamObserver.class);
+
+    Future<?> first = executor.submit(() -> analyze(small, file("a.js"), observer));
+    Thread.sleep(100);
+    Future<?> second = executor.submit(() -> analyze(small, file("b.js"), observer));
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    assertThat(analyzed).hasSize(1);
+    assertThat(analyzed.get(0)).hasSize(2);
+  }
+
+  @Test
+  public void measure_engine_time_of_each_request() throws Exception {
+    AnalysisMonitor monitor = new AnalysisMonitor(Context.ROOT);
+    MicroBatcher slow = new MicroBatcher(1, (dir, props, files, listener, m) -> Thread.sleep(10));
+
+    slow.analyze(baseDir, Collections.emptyMap(), Collections.singletonList(file("a.js")), mock(StreamObserver.class), monitor);
+
+    assertThat(monitor.engineNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+  }
+
+  @Test
+  public void dont_merge_requests_for_same_file() throws Exception {
+    StreamObserver<Issue> observer = mock(StreamObserver.class);
+
+    Future<?> first = executor.submit(() -> analyze(file("a.js"), observer));
+    Thread.sleep(100);
+    Future<?> second = executor.submit(() -> analyze(file("a.js"), observer));
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    assertThat(analyzed).hasSize(2);
+    assertThat(batcher.batchCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void disabled_without_window() {
+    assertThat(new MicroBatcher(0, (dir, props, files, listener, monitor) -> {
+    }).isEnabled()).isFalse();
+    assertThat(batcher.isEnabled()).isTrue();
+  }
+
+  private Void analyze(ClientInputFile file, StreamObserver<Issue> observer) throws Exception {
+    return analyze(batcher, file, observer);
+  }
+
+  private Void analyze(MicroBatcher microBatcher, ClientInputFile file, StreamObserver<Issue> observer) throws Exception {
+    microBatcher.analyze(baseDir, Collections.emptyMap(), Collections.singletonList(file), observer, new AnalysisMonitor(Context.ROOT));
+    return null;
+  }
+
+  private Void analyzeFrom(ClientInputFile file, Map<String, Thread> senders, Map<String, Thread> requesters) throws Exception {
+    requesters.put(file.getPath(), Thread.currentThread());
+    StreamObserver<Issue> observer = mock(StreamObserver.class);
+    doAnswer(i -> senders.put(file.getPath(), Thread.currentThread())).when(observer).onNext(any());
+    return analyze(file, observer);
+  }
+
+  private static List<Issue> captureIssues(StreamObserver<Issue> observer) {
+    ArgumentCaptor<Issue> captor = ArgumentCaptor.forClass(Issue.class);
+    verify(observer, times(1)).onNext(captor.capture());
+    return captor.getAllValues();
+  }
+
+  private static ClientInputFile file(String path) {
+    ClientInputFile file = mock(ClientInputFile.class);
+    when(file.getPath()).thenReturn(path);
+    return file;
+  }
+
+  private static org.sonarsource.sonarlint.core.client.api.common.analysis.Issue issue(@Nullable ClientInputFile file) {
+    org.sonarsource.sonarlint.core.client.api.common.analysis.Issue i = mock(org.sonarsource.sonarlint.core.client.api.common.analysis.Issue.class);
+    when(i.getMessage()).thenReturn("msg");
+    when(i.getRuleKey()).thenReturn("key");
+    when(i.getRuleName()).thenReturn("name");
+    when(i.getSeverity()).thenReturn("MAJOR");
+    when(i.getInputFile()).thenReturn(file);
+    return i;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.cache;
+
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarlint.daemon.model.DefaultClientInputFile;
+import org.sonarlint.daemon.model.InMemoryClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class IssueCacheTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final Path baseDir = Paths.get("project").toAbsolutePath();
+  private final Map<String, String> properties = Collections.singletonMap("key", "value");
+
+  @Test
+  public void replay_issues_of_known_content() throws IOException {
+    IssueCache cache = new IssueCache(1024 * 1024);
+    ClientInputFile withIssue = file("a.js", "content a", "obj a");
+    ClientInputFile withoutIssue = file("b.js", "content b", "");
+
+    IssueCache.Lookup first = cache.lookup("scope", Arrays.asList(withIssue, withoutIssue), properties);
+    assertThat(first.misses()).containsExactly(withIssue, withoutIssue);
+    Collector collector = new Collector();
+    first.recorder(collector).onNext(issue(withIssue));
+    first.store();
+    assertThat(collector.issues).hasSize(1);
+
+    ClientInputFile sameContent = file("a.js", "content a", "other obj");
+    IssueCache.Lookup second = cache.lookup("scope", Arrays.asList(sameContent, file("b.js", "content b", "")), properties);
+    assertThat(second.misses()).isEmpty();
+    assertThat(second.hitCount()).isEqualTo(2);
+
+    Collector replayed = new Collector();
+    second.replayHits(replayed);
+    assertThat(replayed.issues).hasSize(1);
+    assertThat(replayed.issues.get(0).getRuleKey()).isEqualTo("rule");
+    assertThat(replayed.issues.get(0).getFilePath()).isEqualTo(sameContent.getPath());
+    assertThat(replayed.issues.get(0).getUserObject()).isEqualTo("other obj");
+    assertThat(cache.hitCount()).isEqualTo(2);
+    assertThat(cache.missCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void miss_when_content_or_properties_change() throws IOException {
+    IssueCache cache = new IssueCache(1024 * 1024);
+    analyze(cache, file("a.js", "content", ""));
+
+    assertThat(cache.lookup("scope", Collections.singletonList(file("a.js", "changed", "")), properties).misses()).hasSize(1);
+    assertThat(cache.lookup("scope", Collections.singletonList(file("a.js", "content", "")), Collections.emptyMap()).misses()).hasSize(1);
+    assertThat(cache.lookup("other", Collections.singletonList(file("a.js", "content", "")), properties).misses()).hasSize(1);
+    assertThat(cache.lookup("scope", Collections.singletonList(file("a.js", "content", "")), properties).misses()).isEmpty();
+  }
+
+  @Test
+  public void invalidate_when_fingerprint_changes() throws IOException {
+    IssueCache cache = new IssueCache(1024 * 1024);
+    cache.setFingerprint("v1");
+    analyze(cache, file("a.js", "content", ""));
+
+    cache.setFingerprint("v1");
+    assertThat(cache.lookup("scope", Collections.singletonList(file("a.js", "content", "")), properties).misses()).isEmpty();
+
+    cache.setFingerprint("v2");
+    assertThat(cache.lookup("scope", Collections.singletonList(file("a.js", "content", "")), properties).misses()).hasSize(1);
+  }
+
+  @Test
+  public void hash_files_on_disk_again_only_when_size_or_modification_time_change() throws IOException {
+    IssueCache cache = new IssueCache(1024 * 1024);
+    Path path = temp.newFile("a.js").toPath();
+    FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+    ClientInputFile file = new DefaultClientInputFile(path.getParent(), path, false, StandardCharsets.UTF_8, "", "js");
+    Files.write(path, "content a".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(path, lastModified);
+    String hash = cache.contentHash(file);
+
+    // same size and modification time: the file is not read again
+    Files.write(path, "content b".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(path, lastModified);
+    assertThat(cache.contentHash(file)).isEqualTo(hash);
+
+    Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified.toMillis() + 1000));
+    assertThat(cache.contentHash(file)).isNotEqualTo(hash);
+  }
+
+  @Test
+  public void evict_when_full() throws IOException {
+    IssueCache cache = new IssueCache(2048);
+    for (int i = 0; i < 100; i++) {
+      analyze(cache, file(i + ".js", "content " + i, ""));
+    }
+    assertThat(cache.evictionCount()).isPositive();
+  }
+
+  @Test
+  public void estimate_memory_within_maximum() throws IOException {
+    IssueCache cache = new IssueCache(4096);
+    assertThat(cache.estimatedBytes()).isZero();
+
+    for (int i = 0; i < 100; i++) {
+      analyze(cache, file(i + ".js", "content " + i, ""));
+    }
+    assertThat(cache.estimatedBytes()).isPositive().isLessThanOrEqualTo(4096);
+    assertThat(new IssueCache(0).estimatedBytes()).isZero();
+  }
+
+  @Test
+  public void dont_store_issues_not_attached_to_analyzed_files() throws IOException {
+    IssueCache cache = new IssueCache(1024 * 1024);
+    ClientInputFile file = file("a.js", "content", "");
+    IssueCache.Lookup lookup = cache.lookup("scope", Collections.singletonList(file), properties);
+    lookup.recorder(new Collector()).onNext(Issue.newBuilder().setRuleKey("project level").build());
+    lookup.store();
+
+    assertThat(cache.lookup("scope", Collections.singletonList(file), properties).misses()).hasSize(1);
+  }
+
+  @Test
+  public void disabled_cache() throws IOException {
+    IssueCache cache = new IssueCache(0);
+    ClientInputFile file = file("a.js", "content", "");
+    StreamObserver<Issue> observer = mock(StreamObserver.class);
+
+    assertThat(cache.isEnabled()).isFalse();
+    IssueCache.Lookup lookup = cache.lookup("scope", Collections.singletonList(file), properties);
+    assertThat(lookup.misses()).containsExactly(file);
+    assertThat(lookup.recorder(observer)).isSameAs(observer);
+    lookup.store();
+    lookup.replayHits(observer);
+    verifyZeroInteractions(observer);
+  }
+
+  private void analyze(IssueCache cache, ClientInputFile file) throws IOException {
+    IssueCache.Lookup lookup = cache.lookup("scope", Collections.singletonList(file), properties);
+    lookup.recorder(new Collector()).onNext(issue(file));
+    lookup.store();
+  }
+
+  private ClientInputFile file(String name, String content, String userObject) {
+    return new InMemoryClientInputFile(baseDir, baseDir.resolve(name), false, StandardCharsets.UTF_8, userObject, "js",
+      ByteString.copyFromUtf8(content), null);
+  }
+
+  private static Issue issue(ClientInputFile file) {
+    return Issue.newBuilder()
+      .setRuleKey("rule")
+      .setMessage("message")
+      .setFilePath(file.getPath())
+      .build();
+  }
+
+  private static class Collector implements StreamObserver<Issue> {
+    private final List<Issue> issues = new ArrayList<>();
+
+    @Override
+    public void onNext(Issue value) {
+      issues.add(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarlint.daemon.logging.LogSink;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.CapturedRequest;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ConnectedAnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ConnectedConfiguration;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class RequestCaptureTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final LogSink logSink = mock(LogSink.class);
+
+  @Test
+  public void should_capture_analysis_requests_in_order() throws Exception {
+    Path log = temp.getRoot().toPath().resolve("capture.bin");
+    AnalysisReq analysis = AnalysisReq.newBuilder().setBaseDir("base").addFile(InputFile.newBuilder().setPath("base/file.js")).build();
+    ConnectedConfiguration start = ConnectedConfiguration.newBuilder().setStorageId("storage").setHomePath("home").build();
+    ConnectedAnalysisReq connected = ConnectedAnalysisReq.newBuilder().setBaseDir("base").setModuleKey("module").build();
+
+    try (RequestCapture capture = RequestCapture.open(log, false, logSink)) {
+      capture.record("sonarlint.StandaloneSonarLint/Analyze", analysis);
+      capture.record("sonarlint.StandaloneSonarLint/GetRuleDetails", RuleKey.newBuilder().setKey("js:S1").build());
+      capture.record("sonarlint.ConnectedSonarLint/Start", start);
+      capture.record("sonarlint.ConnectedSonarLint/Analyze", connected);
+    }
+
+    List<CapturedRequest> captured = read(log);
+    assertThat(captured).hasSize(3);
+    assertThat(captured.get(0).getMethod()).isEqualTo("sonarlint.StandaloneSonarLint/Analyze");
+    assertThat(captured.get(0).getAnalysis()).isEqualTo(analysis);
+    assertThat(captured.get(1).getMethod()).isEqualTo("sonarlint.ConnectedSonarLint/Start");
+    assertThat(captured.get(1).getConnectedStart()).isEqualTo(start);
+    assertThat(captured.get(2).getMethod()).isEqualTo("sonarlint.ConnectedSonarLint/Analyze");
+    assertThat(captured.get(2).getConnectedAnalysis()).isEqualTo(connected);
+    assertThat(captured.get(2).getArrivalNanos()).isGreaterThanOrEqualTo(captured.get(0).getArrivalNanos());
+  }
+
+  @Test
+  public void should_snapshot_file_contents() throws Exception {
+    Path file = temp.newFile("file.js").toPath();
+    Files.write(file, "var a = 1;".getBytes(StandardCharsets.UTF_8));
+    Path log = temp.getRoot().toPath().resolve("capture.bin");
+    AnalysisReq analysis = AnalysisReq.newBuilder()
+      .addFile(InputFile.newBuilder().setPath(file.toString()))
+      .addFile(InputFile.newBuilder().setPath(temp.getRoot().toPath().resolve("deleted.js").toString()))
+      .build();
+
+    try (RequestCapture capture = RequestCapture.open(log, true, logSink)) {
+      capture.record("sonarlint.StandaloneSonarLint/Analyze", analysis);
+    }
+
+    AnalysisReq captured = read(log).get(0).getAnalysis();
+    assertThat(captured.getFile(0).getContent().toStringUtf8()).isEqualTo("var a = 1;");
+    assertThat(captured.getFile(1).getContentSourceCase()).isEqualTo(InputFile.ContentSourceCase.CONTENTSOURCE_NOT_SET);
+  }
+
+  @Test
+  public void should_ignore_requests_after_close() throws Exception {
+    Path log = temp.getRoot().toPath().resolve("capture.bin");
+    RequestCapture capture = RequestCapture.open(log, false, logSink);
+    capture.close();
+
+    capture.record("sonarlint.StandaloneSonarLint/Analyze", AnalysisReq.getDefaultInstance());
+
+    assertThat(read(log)).isEmpty();
+    assertThat(capture.droppedCount()).isZero();
+  }
+
+  @Test
+  public void should_drop_requests_when_writer_is_behind() throws Exception {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    OutputStream slow = new ByteArrayOutputStream() {
+      @Override
+      public synchronized void flush() {
+        writing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+    RequestCapture capture = new RequestCapture(slow, false, logSink, 1);
+    capture.record("sonarlint.StandaloneSonarLint/Analyze", AnalysisReq.getDefaultInstance());
+    assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+    capture.record("sonarlint.StandaloneSonarLint/Analyze", AnalysisReq.getDefaultInstance());
+    capture.record("sonarlint.StandaloneSonarLint/Analyze", AnalysisReq.getDefaultInstance());
+    release.countDown();
+    capture.close();
+
+    assertThat(capture.capturedCount()).isEqualTo(2);
+    assertThat(capture.droppedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_log_write_errors_to_log_sink() throws Exception {
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("disk full");
+      }
+    };
+
+    RequestCapture capture = new RequestCapture(failing, false, logSink, 1);
+    capture.record("sonarlint.StandaloneSonarLint/Analyze", AnalysisReq.getDefaultInstance());
+
+    verify(logSink, timeout(5000)).error(eq("Error capturing request"), any(IOException.class));
+    assertThat(capture.capturedCount()).isZero();
+    capture.close();
+  }
+
+  private static List<CapturedRequest> read(Path log) throws Exception {
+    List<CapturedRequest> requests = new ArrayList<>();
+    try (InputStream in = Files.newInputStream(log)) {
+      CapturedRequest request;
+      while ((request = CapturedRequest.parseDelimitedFrom(in)) != null) {
+        requests.add(request);
+      }
+    }
+    return requests;
+  }
+}
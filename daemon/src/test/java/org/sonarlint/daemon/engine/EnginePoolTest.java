@@ -0,0 +1,245 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.engine;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisPriority;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EnginePoolTest {
+  private final AtomicInteger created = new AtomicInteger();
+  private final List<String> stopped = new ArrayList<>();
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private EnginePool<String> newPool(int size) {
+    return new EnginePool<>(size, () -> "engine" + created.incrementAndGet(), stopped::add);
+  }
+
+  @Test
+  public void create_engines_lazily_up_to_size() throws InterruptedException {
+    EnginePool<String> pool = newPool(2);
+    pool.prestart();
+    assertThat(created.get()).isEqualTo(1);
+
+    String first = pool.checkout();
+    String second = pool.checkout();
+    assertThat(first).isNotEqualTo(second);
+    assertThat(pool.tryCheckout()).isNull();
+    assertThat(created.get()).isEqualTo(2);
+
+    pool.checkin(first);
+    assertThat(pool.tryCheckout()).isEqualTo(first);
+    assertThat(pool.stats().inUse()).isEqualTo(2);
+  }
+
+  @Test
+  public void share_started_engine_without_checkout() throws InterruptedException {
+    EnginePool<String> pool = newPool(1);
+    assertThat(pool.anyStarted()).isEqualTo("engine1");
+    assertThat(pool.stats().inUse()).isZero();
+
+    String engine = pool.checkout();
+    assertThat(pool.anyStarted()).isEqualTo(engine);
+    assertThat(pool.stats().checkouts()).isEqualTo(2);
+    assertThat(created.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void share_engine_between_concurrent_requests() throws InterruptedException {
+    EnginePool<String> pool = EnginePool.shared("shared", 2);
+
+    assertThat(pool.checkout(Priority.BACKGROUND)).isEqualTo("shared");
+    assertThat(pool.checkout(Priority.INTERACTIVE)).isEqualTo("shared");
+    assertThat(pool.tryCheckout()).isNull();
+    assertThat(pool.stats().inUse()).isEqualTo(2);
+
+    pool.checkin("shared");
+    assertThat(pool.tryCheckout()).isEqualTo("shared");
+  }
+
+  @Test
+  public void wait_for_engine_when_saturated() throws Exception {
+    EnginePool<String> pool = newPool(1);
+    String engine = pool.checkout();
+
+    CountDownLatch started = new CountDownLatch(1);
+    Future<String> waiting = executor.submit(() -> {
+      started.countDown();
+      return pool.checkout();
+    });
+    started.await();
+    while (pool.stats().waiting() == 0) {
+      Thread.sleep(10);
+    }
+    assertThat(waiting.isDone()).isFalse();
+
+    pool.checkin(engine);
+    assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo(engine);
+
+    PoolStats stats = pool.stats();
+    assertThat(stats.checkouts()).isEqualTo(2);
+    assertThat(stats.saturatedCheckouts()).isEqualTo(1);
+    assertThat(stats.maxWaiting()).isEqualTo(1);
+    assertThat(stats.totalWaitNanos()).isPositive();
+  }
+
+  @Test
+  public void serve_interactive_requests_before_background_ones() throws Exception {
+    EnginePool<String> pool = newPool(1);
+    String engine = pool.checkout();
+
+    Future<String> background = executor.submit(() -> pool.checkout(Priority.BACKGROUND));
+    awaitWaiting(pool, 1);
+    Future<String> interactive = executor.submit(() -> pool.checkout(Priority.INTERACTIVE));
+    awaitWaiting(pool, 2);
+
+    pool.checkin(engine);
+    assertThat(interactive.get(5, TimeUnit.SECONDS)).isEqualTo(engine);
+    assertThat(background.isDone()).isFalse();
+
+    pool.checkin(engine);
+    assertThat(background.get(5, TimeUnit.SECONDS)).isEqualTo(engine);
+  }
+
+  @Test
+  public void let_waiting_request_create_engine_when_creation_fails() throws Exception {
+    CountDownLatch creating = new CountDownLatch(1);
+    CountDownLatch fail = new CountDownLatch(1);
+    EnginePool<String> pool = new EnginePool<>(1, () -> {
+      if (created.incrementAndGet() == 1) {
+        creating.countDown();
+        Uninterruptibles.awaitUninterruptibly(fail);
+        throw new IllegalStateException("Invalid configuration");
+      }
+      return "engine" + created.get();
+    }, stopped::add);
+
+    Future<String> failing = executor.submit(() -> pool.checkout());
+    creating.await();
+    Future<String> waiting = executor.submit(() -> pool.checkout());
+    awaitWaiting(pool, 1);
+
+    fail.countDown();
+    assertThatThrownBy(() -> failing.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+    assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo("engine2");
+    assertThat(pool.stats().waiting()).isZero();
+    assertThat(pool.tryCheckout()).isNull();
+  }
+
+  @Test
+  public void stop_waiting_when_request_is_cancelled() throws Exception {
+    EnginePool<String> pool = newPool(1);
+    String engine = pool.checkout();
+    TestCancellation cancellation = new TestCancellation();
+
+    Future<String> cancelled = executor.submit(() -> pool.checkout(Priority.INTERACTIVE, cancellation));
+    awaitWaiting(pool, 1);
+    Future<String> next = executor.submit(() -> pool.checkout(Priority.BACKGROUND));
+    awaitWaiting(pool, 2);
+
+    cancellation.cancel();
+    assertThatThrownBy(() -> cancelled.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(CancellationException.class);
+    assertThat(pool.stats().waiting()).isEqualTo(1);
+
+    pool.checkin(engine);
+    assertThat(next.get(5, TimeUnit.SECONDS)).isEqualTo(engine);
+  }
+
+  @Test
+  public void fail_checkout_of_cancelled_request() {
+    EnginePool<String> pool = newPool(1);
+    TestCancellation cancellation = new TestCancellation();
+    cancellation.cancel();
+
+    assertThatThrownBy(() -> pool.checkout(Priority.INTERACTIVE, cancellation)).isInstanceOf(CancellationException.class);
+    assertThat(created.get()).isZero();
+  }
+
+  private static class TestCancellation implements EnginePool.Cancellation {
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean canceled;
+
+    @Override
+    public boolean isCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public void onCancel(Runnable listener) {
+      listeners.add(listener);
+    }
+
+    void cancel() {
+      canceled = true;
+      listeners.forEach(Runnable::run);
+    }
+  }
+
+  @Test
+  public void infer_priority_from_file_count() {
+    assertThat(Priority.of(AnalysisPriority.AUTO, 1, 1)).isEqualTo(Priority.INTERACTIVE);
+    assertThat(Priority.of(AnalysisPriority.AUTO, 2, 1)).isEqualTo(Priority.BACKGROUND);
+    assertThat(Priority.of(AnalysisPriority.INTERACTIVE, 100, 1)).isEqualTo(Priority.INTERACTIVE);
+    assertThat(Priority.of(AnalysisPriority.BACKGROUND, 1, 1)).isEqualTo(Priority.BACKGROUND);
+  }
+
+  private static void awaitWaiting(EnginePool<String> pool, int count) throws InterruptedException {
+    while (pool.stats().waiting() < count) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void stop_engines() throws InterruptedException {
+    EnginePool<String> pool = newPool(2);
+    String inUse = pool.checkout();
+    String idle = pool.checkout();
+    pool.checkin(idle);
+
+    pool.stop();
+    assertThat(stopped).containsExactly(idle);
+    pool.checkin(inUse);
+    assertThat(stopped).containsExactly(idle, inUse);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_invalid_size() {
+    newPool(0);
+  }
+}
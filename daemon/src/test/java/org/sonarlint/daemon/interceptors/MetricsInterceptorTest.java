@@ -0,0 +1,109 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.interceptors;
+
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCall.Listener;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonarlint.daemon.metrics.MetricsRegistry;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleDetails;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetricsInterceptorTest {
+  private static final String METHOD = "{method=\"sonarlint.StandaloneSonarLint/GetRuleDetails\"}";
+
+  private final MetricsRegistry registry = new MetricsRegistry();
+  private final MetricsInterceptor interceptor = new MetricsInterceptor(registry);
+  private final ServerCall<RuleKey, RuleDetails> call = mock(ServerCall.class);
+  private final ServerCallHandler<RuleKey, RuleDetails> next = mock(ServerCallHandler.class);
+  private final Listener<RuleKey> listener = mock(Listener.class);
+
+  @Before
+  public void setUp() {
+    when(call.getMethodDescriptor()).thenReturn(MethodDescriptor.<RuleKey, RuleDetails>newBuilder()
+      .setType(MethodDescriptor.MethodType.UNARY)
+      .setFullMethodName("sonarlint.StandaloneSonarLint/GetRuleDetails")
+      .setRequestMarshaller(mock(MethodDescriptor.Marshaller.class))
+      .setResponseMarshaller(mock(MethodDescriptor.Marshaller.class))
+      .build());
+    when(next.startCall(any(), any())).thenReturn(listener);
+  }
+
+  @Test
+  public void record_messages_and_duration_per_method() {
+    Listener<RuleKey> intercepted = interceptor.interceptCall(call, new Metadata(), next);
+    ArgumentCaptor<ServerCall> meteredCall = ArgumentCaptor.forClass(ServerCall.class);
+    verify(next).startCall(meteredCall.capture(), any());
+
+    RuleKey request = RuleKey.newBuilder().setKey("javascript:S1234").build();
+    RuleDetails response = RuleDetails.newBuilder().setKey("javascript:S1234").setName("name").build();
+    intercepted.onMessage(request);
+    meteredCall.getValue().sendMessage(response);
+    meteredCall.getValue().sendMessage(response);
+    meteredCall.getValue().close(Status.OK, new Metadata());
+    intercepted.onComplete();
+
+    verify(listener).onMessage(request);
+    verify(listener).onComplete();
+    verify(call).close(eq(Status.OK), any(Metadata.class));
+    assertThat(registry.histogram("rpc_duration" + METHOD).count()).isEqualTo(1);
+    assertThat(registry.histogram("rpc_first_message_duration" + METHOD).count()).isEqualTo(1);
+    assertThat(registry.counter("rpc_messages_received_total" + METHOD).sum()).isEqualTo(1);
+    assertThat(registry.counter("rpc_messages_sent_total" + METHOD).sum()).isEqualTo(2);
+    assertThat(registry.counter("rpc_bytes_received_total" + METHOD).sum()).isEqualTo(request.getSerializedSize());
+    assertThat(registry.counter("rpc_bytes_sent_total" + METHOD).sum()).isEqualTo(2L * response.getSerializedSize());
+    assertThat(completed("ok")).isEqualTo(1);
+  }
+
+  @Test
+  public void count_calls_cancelled_by_client() {
+    interceptor.interceptCall(call, new Metadata(), next).onCancel();
+
+    verify(listener).onCancel();
+    assertThat(registry.histogram("rpc_duration" + METHOD).count()).isEqualTo(1);
+    assertThat(registry.histogram("rpc_first_message_duration" + METHOD).count()).isZero();
+    assertThat(completed("cancelled")).isEqualTo(1);
+  }
+
+  @Test
+  public void bucket_status_codes() {
+    assertThat(MetricsInterceptor.MethodMetrics.bucket(Status.Code.ABORTED)).isEqualTo("aborted");
+    assertThat(MetricsInterceptor.MethodMetrics.bucket(Status.Code.NOT_FOUND)).isEqualTo("client_error");
+    assertThat(MetricsInterceptor.MethodMetrics.bucket(Status.Code.INTERNAL)).isEqualTo("server_error");
+    assertThat(MetricsInterceptor.MethodMetrics.bucket(Status.Code.UNKNOWN)).isEqualTo("server_error");
+  }
+
+  private long completed(String status) {
+    return registry.counter("rpc_completed_total{method=\"sonarlint.StandaloneSonarLint/GetRuleDetails\",status=\"" + status + "\"}").sum();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.jfr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FlightRecordingTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_record_daemon_events() throws Exception {
+    Path destination = temp.getRoot().toPath().resolve("daemon.jfr");
+    Recording recording = FlightRecording.start(destination, 10 * 1024 * 1024);
+    assertThat(recording.getName()).isEqualTo(FlightRecording.NAME);
+
+    AnalysisEvent analysis = new AnalysisEvent();
+    analysis.begin();
+    analysis.end("standalone", 3, 7, "OK", 1_000_000, 200_000, 100_000);
+    EngineLifecycleEvent.start("connected").commit();
+    StorageUpdateEvent.begin("module").end(false);
+    // below the threshold
+    LogStreamStallEvent.sent(12, LogStreamStallEvent.THRESHOLD_NANOS - 1);
+    LogStreamStallEvent.sent(5, 50_000_000);
+
+    // stopping writes the recording to its destination
+    recording.stop();
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(destination);
+    RecordedEvent recordedAnalysis = find(events, "org.sonarlint.daemon.Analysis");
+    assertThat(recordedAnalysis.getString("mode")).isEqualTo("standalone");
+    assertThat(recordedAnalysis.getInt("files")).isEqualTo(3);
+    assertThat(recordedAnalysis.getLong("issues")).isEqualTo(7);
+    assertThat(recordedAnalysis.getString("status")).isEqualTo("OK");
+    assertThat(recordedAnalysis.getDuration("engineTime").toNanos()).isEqualTo(1_000_000);
+
+    RecordedEvent recordedStart = find(events, "org.sonarlint.daemon.EngineLifecycle");
+    assertThat(recordedStart.getString("mode")).isEqualTo("connected");
+    assertThat(recordedStart.getString("action")).isEqualTo("start");
+
+    RecordedEvent recordedUpdate = find(events, "org.sonarlint.daemon.StorageUpdate");
+    assertThat(recordedUpdate.getString("moduleKey")).isEqualTo("module");
+    assertThat(recordedUpdate.getBoolean("succeeded")).isFalse();
+
+    assertThat(events).filteredOn(e -> e.getEventType().getName().equals("org.sonarlint.daemon.LogStreamStall")).hasSize(1);
+    RecordedEvent recordedStall = find(events, "org.sonarlint.daemon.LogStreamStall");
+    assertThat(recordedStall.getInt("events")).isEqualTo(5);
+    assertThat(recordedStall.getDuration("waitTime").toMillis()).isEqualTo(50);
+  }
+
+  private static RecordedEvent find(List<RecordedEvent> events, String name) {
+    return events.stream()
+      .filter(e -> e.getEventType().getName().equals(name))
+      .findFirst()
+      .orElseThrow(() -> new AssertionError("No event " + name));
+  }
+}
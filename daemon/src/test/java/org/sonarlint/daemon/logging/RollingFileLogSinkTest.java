@@ -0,0 +1,89 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.logging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RollingFileLogSinkTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_append_logs_to_file() throws IOException {
+    Path file = temp.getRoot().toPath().resolve("logs/daemon.log");
+    RollingFileLogSink sink = RollingFileLogSink.open(file, 1024 * 1024, 2);
+    sink.log(Level.INFO, "hello");
+    sink.error("boom", new IllegalStateException("broken"));
+    sink.close();
+
+    List<String> lines = Files.readAllLines(file);
+    assertThat(lines.get(0)).endsWith(" [INFO] hello");
+    assertThat(lines.get(1)).endsWith(" [ERROR] boom");
+    assertThat(lines.get(2)).isEqualTo("java.lang.IllegalStateException: broken");
+  }
+
+  @Test
+  public void should_roll_and_compress_full_files() throws IOException {
+    Path file = temp.getRoot().toPath().resolve("daemon.log");
+    RollingFileLogSink sink = new RollingFileLogSink(file, 200, 2, 100);
+    for (int i = 0; i < 22; i++) {
+      sink.log(Level.INFO, "log number " + i);
+    }
+    sink.close();
+
+    assertThat(sink.rotated(1)).exists();
+    assertThat(sink.rotated(2)).exists();
+    assertThat(sink.rotated(3)).doesNotExist();
+    assertThat(Files.size(file)).isLessThan(200);
+    String older = gunzip(sink.rotated(2));
+    String kept = older + gunzip(sink.rotated(1)) + new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    assertThat(older.length()).isGreaterThanOrEqualTo(200);
+    // the oldest file was deleted
+    assertThat(kept).doesNotContain("log number 0" + System.lineSeparator());
+    assertThat(kept).endsWith("log number 21" + System.lineSeparator());
+  }
+
+  @Test
+  public void should_drop_logs_once_closed() throws IOException {
+    RollingFileLogSink sink = RollingFileLogSink.open(temp.getRoot().toPath().resolve("daemon.log"), 1024, 1);
+    sink.close();
+    sink.log(Level.INFO, "too late");
+
+    assertThat(sink.droppedCount()).isEqualTo(1);
+  }
+
+  private static String gunzip(Path path) throws IOException {
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
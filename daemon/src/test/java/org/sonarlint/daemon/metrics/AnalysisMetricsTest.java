@@ -0,0 +1,98 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import io.grpc.stub.StreamObserver;
+import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class AnalysisMetricsTest {
+  private static final String LABELS = "{mode=\"standalone\"}";
+
+  private final MetricsRegistry registry = new MetricsRegistry();
+  private final AnalysisMetrics metrics = new AnalysisMetrics(registry, "standalone");
+
+  @Test
+  public void time_engine_phases_from_logs() throws Exception {
+    LogOutput delegate = mock(LogOutput.class);
+    LogOutput logOutput = metrics.wrap(delegate);
+
+    String result = metrics.timeEngine(() -> {
+      logOutput.log("Index files", Level.DEBUG);
+      logOutput.log("2 files indexed", Level.INFO);
+      return "results";
+    });
+
+    assertThat(result).isEqualTo("results");
+    verify(delegate).log("2 files indexed", Level.INFO);
+    assertThat(registry.histogram("analysis_engine_duration" + LABELS).count()).isEqualTo(1);
+    assertThat(registry.histogram("analysis_indexing_duration" + LABELS).count()).isEqualTo(1);
+    assertThat(registry.histogram("analysis_sensors_duration" + LABELS).count()).isEqualTo(1);
+  }
+
+  @Test
+  public void only_detect_the_exact_indexing_log() throws Exception {
+    LogOutput logOutput = metrics.wrap(mock(LogOutput.class));
+
+    metrics.timeEngine(() -> {
+      logOutput.log("Module indexed", Level.DEBUG);
+      logOutput.log("Files are being indexed", Level.DEBUG);
+      logOutput.log("12 files indexed in 3 ms", Level.DEBUG);
+      return null;
+    });
+    assertThat(registry.histogram("analysis_indexing_duration" + LABELS).count()).isZero();
+
+    metrics.timeEngine(() -> {
+      logOutput.log("1 file indexed", Level.INFO);
+      return null;
+    });
+    assertThat(registry.histogram("analysis_indexing_duration" + LABELS).count()).isEqualTo(1);
+  }
+
+  @Test
+  public void ignore_logs_outside_of_engine_calls() {
+    metrics.wrap(mock(LogOutput.class)).log("1 file indexed", Level.INFO);
+
+    assertThat(registry.histogram("analysis_indexing_duration" + LABELS).count()).isZero();
+  }
+
+  @Test
+  public void meter_issue_stream() {
+    StreamObserver<Issue> delegate = mock(StreamObserver.class);
+    StreamObserver<Issue> observer = metrics.meter(delegate);
+
+    observer.onNext(Issue.getDefaultInstance());
+    observer.onNext(Issue.getDefaultInstance());
+    observer.onCompleted();
+    metrics.analyzed(3, 1000);
+
+    verify(delegate).onCompleted();
+    assertThat(registry.counter("analysis_issues_total" + LABELS).sum()).isEqualTo(2);
+    assertThat(registry.counter("analysis_files_total" + LABELS).sum()).isEqualTo(3);
+    assertThat(registry.histogram("analysis_streaming_duration" + LABELS).count()).isEqualTo(1);
+    assertThat(registry.histogram("analysis_duration" + LABELS).snapshot().max()).isEqualTo(1000);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HistogramTest {
+  @Test
+  public void buckets_cover_all_values() {
+    assertThat(Histogram.index(0)).isZero();
+    assertThat(Histogram.index(7)).isEqualTo(7);
+    assertThat(Histogram.index(Long.MAX_VALUE)).isEqualTo(Histogram.BUCKETS - 1);
+    assertThat(Histogram.upperBound(Histogram.BUCKETS - 1)).isEqualTo(Long.MAX_VALUE);
+
+    for (long value : new long[] {8, 15, 16, 17, 1000, 123_456_789, 1L << 40}) {
+      int index = Histogram.index(value);
+      assertThat(Histogram.upperBound(index)).isGreaterThanOrEqualTo(value);
+      assertThat(Histogram.upperBound(index - 1)).isLessThan(value);
+    }
+  }
+
+  @Test
+  public void relative_error_is_bounded() {
+    for (long value = 8; value < 1_000_000; value = value * 3 + 1) {
+      long upper = Histogram.upperBound(Histogram.index(value));
+      assertThat((double) (upper - value) / value).isLessThan(0.125);
+    }
+  }
+
+  @Test
+  public void compute_percentiles() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1_000_000L);
+    }
+
+    Histogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count()).isEqualTo(100);
+    assertThat(snapshot.sum()).isEqualTo(5050 * 1_000_000L);
+    assertThat(snapshot.max()).isEqualTo(100_000_000L);
+    assertThat(snapshot.percentile(0.5)).isBetween(50_000_000L, 56_250_000L);
+    assertThat(snapshot.percentile(0.99)).isBetween(99_000_000L, 100_000_000L);
+    assertThat(snapshot.percentile(1)).isEqualTo(100_000_000L);
+  }
+
+  @Test
+  public void visit_non_empty_buckets() {
+    Histogram histogram = new Histogram();
+    histogram.record(3);
+    histogram.record(3);
+    histogram.record(-1);
+
+    List<long[]> buckets = new ArrayList<>();
+    histogram.snapshot().forEachBucket((upperBound, count) -> buckets.add(new long[] {upperBound, count}));
+
+    assertThat(buckets).containsExactly(new long[] {0, 1}, new long[] {3, 2});
+    assertThat(new Histogram().snapshot().percentile(0.99)).isZero();
+  }
+}
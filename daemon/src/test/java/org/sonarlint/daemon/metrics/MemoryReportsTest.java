@@ -0,0 +1,94 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import java.util.List;
+import org.junit.Test;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReport;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReport.ClassHistogramEntry;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.MemoryReq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+public class MemoryReportsTest {
+  @Test
+  public void report_jvm_memory_and_components() throws Exception {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.gauge(MemoryReports.componentGauge("issue_cache"), () -> 1234);
+    registry.gauge("engine_pool_size", () -> 2);
+
+    MemoryReport report = MemoryReports.toProto(registry, MemoryReq.getDefaultInstance());
+
+    assertThat(report.getHeap().getUsed()).isPositive();
+    assertThat(report.getHeap().getCommitted()).isGreaterThanOrEqualTo(report.getHeap().getUsed());
+    assertThat(report.getPoolList()).isNotEmpty();
+    assertThat(report.getGarbageCollectorList()).isNotEmpty();
+    assertThat(report.getBufferPoolList()).extracting("name").contains("direct");
+    assertThat(report.getComponentList()).extracting("name", "bytes").containsExactly(tuple("issue_cache", 1234L));
+    assertThat(report.getClassHistogramList()).isEmpty();
+  }
+
+  @Test
+  public void report_load_allocation_of_engines_until_they_stop() throws Exception {
+    MetricsRegistry registry = new MetricsRegistry();
+    long before = MemoryReports.allocatedBytes();
+    byte[] loaded = new byte[1 << 20];
+    long allocated = MemoryReports.allocatedBytes() - before;
+    registry.gauge(MemoryReports.loadAllocationGauge("engine_0"), () -> allocated);
+
+    MemoryReport report = MemoryReports.toProto(registry, MemoryReq.getDefaultInstance());
+
+    assertThat(loaded).hasSize(1 << 20);
+    assertThat(allocated).isGreaterThanOrEqualTo(1 << 20);
+    assertThat(report.getComponentList()).isEmpty();
+    assertThat(report.getLoadAllocationList()).extracting("name", "bytes").containsExactly(tuple("engine_0", allocated));
+
+    registry.remove(MemoryReports.loadAllocationGauge("engine_0"));
+
+    assertThat(MemoryReports.toProto(registry, MemoryReq.getDefaultInstance()).getLoadAllocationList()).isEmpty();
+    assertThat(registry.gauges()).isEmpty();
+  }
+
+  @Test
+  public void report_class_histogram_on_demand() throws Exception {
+    MemoryReq request = MemoryReq.newBuilder().setClassHistogram(true).setClassHistogramSize(5).build();
+
+    MemoryReport report = MemoryReports.toProto(new MetricsRegistry(), request);
+
+    assertThat(report.getClassHistogramList()).hasSize(5);
+    assertThat(report.getClassHistogram(0).getBytes()).isGreaterThanOrEqualTo(report.getClassHistogram(4).getBytes());
+  }
+
+  @Test
+  public void parse_class_histogram() {
+    String histogram = " num     #instances         #bytes  class name (module)\n"
+      + "-------------------------------------------------------\n"
+      + "   1:         12000         960000  [B (java.base@11.0.8)\n"
+      + "   2:          8000         192000  java.lang.String (java.base@11.0.8)\n"
+      + "   3:           100           4800  java.util.HashMap$Node (java.base@11.0.8)\n"
+      + "Total         20100        1156800\n";
+
+    List<ClassHistogramEntry> entries = MemoryReports.parseClassHistogram(histogram, 2);
+
+    assertThat(entries).extracting("className", "instances", "bytes")
+      .containsExactly(tuple("[B", 12000L, 960000L), tuple("java.lang.String", 8000L, 192000L));
+  }
+}
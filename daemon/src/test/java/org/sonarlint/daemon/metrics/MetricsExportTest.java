@@ -0,0 +1,53 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import org.junit.Test;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+public class MetricsExportTest {
+  @Test
+  public void export_registry() {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("files_total").add(3);
+    registry.counter("files_total").increment();
+    registry.counter("hits_total", () -> 7);
+    registry.gauge("waiting", () -> 2);
+    registry.histogram("duration").record(10);
+    registry.histogram("duration").record(20);
+
+    Metrics metrics = MetricsExport.toProto(registry);
+
+    assertThat(metrics.getCounterList()).extracting("name", "value").containsExactly(tuple("files_total", 4L), tuple("hits_total", 7L));
+    assertThat(metrics.getGaugeList()).extracting("name", "value").containsExactly(tuple("waiting", 2L));
+    assertThat(metrics.getHistogramCount()).isEqualTo(1);
+    Metrics.Histogram histogram = metrics.getHistogram(0);
+    assertThat(histogram.getName()).isEqualTo("duration");
+    assertThat(histogram.getCount()).isEqualTo(2);
+    assertThat(histogram.getSum()).isEqualTo(30);
+    assertThat(histogram.getMax()).isEqualTo(20);
+    assertThat(histogram.getP50()).isEqualTo(10);
+    assertThat(histogram.getP99()).isEqualTo(20);
+    assertThat(histogram.getBucketList()).extracting("upperBound", "count").containsExactly(tuple(10L, 1L), tuple(21L, 1L));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Test;
+import org.sonarlint.daemon.logging.LogSink;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class MetricsHttpServerTest {
+  private final LogSink logSink = mock(LogSink.class);
+  private MetricsHttpServer server;
+
+  @After
+  public void tearDown() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void serve_metrics() throws Exception {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("analysis_total").increment();
+    server = MetricsHttpServer.start(0, registry, logSink);
+
+    HttpURLConnection connection = open();
+
+    assertThat(connection.getResponseCode()).isEqualTo(200);
+    assertThat(connection.getContentType()).startsWith("text/plain; version=0.0.4");
+    try (InputStream in = connection.getInputStream()) {
+      String body = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+      assertThat(body).contains("analysis_total 1\n");
+    }
+  }
+
+  @Test
+  public void log_errors_to_log_sink() throws Exception {
+    MetricsRegistry registry = new MetricsRegistry();
+    IllegalStateException failure = new IllegalStateException("broken gauge");
+    registry.gauge("broken", () -> {
+      throw failure;
+    });
+    server = MetricsHttpServer.start(0, registry, logSink);
+
+    try {
+      open().getResponseCode();
+    } catch (IOException e) {
+      // the exchange is closed without a response
+    }
+
+    verify(logSink, timeout(5000)).error("Error serving metrics", failure);
+  }
+
+  private HttpURLConnection open() throws IOException {
+    return (HttpURLConnection) new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.port(), "/metrics").openConnection();
+  }
+}
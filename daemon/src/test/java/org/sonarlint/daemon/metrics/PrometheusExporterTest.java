@@ -0,0 +1,89 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrometheusExporterTest {
+  private final MetricsRegistry registry = new MetricsRegistry();
+
+  @Test
+  public void write_counters_and_gauges_by_family() throws IOException {
+    registry.counter("analysis_files_total{mode=\"standalone\"}").add(3);
+    registry.counter("analysis_files_total{mode=\"connected\"}").add(1);
+    registry.counter("analysis_cpu_saved_nanos_total", () -> 1_500_000_000L);
+    registry.gauge("engine_pool_waiting{mode=\"standalone\"}", () -> 2);
+
+    String text = export();
+
+    assertThat(text).contains("# TYPE analysis_files_total counter\n"
+      + "analysis_files_total{mode=\"connected\"} 1\n"
+      + "analysis_files_total{mode=\"standalone\"} 3\n");
+    assertThat(text).contains("# TYPE analysis_cpu_saved_seconds_total counter\nanalysis_cpu_saved_seconds_total 1.5\n");
+    assertThat(text).contains("# TYPE engine_pool_waiting gauge\nengine_pool_waiting{mode=\"standalone\"} 2\n");
+  }
+
+  @Test
+  public void write_histograms_in_seconds() throws IOException {
+    Histogram histogram = registry.histogram("rpc_duration{method=\"a/b\"}");
+    histogram.record(2_000_000);
+    histogram.record(20_000_000_000L);
+    registry.histogram("no_labels_duration").record(1);
+
+    String text = export();
+
+    assertThat(text).contains("# TYPE rpc_duration_seconds histogram\n");
+    assertThat(text).contains("rpc_duration_seconds_bucket{method=\"a/b\",le=\"0.001\"} 0\n");
+    assertThat(text).contains("rpc_duration_seconds_bucket{method=\"a/b\",le=\"0.0025\"} 1\n");
+    assertThat(text).contains("rpc_duration_seconds_bucket{method=\"a/b\",le=\"10.0\"} 1\n");
+    assertThat(text).contains("rpc_duration_seconds_bucket{method=\"a/b\",le=\"30.0\"} 2\n");
+    assertThat(text).contains("rpc_duration_seconds_bucket{method=\"a/b\",le=\"+Inf\"} 2\n");
+    assertThat(text).contains("rpc_duration_seconds_count{method=\"a/b\"} 2\n");
+    assertThat(text).contains("rpc_duration_seconds_sum{method=\"a/b\"} 20.002\n");
+    assertThat(text).contains("no_labels_duration_seconds_bucket{le=\"0.001\"} 1\n");
+  }
+
+  @Test
+  public void write_jvm_metrics() throws IOException {
+    String text = export();
+
+    assertThat(text).contains("jvm_memory_bytes_used{area=\"heap\"} ");
+    assertThat(text).contains("# TYPE jvm_gc_collections_total counter\n");
+    assertThat(text).contains("jvm_threads_current ");
+  }
+
+  @Test
+  public void split_names_and_labels() {
+    assertThat(PrometheusExporter.family("a_total{x=\"1\"}")).isEqualTo("a_total");
+    assertThat(PrometheusExporter.labels("a_total{x=\"1\"}")).isEqualTo("{x=\"1\"}");
+    assertThat(PrometheusExporter.family("a_total")).isEqualTo("a_total");
+    assertThat(PrometheusExporter.labels("a_total")).isEmpty();
+  }
+
+  private String export() throws IOException {
+    StringWriter writer = new StringWriter();
+    new PrometheusExporter(registry).write(writer);
+    return writer.toString();
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClientInputFilesTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void use_content_from_request_when_present() throws IOException {
+    Path baseDir = temp.getRoot().toPath();
+    Path onDisk = baseDir.resolve("saved.js");
+    Files.write(onDisk, "on disk".getBytes(StandardCharsets.UTF_8));
+
+    InputFile saved = InputFile.newBuilder()
+      .setPath(onDisk.toString())
+      .setCharset(StandardCharsets.UTF_8.name())
+      .build();
+    InputFile unsaved = InputFile.newBuilder()
+      .setPath(onDisk.toString())
+      .setCharset(StandardCharsets.UTF_8.name())
+      .setContent(ByteString.copyFromUtf8("in editor"))
+      .setLanguage("js")
+      .build();
+    InputFile empty = InputFile.newBuilder()
+      .setPath(onDisk.toString())
+      .setCharset(StandardCharsets.UTF_8.name())
+      .setContent(ByteString.EMPTY)
+      .build();
+
+    List<ClientInputFile> files = ClientInputFiles.toClientInputFiles(baseDir, Arrays.asList(saved, unsaved, empty));
+
+    assertThat(files.get(0)).isExactlyInstanceOf(DefaultClientInputFile.class);
+    assertThat(files.get(0).contents()).isEqualTo("on disk");
+    assertThat(files.get(0).language()).isNull();
+    assertThat(files.get(1)).isInstanceOf(InMemoryClientInputFile.class);
+    assertThat(files.get(1).contents()).isEqualTo("in editor");
+    assertThat(files.get(1).language()).isEqualTo("js");
+    assertThat(((InMemoryClientInputFile) files.get(1)).contentHash()).isNull();
+    assertThat(files.get(2).contents()).isEmpty();
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FlowControlledStreamObserverTest {
+  private static final int ISSUE_COUNT = FlowControlledStreamObserver.DEFAULT_CAPACITY + 500;
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final FlowControlStats stats = new FlowControlStats();
+  private ServerCallStreamObserver<String> delegate;
+  private FlowControlledStreamObserver<String> observer;
+  private Runnable onReady;
+  private Runnable onCancel;
+  private final AtomicBoolean ready = new AtomicBoolean();
+  private final AtomicBoolean callCancelled = new AtomicBoolean();
+  private Server server;
+  private ManagedChannel channel;
+
+  @Before
+  public void setUp() {
+    delegate = mock(ServerCallStreamObserver.class);
+    // answered from the state of the test, as the producer threads read it while tests change it
+    when(delegate.isReady()).thenAnswer(i -> ready.get());
+    when(delegate.isCancelled()).thenAnswer(i -> callCancelled.get());
+    observer = new FlowControlledStreamObserver<>(delegate, 2, stats);
+    ArgumentCaptor<Runnable> readyHandler = ArgumentCaptor.forClass(Runnable.class);
+    ArgumentCaptor<Runnable> cancelHandler = ArgumentCaptor.forClass(Runnable.class);
+    verify(delegate).setOnReadyHandler(readyHandler.capture());
+    verify(delegate).setOnCancelHandler(cancelHandler.capture());
+    onReady = readyHandler.getValue();
+    onCancel = cancelHandler.getValue();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    if (channel != null) {
+      channel.shutdownNow();
+      server.shutdownNow();
+    }
+  }
+
+  @Test
+  public void send_directly_when_ready() {
+    ready.set(true);
+    observer.onNext("a");
+    observer.onCompleted();
+
+    verify(delegate).onNext("a");
+    verify(delegate).onCompleted();
+  }
+
+  @Test
+  public void queue_until_ready_and_complete_after_drain() {
+    observer.onNext("a");
+    observer.onNext("b");
+    observer.onCompleted();
+    verify(delegate, never()).onNext(anyString());
+    verify(delegate, never()).onCompleted();
+
+    ready.set(true);
+    onReady.run();
+
+    verify(delegate).onNext("a");
+    verify(delegate).onNext("b");
+    verify(delegate).onCompleted();
+    assertThat(observer.queued()).isZero();
+  }
+
+  @Test
+  public void pause_producer_when_queue_is_full() throws Exception {
+    observer.onNext("a");
+    observer.onNext("b");
+
+    CountDownLatch started = new CountDownLatch(1);
+    Future<?> producer = executor.submit(() -> {
+      started.countDown();
+      observer.onNext("c");
+    });
+    started.await();
+    Thread.sleep(100);
+    assertThat(producer.isDone()).isFalse();
+
+    ready.set(true);
+    onReady.run();
+    producer.get(5, TimeUnit.SECONDS);
+    onReady.run();
+
+    verify(delegate).onNext("c");
+    assertThat(observer.blockedNanos()).isPositive();
+    assertThat(stats.blockedCount()).isEqualTo(1);
+    assertThat(stats.blockedNanos()).isEqualTo(observer.blockedNanos());
+  }
+
+  @Test
+  public void resume_producer_when_transport_is_ready_without_ready_handler() throws Exception {
+    observer.onNext("a");
+    observer.onNext("b");
+    Future<?> producer = executor.submit(() -> observer.onNext("c"));
+
+    // the handler can't run while the producer occupies the executor of the call
+    ready.set(true);
+    producer.get(5, TimeUnit.SECONDS);
+
+    verify(delegate).onNext("a");
+    verify(delegate).onNext("b");
+    verify(delegate).onNext("c");
+  }
+
+  @Test
+  public void release_producer_when_call_is_cancelled_without_cancel_handler() throws Exception {
+    observer.onNext("a");
+    observer.onNext("b");
+    Future<?> producer = executor.submit(() -> observer.onNext("c"));
+
+    callCancelled.set(true);
+    producer.get(5, TimeUnit.SECONDS);
+    observer.onCompleted();
+
+    verify(delegate, never()).onNext(anyString());
+    verify(delegate, never()).onCompleted();
+  }
+
+  @Test
+  public void release_producer_and_drop_messages_when_cancelled() throws Exception {
+    observer.onNext("a");
+    observer.onNext("b");
+    Future<?> producer = executor.submit(() -> observer.onNext("c"));
+
+    onCancel.run();
+    producer.get(5, TimeUnit.SECONDS);
+    observer.onNext("d");
+    observer.onCompleted();
+
+    verify(delegate, never()).onNext(anyString());
+    verify(delegate, never()).onCompleted();
+  }
+
+  @Test
+  public void error_discards_queue() {
+    observer.onNext("a");
+    IllegalStateException error = new IllegalStateException();
+    observer.onError(error);
+
+    verify(delegate).onError(error);
+    ready.set(true);
+    onReady.run();
+    verify(delegate, never()).onNext(anyString());
+    verify(delegate, times(0)).onCompleted();
+  }
+
+  @Test
+  public void analysis_is_released_when_client_that_stopped_reading_cancels() throws Exception {
+    CountDownLatch finished = new CountDownLatch(1);
+    AtomicReference<ClientCallStreamObserver<AnalysisReq>> call = new AtomicReference<>();
+    AtomicReference<FlowControlledStreamObserver<Issue>> serverSide = startServer(finished);
+
+    StandaloneSonarLintGrpc.newStub(channel).analyze(AnalysisReq.getDefaultInstance(), new ClientResponseObserver<AnalysisReq, Issue>() {
+      @Override
+      public void beforeStart(ClientCallStreamObserver<AnalysisReq> requestStream) {
+        // the client never asks for more than the first issue
+        requestStream.disableAutoInboundFlowControl();
+        call.set(requestStream);
+      }
+
+      @Override
+      public void onNext(Issue value) {
+      }
+
+      @Override
+      public void onError(Throwable t) {
+      }
+
+      @Override
+      public void onCompleted() {
+      }
+    });
+    waitUntilQueueIsFull(serverSide);
+
+    call.get().cancel("client gave up", null);
+    assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void analysis_resumes_when_client_reads_again() throws Exception {
+    CountDownLatch finished = new CountDownLatch(1);
+    CountDownLatch completed = new CountDownLatch(1);
+    AtomicInteger received = new AtomicInteger();
+    AtomicReference<ClientCallStreamObserver<AnalysisReq>> call = new AtomicReference<>();
+    AtomicReference<FlowControlledStreamObserver<Issue>> serverSide = startServer(finished);
+
+    StandaloneSonarLintGrpc.newStub(channel).analyze(AnalysisReq.getDefaultInstance(), new ClientResponseObserver<AnalysisReq, Issue>() {
+      @Override
+      public void beforeStart(ClientCallStreamObserver<AnalysisReq> requestStream) {
+        requestStream.disableAutoInboundFlowControl();
+        call.set(requestStream);
+      }
+
+      @Override
+      public void onNext(Issue value) {
+        received.incrementAndGet();
+      }
+
+      @Override
+      public void onError(Throwable t) {
+      }
+
+      @Override
+      public void onCompleted() {
+        completed.countDown();
+      }
+    });
+    waitUntilQueueIsFull(serverSide);
+
+    call.get().request(ISSUE_COUNT);
+    assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(received.get()).isEqualTo(ISSUE_COUNT);
+  }
+
+  /**
+   * Starts an in-process server whose analysis produces more issues than the queue of the observer can hold, in the handler thread.
+   */
+  private AtomicReference<FlowControlledStreamObserver<Issue>> startServer(CountDownLatch finished) throws IOException {
+    AtomicReference<FlowControlledStreamObserver<Issue>> serverSide = new AtomicReference<>();
+    String name = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(name)
+      .addService(new StandaloneSonarLintGrpc.StandaloneSonarLintImplBase() {
+        @Override
+        public void analyze(AnalysisReq request, StreamObserver<Issue> response) {
+          FlowControlledStreamObserver<Issue> flowControlled = (FlowControlledStreamObserver<Issue>) FlowControlledStreamObserver.wrap(response, stats);
+          serverSide.set(flowControlled);
+          try {
+            for (int i = 0; i < ISSUE_COUNT; i++) {
+              flowControlled.onNext(Issue.newBuilder().setRuleKey("rule" + i).build());
+            }
+            flowControlled.onCompleted();
+          } finally {
+            finished.countDown();
+          }
+        }
+      })
+      .build()
+      .start();
+    channel = InProcessChannelBuilder.forName(name).build();
+    return serverSide;
+  }
+
+  private static void waitUntilQueueIsFull(AtomicReference<FlowControlledStreamObserver<Issue>> serverSide) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (serverSide.get() == null || serverSide.get().queued() < FlowControlledStreamObserver.DEFAULT_CAPACITY) {
+      assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void dont_wrap_other_observers() {
+    StreamObserver<String> plain = mock(StreamObserver.class);
+    assertThat(FlowControlledStreamObserver.wrap(plain, stats)).isSameAs(plain);
+    assertThat(FlowControlledStreamObserver.wrap(delegate, stats)).isInstanceOf(FlowControlledStreamObserver.class);
+  }
+}
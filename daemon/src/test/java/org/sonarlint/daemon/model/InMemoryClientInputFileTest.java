@@ -0,0 +1,56 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import com.google.protobuf.ByteString;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryClientInputFileTest {
+  @Test
+  public void testInputFile() throws IOException {
+    Charset charset = StandardCharsets.UTF_16;
+    Path path = Paths.get("base", "file.js").toAbsolutePath();
+    ByteString content = ByteString.copyFrom("unsaved", charset);
+
+    InMemoryClientInputFile file = new InMemoryClientInputFile(path.getParent(), path, false, charset, "obj", "js", content, "hash");
+
+    assertThat(file.getCharset()).isEqualTo(charset);
+    assertThat(file.language()).isEqualTo("js");
+    assertThat(file.getPath()).isEqualTo(path.toString());
+    assertThat(file.relativePath()).isEqualTo("file.js");
+    assertThat(file.contents()).isEqualTo("unsaved");
+    assertThat(file.content()).isSameAs(content);
+    assertThat(file.contentHash()).isEqualTo("hash");
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.inputStream(), charset))) {
+      assertThat(reader.lines().collect(Collectors.joining())).isEqualTo("unsaved");
+    }
+    assertThat((String) file.getClientObject()).isEqualTo("obj");
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import io.grpc.stub.StreamObserver;
+import java.util.List;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.BatchedIssue;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue.Severity;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.IssueBatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class IssueBatcherTest {
+  @Test
+  public void send_rules_and_files_once_per_stream() {
+    StreamObserver<IssueBatch> observer = mock(StreamObserver.class);
+    IssueBatcher batcher = new IssueBatcher(observer, 2);
+
+    batcher.onNext(issue("js:S1", "a.js", 1));
+    batcher.onNext(issue("js:S1", "b.js", 2));
+    batcher.onNext(issue("js:S2", "a.js", 3));
+    verify(observer, times(1)).onNext(any(IssueBatch.class));
+    batcher.onCompleted();
+
+    ArgumentCaptor<IssueBatch> argument = ArgumentCaptor.forClass(IssueBatch.class);
+    verify(observer, times(2)).onNext(argument.capture());
+    verify(observer).onCompleted();
+    List<IssueBatch> batches = argument.getAllValues();
+
+    IssueBatch first = batches.get(0);
+    assertThat(first.getNewRuleList()).extracting("key", "name").containsExactly(tuple("js:S1", "name of js:S1"));
+    assertThat(first.getNewFileList()).extracting("path", "userObject").containsExactly(tuple("a.js", "obj a.js"), tuple("b.js", "obj b.js"));
+    assertThat(first.getIssueList()).extracting(BatchedIssue::getRuleId, BatchedIssue::getFileId, BatchedIssue::getStartLine)
+      .containsExactly(tuple(1, 1, 1), tuple(1, 2, 2));
+
+    IssueBatch second = batches.get(1);
+    assertThat(second.getNewRuleList()).extracting("key").containsExactly("js:S2");
+    assertThat(second.getNewFileList()).isEmpty();
+    BatchedIssue last = second.getIssue(0);
+    assertThat(last.getRuleId()).isEqualTo(2);
+    assertThat(last.getFileId()).isEqualTo(1);
+    assertThat(last.getMessage()).isEqualTo("msg");
+    assertThat(last.getSeverity()).isEqualTo(Severity.CRITICAL);
+  }
+
+  @Test
+  public void issue_without_file() {
+    StreamObserver<IssueBatch> observer = mock(StreamObserver.class);
+    IssueBatcher batcher = new IssueBatcher(observer);
+
+    batcher.onNext(Issue.newBuilder().setRuleKey("rule").build());
+    batcher.onCompleted();
+
+    ArgumentCaptor<IssueBatch> argument = ArgumentCaptor.forClass(IssueBatch.class);
+    verify(observer).onNext(argument.capture());
+    assertThat(argument.getValue().getIssue(0).getFileId()).isZero();
+    assertThat(argument.getValue().getNewFileList()).isEmpty();
+  }
+
+  @Test
+  public void dont_send_empty_batch() {
+    StreamObserver<IssueBatch> observer = mock(StreamObserver.class);
+    IssueBatcher batcher = new IssueBatcher(observer);
+
+    batcher.onCompleted();
+    verify(observer, never()).onNext(any(IssueBatch.class));
+    verify(observer).onCompleted();
+  }
+
+  private static Issue issue(String ruleKey, String path, int line) {
+    return Issue.newBuilder()
+      .setRuleKey(ruleKey)
+      .setRuleName("name of " + ruleKey)
+      .setFilePath(path)
+      .setUserObject("obj " + path)
+      .setStartLine(line)
+      .setMessage("msg")
+      .setSeverity(Severity.CRITICAL)
+      .build();
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogSubscription;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+public class LogFilterTest {
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void accept_everything_by_default() {
+    LogFilter filter = LogFilter.of(LogSubscription.getDefaultInstance());
+
+    assertThat(Level.values()).allMatch(filter::isEnabled);
+    assertThat(filter.accept("msg", System.nanoTime())).isTrue();
+  }
+
+  @Test
+  public void filter_levels() {
+    LogFilter filter = LogFilter.of(LogSubscription.newBuilder().setMinLevel(LogEvent.Level.INFO).build());
+
+    assertThat(filter.isEnabled(Level.ERROR)).isTrue();
+    assertThat(filter.isEnabled(Level.WARN)).isTrue();
+    assertThat(filter.isEnabled(Level.INFO)).isTrue();
+    assertThat(filter.isEnabled(Level.DEBUG)).isFalse();
+    assertThat(filter.isEnabled(Level.TRACE)).isFalse();
+  }
+
+  @Test
+  public void filter_errors_only() {
+    LogFilter filter = LogFilter.of(LogSubscription.newBuilder().setMinLevel(LogEvent.Level.ERROR).build());
+
+    assertThat(filter.isEnabled(Level.ERROR)).isTrue();
+    assertThat(filter.isEnabled(Level.WARN)).isFalse();
+  }
+
+  @Test
+  public void filter_pattern() {
+    LogFilter filter = LogFilter.of(LogSubscription.newBuilder().setPattern("^Sensor ").build());
+
+    assertThat(filter.accept("Sensor JavaScript analysis", System.nanoTime())).isTrue();
+    assertThat(filter.accept("1 file indexed", System.nanoTime())).isFalse();
+  }
+
+  @Test
+  public void reject_invalid_pattern() {
+    StatusRuntimeException e = catchThrowableOfType(() -> LogFilter.of(LogSubscription.newBuilder().setPattern("(").build()),
+      StatusRuntimeException.class);
+
+    assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+  }
+
+  @Test
+  public void limit_rate_and_summarize_drops() {
+    long start = System.nanoTime();
+    LogFilter filter = new LogFilter(LogEvent.Level.TRACE, null, 2);
+
+    assertThat(filter.accept("1", start)).isTrue();
+    assertThat(filter.accept("2", start)).isTrue();
+    assertThat(filter.accept("3", start)).isFalse();
+    assertThat(filter.accept("4", start)).isFalse();
+    // summarized a second after the first drop
+    assertThat(filter.takeNotice(start)).isNull();
+
+    assertThat(filter.accept("5", start + SECOND)).isTrue();
+    assertThat(filter.takeNotice(start + SECOND)).isEqualTo("2 logs were not sent, above the limit of 2 logs per second");
+    assertThat(filter.takeNotice(start + 3 * SECOND)).isNull();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogRingTest {
+  @Test
+  public void round_capacity_to_power_of_two() {
+    assertThat(new LogRing(1).capacity()).isEqualTo(2);
+    assertThat(new LogRing(8).capacity()).isEqualTo(8);
+    assertThat(new LogRing(9).capacity()).isEqualTo(16);
+  }
+
+  @Test
+  public void poll_in_order_until_empty() {
+    LogRing ring = new LogRing(4);
+    assertThat(ring.offer("a", Level.INFO)).isTrue();
+    assertThat(ring.offer("b", Level.DEBUG)).isTrue();
+    assertThat(ring.size()).isEqualTo(2);
+
+    List<String> polled = new ArrayList<>();
+    while (ring.poll((message, level) -> polled.add(level + " " + message))) {
+      // drain
+    }
+
+    assertThat(polled).containsExactly("INFO a", "DEBUG b");
+    assertThat(ring.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void reject_when_full() {
+    LogRing ring = new LogRing(2);
+    assertThat(ring.offer("a", Level.INFO)).isTrue();
+    assertThat(ring.offer("b", Level.INFO)).isTrue();
+    assertThat(ring.offer("c", Level.INFO)).isFalse();
+
+    assertThat(ring.poll((message, level) -> assertThat(message).isEqualTo("a"))).isTrue();
+    assertThat(ring.offer("c", Level.INFO)).isTrue();
+    assertThat(ring.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void concurrent_producers() throws Exception {
+    int producers = 4;
+    int logsPerProducer = 100_000;
+    LogRing ring = new LogRing(64);
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      String prefix = p + ":";
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < logsPerProducer; i++) {
+          while (!ring.offer(prefix + i, Level.INFO)) {
+            Thread.yield();
+          }
+        }
+      }));
+    }
+
+    int[] next = new int[producers];
+    int received = 0;
+    while (received < producers * logsPerProducer) {
+      if (ring.poll((message, level) -> {
+        String[] parts = message.split(":");
+        int producer = Integer.parseInt(parts[0]);
+        // each producer's logs come out in the order they were offered
+        assertThat(Integer.parseInt(parts[1])).isEqualTo(next[producer]);
+        next[producer]++;
+      })) {
+        received++;
+      }
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(next).containsOnly(logsPerProducer);
+    assertThat(ring.isEmpty()).isTrue();
+  }
+}
@@ -20,77 +20,377 @@
 package org.sonarlint.daemon.model;
 
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.sonarlint.daemon.Daemon;
+import org.sonarlint.daemon.logging.ConsoleLogSink;
+import org.sonarlint.daemon.logging.LogSink;
 import org.sonarsource.sonarlint.core.client.api.common.LogOutput.Level;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogBatch;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogSubscription;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.groups.Tuple.tuple;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ProxyLogOutputTest {
-  private StreamObserver<LogEvent> observer;
+  private StreamObserver<LogBatch> observer;
+  private ProxyLogOutput log;
 
   @Before
   public void setup() {
     observer = mock(StreamObserver.class);
   }
 
+  @After
+  public void tearDown() {
+    if (log != null) {
+      log.close();
+    }
+  }
+
   @Test
   public void testProxyLog() {
-    ProxyLogOutput log = new ProxyLogOutput(mock(Daemon.class));
-    log.log("log msg", Level.INFO);
-
-    log.setObserver(observer);
+    log = new ProxyLogOutput(mock(Daemon.class));
+    log.subscribeBatched(observer);
     log.log("msg", Level.DEBUG);
 
-    ArgumentCaptor<LogEvent> argument = ArgumentCaptor.forClass(LogEvent.class);
-    verify(observer).onNext(argument.capture());
-    LogEvent event = argument.getValue();
+    ArgumentCaptor<LogBatch> argument = ArgumentCaptor.forClass(LogBatch.class);
+    verify(observer, timeout(1000)).onNext(argument.capture());
+    LogBatch batch = argument.getValue();
 
+    assertThat(batch.getEventCount()).isEqualTo(1);
+    LogEvent event = batch.getEvent(0);
     assertThat(event.getIsDebug()).isTrue();
     assertThat(event.getLevel()).isEqualTo("DEBUG");
+    assertThat(event.getSeverity()).isEqualTo(LogEvent.Level.DEBUG);
     assertThat(event.getLog()).isEqualTo("msg");
   }
 
+  @Test
+  public void testStreamLogsOneByOne() {
+    log = new ProxyLogOutput(mock(Daemon.class));
+    StreamObserver<LogEvent> events = mock(StreamObserver.class);
+    log.subscribe(events);
+    log.log("first", Level.INFO);
+    log.log("second", Level.DEBUG);
+
+    ArgumentCaptor<LogEvent> argument = ArgumentCaptor.forClass(LogEvent.class);
+    verify(events, timeout(1000).times(2)).onNext(argument.capture());
+    assertThat(argument.getAllValues()).extracting("level", "severity", "log")
+      .containsExactly(tuple("INFO", LogEvent.Level.INFO, "first"), tuple("DEBUG", LogEvent.Level.DEBUG, "second"));
+  }
+
+  @Test
+  public void testLogToSinkWithoutSubscribers() {
+    LogSink sink = mock(LogSink.class);
+    log = new ProxyLogOutput(mock(Daemon.class), sink);
+    log.log("msg", Level.DEBUG);
+
+    verify(sink, timeout(1000)).log(Level.DEBUG, "msg");
+  }
+
   @Test
   public void testLogError() {
-    ProxyLogOutput log = new ProxyLogOutput(mock(Daemon.class));
+    log = new ProxyLogOutput(mock(Daemon.class));
     log.log("log msg", Level.INFO);
 
-    log.setObserver(observer);
+    log.subscribeBatched(observer);
     log.log("msg", Level.ERROR);
 
-    ArgumentCaptor<LogEvent> argument = ArgumentCaptor.forClass(LogEvent.class);
-    verify(observer, atLeastOnce()).onNext(argument.capture());
+    ArgumentCaptor<LogBatch> argument = ArgumentCaptor.forClass(LogBatch.class);
+    verify(observer, timeout(1000).atLeastOnce()).onNext(argument.capture());
 
-    assertThat(argument.getAllValues()).extracting("isDebug", "level", "log")
+    assertThat(argument.getAllValues()).flatExtracting(LogBatch::getEventList).extracting("isDebug", "level", "log")
       .contains(tuple(false, "ERROR", "msg"));
   }
 
   @Test
-  public void testSetLogTwice() {
-    ProxyLogOutput log = new ProxyLogOutput(mock(Daemon.class));
-    log.setObserver(observer);
-    log.setObserver(observer);
-    verify(observer).onCompleted();
+  public void testSeveralSubscribers() {
+    log = new ProxyLogOutput(mock(Daemon.class));
+    StreamObserver<LogBatch> other = mock(StreamObserver.class);
+    log.subscribeBatched(observer);
+    log.subscribeBatched(other);
+    assertThat(log.subscriberCount()).isEqualTo(2);
+    log.log("msg", Level.INFO);
+
+    ArgumentCaptor<LogBatch> argument = ArgumentCaptor.forClass(LogBatch.class);
+    verify(observer, timeout(1000)).onNext(argument.capture());
+    verify(other, timeout(1000)).onNext(argument.capture());
+    assertThat(argument.getAllValues()).flatExtracting(LogBatch::getEventList).extracting("log").containsExactly("msg", "msg");
+    verify(observer, never()).onCompleted();
+  }
+
+  @Test
+  public void testSlowSubscriberDoesNotStallOthers() {
+    log = new ProxyLogOutput(mock(Daemon.class));
+    ServerCallStreamObserver<LogBatch> slow = mock(ServerCallStreamObserver.class);
+    log.subscribeBatched(slow);
+    log.subscribeBatched(observer);
+    ArgumentCaptor<Runnable> onReady = ArgumentCaptor.forClass(Runnable.class);
+    verify(slow).setOnReadyHandler(onReady.capture());
+
+    log.log("msg", Level.INFO);
+    verify(observer, timeout(1000)).onNext(any(LogBatch.class));
+    verify(slow, never()).onNext(any(LogBatch.class));
+
+    when(slow.isReady()).thenReturn(true);
+    onReady.getValue().run();
+    ArgumentCaptor<LogBatch> argument = ArgumentCaptor.forClass(LogBatch.class);
+    verify(slow).onNext(argument.capture());
+    assertThat(argument.getValue().getEventList()).extracting("log").containsExactly("msg");
+  }
+
+  @Test
+  public void testCancelledSubscriberIsRemoved() {
+    Daemon daemon = mock(Daemon.class);
+    log = new ProxyLogOutput(daemon);
+    ServerCallStreamObserver<LogBatch> cancelled = mock(ServerCallStreamObserver.class);
+    log.subscribeBatched(cancelled);
+    log.subscribeBatched(observer);
+    ArgumentCaptor<Runnable> onCancel = ArgumentCaptor.forClass(Runnable.class);
+    verify(cancelled).setOnCancelHandler(onCancel.capture());
+
+    onCancel.getValue().run();
+
+    assertThat(log.subscriberCount()).isEqualTo(1);
+    verify(daemon, never()).stop();
+  }
+
+  @Test
+  public void testReplayToLateSubscriber() {
+    log = new ProxyLogOutput(mock(Daemon.class));
+    CollectingObserver first = new CollectingObserver(3);
+    log.subscribeBatched(first);
+    log.log("a", Level.INFO);
+    log.log("b", Level.DEBUG);
+    log.log("c", Level.INFO);
+    assertThat(await(first)).isTrue();
+
+    StreamObserver<LogBatch> late = mock(StreamObserver.class);
+    log.subscribeBatched(late, LogFilter.of(LogSubscription.newBuilder().setMinLevel(LogEvent.Level.INFO).build()), 2);
+
+    ArgumentCaptor<LogBatch> argument = ArgumentCaptor.forClass(LogBatch.class);
+    verify(late).onNext(argument.capture());
+    assertThat(argument.getValue().getEventList()).extracting("log").containsExactly("c");
+  }
+
+  @Test
+  public void testReplayOnlyMostRecentLogs() {
+    LogSink sink = mock(LogSink.class);
+    log = new ProxyLogOutput(mock(Daemon.class), sink, ProxyLogOutput.DEFAULT_CAPACITY, 2);
+    log.log("a", Level.INFO);
+    log.log("b", Level.DEBUG);
+    log.log("c", Level.INFO);
+    verify(sink, timeout(1000)).log(Level.INFO, "c");
+
+    StreamObserver<LogBatch> late = mock(StreamObserver.class);
+    log.subscribeBatched(late, LogFilter.all(), 10);
+
+    ArgumentCaptor<LogBatch> argument = ArgumentCaptor.forClass(LogBatch.class);
+    verify(late).onNext(argument.capture());
+    assertThat(argument.getValue().getEventList()).extracting("log", "severity")
+      .containsExactly(tuple("b", LogEvent.Level.DEBUG), tuple("c", LogEvent.Level.INFO));
   }
 
   @Test
   public void testProxyLogError() {
     Daemon daemon = mock(Daemon.class);
-    ProxyLogOutput log = new ProxyLogOutput(daemon);
-    doThrow(StatusRuntimeException.class).when(observer).onNext(any(LogEvent.class));
-    log.setObserver(observer);
+    log = new ProxyLogOutput(daemon);
+    doThrow(StatusRuntimeException.class).when(observer).onNext(any(LogBatch.class));
+    log.subscribeBatched(observer);
     log.log("msg", Level.DEBUG);
-    verify(daemon).stop();
+    verify(daemon, timeout(1000)).stop();
+  }
+
+  @Test
+  public void testFilterLevelsOfSubscription() {
+    log = new ProxyLogOutput(mock(Daemon.class));
+    log.subscribeBatched(observer, LogFilter.of(LogSubscription.newBuilder().setMinLevel(LogEvent.Level.INFO).build()), 0);
+    log.log("debug msg", Level.DEBUG);
+    log.log("info msg", Level.INFO);
+
+    ArgumentCaptor<LogBatch> argument = ArgumentCaptor.forClass(LogBatch.class);
+    verify(observer, timeout(1000)).onNext(argument.capture());
+    assertThat(argument.getValue().getEventList()).extracting("log").containsExactly("info msg");
+  }
+
+  @Test
+  public void testLogsInOrder() {
+    log = new ProxyLogOutput(mock(Daemon.class));
+    CollectingObserver collector = new CollectingObserver(1000);
+    log.subscribeBatched(collector);
+    for (int i = 0; i < 1000; i++) {
+      log.log("msg " + i, Level.INFO);
+    }
+
+    assertThat(await(collector)).isTrue();
+    assertThat(collector.logs()).startsWith("msg 0", "msg 1").endsWith("msg 999");
+    assertThat(collector.batches).allMatch(b -> b.getEventCount() <= ProxyLogOutput.MAX_BATCH_SIZE);
+    assertThat(log.backlog()).isZero();
+    assertThat(log.droppedCount()).isZero();
+  }
+
+  @Test
+  public void testDropOldestWhenClientIsSlow() throws InterruptedException {
+    log = new ProxyLogOutput(mock(Daemon.class), new ConsoleLogSink(), 4, 10);
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CollectingObserver collector = new CollectingObserver(5) {
+      @Override
+      public void onNext(LogBatch value) {
+        sending.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.onNext(value);
+      }
+    };
+    log.subscribeBatched(collector);
+    log.log("first", Level.INFO);
+    sending.await();
+
+    for (int i = 0; i < 10; i++) {
+      log.log("msg " + i, Level.INFO);
+    }
+    assertThat(log.backlog()).isEqualTo(4);
+    assertThat(log.droppedCount()).isEqualTo(6);
+    release.countDown();
+
+    assertThat(await(collector)).isTrue();
+    assertThat(collector.logs()).containsExactly("first", "msg 6", "msg 7", "msg 8", "msg 9");
+    assertThat(collector.batches).extracting(LogBatch::getDropped).containsExactly(0L, 6L);
+  }
+
+  @Test
+  public void testReportDroppedLogsAsLogWhenNotBatched() throws InterruptedException {
+    log = new ProxyLogOutput(mock(Daemon.class), new ConsoleLogSink(), 4, 10);
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch received = new CountDownLatch(6);
+    List<String> logs = new ArrayList<>();
+    log.subscribe(new StreamObserver<LogEvent>() {
+      @Override
+      public void onNext(LogEvent value) {
+        sending.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        synchronized (logs) {
+          logs.add(value.getLog());
+        }
+        received.countDown();
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        // not expected
+      }
+
+      @Override
+      public void onCompleted() {
+        // not expected
+      }
+    });
+    log.log("first", Level.INFO);
+    sending.await();
+
+    for (int i = 0; i < 10; i++) {
+      log.log("msg " + i, Level.INFO);
+    }
+    release.countDown();
+
+    assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+    synchronized (logs) {
+      assertThat(logs).containsExactly("first", "6 logs were not sent, the client could not keep up", "msg 6", "msg 7", "msg 8", "msg 9");
+    }
+  }
+
+  @Test
+  public void testCloseSendsPendingLogs() {
+    log = new ProxyLogOutput(mock(Daemon.class));
+    CollectingObserver collector = new CollectingObserver(1000);
+    log.subscribeBatched(collector);
+    for (int i = 0; i < 1000; i++) {
+      log.log("msg " + i, Level.INFO);
+    }
+
+    log.close();
+
+    assertThat(collector.received.getCount()).isZero();
+    assertThat(collector.logs()).endsWith("msg 999");
+    assertThat(log.backlog()).isZero();
+  }
+
+  @Test
+  public void testLogToSinkAfterClose() {
+    LogSink sink = mock(LogSink.class);
+    log = new ProxyLogOutput(mock(Daemon.class), sink);
+    log.log("before", Level.INFO);
+
+    log.close();
+    log.log("after", Level.DEBUG);
+
+    verify(sink).log(Level.INFO, "before");
+    verify(sink).log(Level.DEBUG, "after");
+  }
+
+  private static boolean await(CollectingObserver collector) {
+    try {
+      return collector.received.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static class CollectingObserver implements StreamObserver<LogBatch> {
+    private final List<LogBatch> batches = new ArrayList<>();
+    private final CountDownLatch received;
+
+    CollectingObserver(int expectedLogs) {
+      received = new CountDownLatch(expectedLogs);
+    }
+
+    @Override
+    public synchronized void onNext(LogBatch value) {
+      batches.add(value);
+      value.getEventList().forEach(e -> received.countDown());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      // not expected
+    }
+
+    @Override
+    public void onCompleted() {
+      // not expected
+    }
+
+    synchronized List<String> logs() {
+      List<String> logs = new ArrayList<>();
+      batches.forEach(b -> b.getEventList().forEach(e -> logs.add(e.getLog())));
+      return logs;
+    }
   }
 }
@@ -0,0 +1,112 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.profiling;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Profile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ProfileReq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class SamplingProfilerTest {
+  private volatile boolean running = true;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    running = false;
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void should_sample_running_threads() throws Exception {
+    Thread busy = new Thread(this::spin, "busy-worker-3");
+    busy.start();
+
+    Profile profile = new SamplingProfiler().profile(ProfileReq.newBuilder().setDurationMillis(300).setIntervalMillis(10).build());
+    running = false;
+    busy.join();
+
+    assertThat(profile.getSamples()).isPositive();
+    assertThat(profile.getCollapsedStacks()).contains("busy-worker;java.lang.Thread.run;");
+    assertThat(profile.getCollapsedStacks()).contains("SamplingProfilerTest.spin");
+    assertThat(profile.getCollapsedStacks().split("\n")).allMatch(line -> line.matches(".+ \\d+"));
+    assertThat(profile.getDurationNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(300));
+  }
+
+  @Test
+  public void should_run_one_profile_at_a_time() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    Future<Profile> first = executor.submit(() -> {
+      started.countDown();
+      return new SamplingProfiler().profile(ProfileReq.newBuilder().setDurationMillis(500).build());
+    });
+    started.await();
+    Thread.sleep(100);
+
+    Throwable thrown = catchThrowable(() -> new SamplingProfiler().profile(ProfileReq.getDefaultInstance()));
+
+    assertThat(thrown).isInstanceOf(StatusRuntimeException.class);
+    assertThat(((StatusRuntimeException) thrown).getStatus().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+    assertThat(first.get().getSamples()).isPositive();
+  }
+
+  @Test
+  public void should_cap_interval() throws Exception {
+    Profile profile = new SamplingProfiler().profile(ProfileReq.newBuilder().setDurationMillis(50).setIntervalMillis(1).build());
+
+    assertThat(profile.getIntervalMillis()).isGreaterThanOrEqualTo((int) SamplingProfiler.MIN_INTERVAL_MILLIS);
+  }
+
+  @Test
+  public void should_merge_threads_of_a_pool() {
+    assertThat(SamplingProfiler.threadPool("grpc-default-executor-12")).isEqualTo("grpc-default-executor");
+    assertThat(SamplingProfiler.threadPool("pool-1-thread-2")).isEqualTo("pool-1-thread");
+    assertThat(SamplingProfiler.threadPool("main")).isEqualTo("main");
+    assertThat(SamplingProfiler.threadPool("Signal Dispatcher")).isEqualTo("Signal_Dispatcher");
+  }
+
+  @Test
+  public void should_collapse_from_root() {
+    StackTraceElement[] frames = {
+      new StackTraceElement("a.Leaf", "compute", "Leaf.java", 10),
+      new StackTraceElement("a.Root", "run", "Root.java", 1)
+    };
+
+    assertThat(SamplingProfiler.collapse("pool", frames)).isEqualTo("pool;a.Root.run;a.Leaf.compute");
+  }
+
+  private void spin() {
+    long sum = 0;
+    while (running) {
+      sum += System.nanoTime() % 7;
+    }
+    assertThat(sum).isNotNegative();
+  }
+}
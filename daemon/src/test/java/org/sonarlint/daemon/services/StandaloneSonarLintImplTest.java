@@ -22,12 +22,16 @@ package org.sonarlint.daemon.services;
 import java.util.Arrays;
 import org.junit.Test;
 import org.sonarlint.daemon.Daemon;
+import org.sonarlint.daemon.Options;
+import org.sonarlint.daemon.logging.ConsoleLogSink;
+import org.sonarlint.daemon.metrics.MetricsRegistry;
 
 import static org.mockito.Mockito.mock;
 
 public class StandaloneSonarLintImplTest {
   @Test
   public void testStart() {
-    StandaloneSonarLintImpl sonarlint = new StandaloneSonarLintImpl(mock(Daemon.class), Arrays.asList());
+    StandaloneSonarLintImpl sonarlint = new StandaloneSonarLintImpl(mock(Daemon.class), new Options(), new MetricsRegistry(), new ConsoleLogSink(), Arrays.asList());
+    sonarlint.close();
   }
 }
@@ -0,0 +1,132 @@
+/*
+ * SonarLint Daemon Implementation
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarlint.daemon.transport;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarlint.daemon.Options;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleDetails;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.RuleKey;
+import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.Assume.assumeTrue;
+
+public class ServerTransportTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_serve_on_tcp_port() throws Exception {
+    ServerTransport transport = ServerTransport.create(Options.parse(new String[] {"--worker-threads", "2"}), 0);
+    Server server = start(transport);
+    ManagedChannel channel = NettyChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build();
+    try {
+      assertThat(call(channel).getName()).isEqualTo("js:S1");
+    } finally {
+      stop(channel, server, transport);
+    }
+  }
+
+  @Test
+  public void should_serve_on_unix_domain_socket() throws Exception {
+    assumeTrue(Epoll.isAvailable());
+    Path socket = temp.getRoot().toPath().resolve("daemon.sock");
+    ServerTransport transport = ServerTransport.create(Options.parse(new String[] {"--socket", socket.toString()}), 0);
+    assertThat(transport).hasToString("unix:" + socket);
+    Server server = start(transport);
+    EpollEventLoopGroup clientGroup = new EpollEventLoopGroup(1);
+    ManagedChannel channel = NettyChannelBuilder.forAddress(new DomainSocketAddress(socket.toFile()))
+      .channelType(EpollDomainSocketChannel.class)
+      .eventLoopGroup(clientGroup)
+      .usePlaintext()
+      .build();
+    try {
+      assertThat(call(channel).getName()).isEqualTo("js:S1");
+    } finally {
+      stop(channel, server, transport);
+      clientGroup.shutdownGracefully();
+    }
+    assertThat(socket).doesNotExist();
+  }
+
+  @Test
+  public void should_not_take_over_socket_of_running_daemon() throws Exception {
+    assumeTrue(Epoll.isAvailable());
+    Path socket = temp.getRoot().toPath().resolve("daemon.sock");
+    Options options = Options.parse(new String[] {"--socket", socket.toString()});
+    ServerTransport transport = ServerTransport.create(options, 0);
+    Server server = start(transport);
+    try {
+      assertThatThrownBy(() -> ServerTransport.create(options, 0))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("already in use");
+      assertThat(socket).exists();
+    } finally {
+      server.shutdownNow().awaitTermination();
+      transport.shutdown();
+    }
+  }
+
+  @Test
+  public void should_not_delete_file_that_is_not_a_socket() throws Exception {
+    assumeTrue(Epoll.isAvailable());
+    Path file = temp.newFile("daemon.sock").toPath();
+
+    assertThatThrownBy(() -> ServerTransport.create(Options.parse(new String[] {"--socket", file.toString()}), 0))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessageContaining("Not a socket");
+    assertThat(file).exists();
+  }
+
+  private static Server start(ServerTransport transport) throws Exception {
+    return transport.serverBuilder()
+      .addService(new StandaloneSonarLintGrpc.StandaloneSonarLintImplBase() {
+        @Override
+        public void getRuleDetails(RuleKey request, StreamObserver<RuleDetails> response) {
+          response.onNext(RuleDetails.newBuilder().setKey(request.getKey()).setName(request.getKey()).build());
+          response.onCompleted();
+        }
+      })
+      .build()
+      .start();
+  }
+
+  private static RuleDetails call(ManagedChannel channel) {
+    return StandaloneSonarLintGrpc.newBlockingStub(channel).getRuleDetails(RuleKey.newBuilder().setKey("js:S1").build());
+  }
+
+  private static void stop(ManagedChannel channel, Server server, ServerTransport transport) throws Exception {
+    channel.shutdownNow();
+    server.shutdownNow().awaitTermination();
+    transport.shutdown();
+  }
+}
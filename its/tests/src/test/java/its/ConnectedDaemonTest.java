@@ -62,6 +62,7 @@ import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ConnectedConfigura
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogSubscription;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ModuleUpdateReq;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ServerConfig;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.ServerConfig.Credentials;
@@ -165,7 +166,7 @@ public class ConnectedDaemonTest {
     sonarlint.updateModule(moduleUpdate);
 
     // ANALYSIS
-    ClientCall<Void, LogEvent> call = getLogs(logs, channel);
+    ClientCall<LogSubscription, LogEvent> call = getLogs(logs, channel);
     Iterator<Issue> issues = sonarlint.analyze(createAnalysisConfig(PROJECT_KEY_JAVASCRIPT));
 
     assertThat(issues).toIterable().hasSize(1);
@@ -209,10 +210,10 @@ public class ConnectedDaemonTest {
     sonarlint.shutdown(null);
   }
 
-  private ClientCall<Void, LogEvent> getLogs(LogCollector collector, Channel channel) {
-    ClientCall<Void, LogEvent> call = channel.newCall(StandaloneSonarLintGrpc.getStreamLogsMethod(), CallOptions.DEFAULT);
+  private ClientCall<LogSubscription, LogEvent> getLogs(LogCollector collector, Channel channel) {
+    ClientCall<LogSubscription, LogEvent> call = channel.newCall(StandaloneSonarLintGrpc.getStreamLogsMethod(), CallOptions.DEFAULT);
     call.start(collector, new Metadata());
-    call.sendMessage(Void.newBuilder().build());
+    call.sendMessage(LogSubscription.getDefaultInstance());
     call.halfClose();
     call.request(Integer.MAX_VALUE);
     return call;
@@ -47,6 +47,8 @@ import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisReq.Builde
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogEvent;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.LogSubscription;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Metrics;
 import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Void;
 import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc;
 import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc.StandaloneSonarLintBlockingStub;
@@ -95,7 +97,7 @@ public class StandaloneDaemonTest {
 
     long start = System.currentTimeMillis();
 
-    ClientCall<Void, LogEvent> call = getLogs(logs, channel);
+    ClientCall<LogSubscription, LogEvent> call = getLogs(logs, channel, LogSubscription.getDefaultInstance());
     try {
       for (int i = 0; i < 10; i++) {
         System.out.println("ITERATION: " + i);
@@ -116,10 +118,45 @@ public class StandaloneDaemonTest {
     System.out.println("TIME " + (System.currentTimeMillis() - start));
   }
 
-  private ClientCall<Void, LogEvent> getLogs(LogCollector collector, Channel channel) {
-    ClientCall<Void, LogEvent> call = channel.newCall(StandaloneSonarLintGrpc.getStreamLogsMethod(), CallOptions.DEFAULT);
+  @Test
+  public void testFilterLogsByLevel() throws InterruptedException, IOException {
+    LogCollector logs = new LogCollector();
+    StandaloneSonarLintBlockingStub sonarlint = StandaloneSonarLintGrpc.newBlockingStub(channel);
+    AnalysisReq analysisConfig = createAnalysisConfig("sample-javascript");
+
+    ClientCall<LogSubscription, LogEvent> call = getLogs(logs, channel, LogSubscription.newBuilder().setMinLevel(LogEvent.Level.INFO).build());
+    try {
+      Iterator<Issue> issues = sonarlint.analyze(analysisConfig);
+
+      assertThat(issues).toIterable().hasSize(1);
+      // Give some time for logs to come
+      Thread.sleep(500);
+      assertThat(logs.get()).isNotEmpty();
+      assertThat(logs.get()).extracting(LogEvent::getSeverity).doesNotContain(LogEvent.Level.DEBUG, LogEvent.Level.TRACE);
+      assertThat(logs.getLogsAndClear()).contains("1 file indexed");
+    } finally {
+      call.cancel("no more logs needed", null);
+    }
+  }
+
+  @Test
+  public void testRecordIndexingTime() throws IOException {
+    StandaloneSonarLintBlockingStub sonarlint = StandaloneSonarLintGrpc.newBlockingStub(channel);
+
+    assertThat(sonarlint.analyze(createAnalysisConfig("sample-javascript"))).toIterable().hasSize(1);
+
+    // detected from the log of the engine, fails if the engine changes it
+    Metrics metrics = sonarlint.getMetrics(Void.getDefaultInstance());
+    assertThat(metrics.getHistogramList())
+      .filteredOn(h -> h.getName().equals("analysis_indexing_duration{mode=\"standalone\"}"))
+      .extracting(Metrics.Histogram::getCount)
+      .containsExactly(1L);
+  }
+
+  private ClientCall<LogSubscription, LogEvent> getLogs(LogCollector collector, Channel channel, LogSubscription subscription) {
+    ClientCall<LogSubscription, LogEvent> call = channel.newCall(StandaloneSonarLintGrpc.getStreamLogsMethod(), CallOptions.DEFAULT);
     call.start(collector, new Metadata());
-    call.sendMessage(Void.newBuilder().build());
+    call.sendMessage(subscription);
     call.halfClose();
     call.request(Integer.MAX_VALUE);
     return call;
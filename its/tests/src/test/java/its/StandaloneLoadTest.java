@@ -0,0 +1,149 @@
+/*
+ * SonarLint Daemon - ITs - Tests
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package its;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ClientCall.Listener;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import its.tools.JsProjectGenerator;
+import its.tools.JsProjectGenerator.GeneratedProject;
+import its.tools.LoadBaseline;
+import its.tools.LoadDriver;
+import its.tools.LoadReport;
+import its.tools.SonarlintDaemon;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.InputFile;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Void;
+import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Concurrent clients analyzing generated projects. Only run with {@code -Dloadtest=true}, and configured with system properties:
+ * <ul>
+ *   <li>loadtest.clients: number of concurrent clients (default 8)</li>
+ *   <li>loadtest.singleFileRatio: share of single file analyses, the others analyze whole projects (default 0.9)</li>
+ *   <li>loadtest.projects, loadtest.projectFiles: generated projects and their number of files (default 4 and 200)</li>
+ *   <li>loadtest.seed: seed of the generated projects and of the requests of the clients (default 42)</li>
+ *   <li>loadtest.warmup, loadtest.duration: in seconds (default 30 and 120)</li>
+ *   <li>loadtest.daemonArgs: options passed to the daemon, for example "--engines 4 --cache-size 64"</li>
+ *   <li>loadtest.baseline: results to compare with (default loadtest-baseline.properties), not compared if the file does not exist</li>
+ *   <li>loadtest.tolerance: allowed relative regression from the baseline (default 0.2)</li>
+ *   <li>loadtest.updateBaseline: stores the results as the new baseline instead of comparing them</li>
+ * </ul>
+ */
+public class StandaloneLoadTest {
+  private static final int PORT = 8050;
+
+  @Rule
+  public SonarlintDaemon daemon = new SonarlintDaemon();
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ManagedChannel channel;
+
+  @Before
+  public void setUp() {
+    assumeTrue("Load test only run with -Dloadtest=true", Boolean.getBoolean("loadtest"));
+    daemon.install();
+    String daemonArgs = System.getProperty("loadtest.daemonArgs", "").trim();
+    daemon.run(daemonArgs.isEmpty() ? new String[0] : daemonArgs.split("\\s+"));
+    daemon.waitReady();
+    channel = ManagedChannelBuilder.forAddress("localhost", PORT)
+      .usePlaintext()
+      .build();
+  }
+
+  @After
+  public void shutdown() throws Exception {
+    if (channel == null) {
+      return;
+    }
+    ClientCall<Void, Void> call = channel.newCall(StandaloneSonarLintGrpc.getShutdownMethod(), CallOptions.DEFAULT);
+    call.start(new Listener<Void>() {
+    }, new Metadata());
+    call.sendMessage(Void.newBuilder().build());
+    call.halfClose();
+    call.request(1);
+
+    channel.shutdownNow();
+    channel.awaitTermination(2, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void analyze_under_concurrent_load() throws Exception {
+    long seed = Long.getLong("loadtest.seed", 42);
+    List<AnalysisReq> projects = new ArrayList<>();
+    for (int i = 0; i < Integer.getInteger("loadtest.projects", 4); i++) {
+      GeneratedProject project = new JsProjectGenerator()
+        .seed(seed + i)
+        .fileCount(Integer.getInteger("loadtest.projectFiles", 200))
+        .generate(temp.newFolder("project" + i).toPath());
+      projects.add(analysisRequest(project));
+    }
+
+    LoadDriver driver = new LoadDriver(PORT, Integer.getInteger("loadtest.clients", 8),
+      Double.parseDouble(System.getProperty("loadtest.singleFileRatio", "0.9")), seed);
+    LoadReport report = driver.run(projects, TimeUnit.SECONDS.toMillis(Long.getLong("loadtest.warmup", 30)),
+      TimeUnit.SECONDS.toMillis(Long.getLong("loadtest.duration", 120)));
+    System.out.println("LOAD TEST" + System.lineSeparator() + report);
+
+    assertThat(report.errors()).isZero();
+    assertThat(report.requests()).isPositive();
+
+    Path baselineFile = Paths.get(System.getProperty("loadtest.baseline", "loadtest-baseline.properties"));
+    if (Boolean.getBoolean("loadtest.updateBaseline")) {
+      LoadBaseline.store(baselineFile, report);
+      System.out.println("Baseline stored in " + baselineFile.toAbsolutePath());
+    } else if (Files.exists(baselineFile)) {
+      double tolerance = Double.parseDouble(System.getProperty("loadtest.tolerance", "0.2"));
+      assertThat(LoadBaseline.load(baselineFile).regressions(report, tolerance)).isEmpty();
+    }
+  }
+
+  static AnalysisReq analysisRequest(GeneratedProject project) {
+    AnalysisReq.Builder builder = AnalysisReq.newBuilder()
+      .setBaseDir(project.baseDir().toAbsolutePath().toString());
+    for (Path file : project.files()) {
+      builder.addFile(InputFile.newBuilder()
+        .setCharset(StandardCharsets.UTF_8.name())
+        .setPath(file.toAbsolutePath().toString())
+        .setIsTest(false));
+    }
+    return builder.build();
+  }
+}
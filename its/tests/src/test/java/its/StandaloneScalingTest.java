@@ -0,0 +1,144 @@
+/*
+ * SonarLint Daemon - ITs - Tests
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package its;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ClientCall.Listener;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import its.tools.JsProjectGenerator;
+import its.tools.JsProjectGenerator.GeneratedProject;
+import its.tools.SonarlintDaemon;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Void;
+import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc;
+import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc.StandaloneSonarLintBlockingStub;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Analysis throughput and memory of the daemon as generated projects grow. Only run with {@code -Dscalingtest=true}, and configured
+ * with system properties:
+ * <ul>
+ *   <li>scalingtest.fileCounts: comma separated sizes of the projects (default 1000,5000,20000)</li>
+ *   <li>scalingtest.bundles: number of 4 MB bundles added to each project (default 2)</li>
+ *   <li>scalingtest.seed: seed of the generated projects (default 42)</li>
+ * </ul>
+ */
+public class StandaloneScalingTest {
+  private static final int PORT = 8050;
+  private static final int METRICS_PORT = 9464;
+
+  @Rule
+  public SonarlintDaemon daemon = new SonarlintDaemon();
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ManagedChannel channel;
+
+  @Before
+  public void setUp() {
+    assumeTrue("Scaling test only run with -Dscalingtest=true", Boolean.getBoolean("scalingtest"));
+    daemon.install();
+    daemon.run("--metrics-port", String.valueOf(METRICS_PORT));
+    daemon.waitReady();
+    channel = ManagedChannelBuilder.forAddress("localhost", PORT)
+      .usePlaintext()
+      .build();
+  }
+
+  @After
+  public void shutdown() throws Exception {
+    if (channel == null) {
+      return;
+    }
+    ClientCall<Void, Void> call = channel.newCall(StandaloneSonarLintGrpc.getShutdownMethod(), CallOptions.DEFAULT);
+    call.start(new Listener<Void>() {
+    }, new Metadata());
+    call.sendMessage(Void.newBuilder().build());
+    call.halfClose();
+    call.request(1);
+
+    channel.shutdownNow();
+    channel.awaitTermination(2, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void analyze_growing_projects() throws Exception {
+    StandaloneSonarLintBlockingStub sonarlint = StandaloneSonarLintGrpc.newBlockingStub(channel);
+    int bundles = Integer.getInteger("scalingtest.bundles", 2);
+    StringBuilder report = new StringBuilder(String.format(Locale.ENGLISH, "%8s %8s %8s %10s %8s %8s %10s%n",
+      "files", "MB", "issues", "seconds", "files/s", "MB/s", "heap MB"));
+
+    for (String fileCount : System.getProperty("scalingtest.fileCounts", "1000,5000,20000").split(",")) {
+      GeneratedProject project = new JsProjectGenerator()
+        .seed(Long.getLong("scalingtest.seed", 42))
+        .fileCount(Integer.parseInt(fileCount.trim()))
+        .bundles(bundles, 4_000_000)
+        .generate(temp.newFolder("project" + fileCount.trim()).toPath());
+
+      long start = System.nanoTime();
+      Iterator<Issue> issues = sonarlint.analyze(StandaloneLoadTest.analysisRequest(project));
+      int issueCount = 0;
+      while (issues.hasNext()) {
+        issues.next();
+        issueCount++;
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      double megabytes = project.bytes() / 1e6;
+
+      assertThat(issueCount).isPositive();
+      report.append(String.format(Locale.ENGLISH, "%8d %8.1f %8d %10.2f %8.1f %8.2f %10.1f%n", project.files().size(), megabytes, issueCount,
+        seconds, project.files().size() / seconds, megabytes / seconds, heapUsedBytes() / 1e6));
+    }
+    System.out.println("SCALING TEST" + System.lineSeparator() + report);
+  }
+
+  private static long heapUsedBytes() throws IOException {
+    String metrics;
+    try (InputStream in = new URL("http://localhost:" + METRICS_PORT + "/metrics").openStream()) {
+      metrics = IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+    String prefix = "jvm_memory_bytes_used{area=\"heap\"} ";
+    for (String line : metrics.split("\n")) {
+      if (line.startsWith(prefix)) {
+        return Long.parseLong(line.substring(prefix.length()).trim());
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * SonarLint Daemon - ITs - Tests
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package its.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes JavaScript projects of a controlled size, to benchmark the daemon as data grows. The same settings and seed always
+ * produce the same files.
+ * <p>
+ * Source files have log-normally distributed sizes around a median, like hand-written code, and bundles are large files
+ * concatenating many functions, like the output of a bundler. Issues are injected in functions with the given density, using
+ * rules of the default JavaScript profile: implicit global variables and unused local variables.
+ */
+public class JsProjectGenerator {
+  private static final int FILES_PER_DIR = 100;
+
+  private long seed = 0;
+  private int fileCount = 100;
+  private int medianFileSize = 2_000;
+  private double fileSizeSpread = 1.0;
+  private int maxFileSize = 200_000;
+  private int bundleCount = 0;
+  private int bundleSize = 2_000_000;
+  private double issuesPerFunction = 0.1;
+
+  public JsProjectGenerator seed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  public JsProjectGenerator fileCount(int fileCount) {
+    this.fileCount = fileCount;
+    return this;
+  }
+
+  /**
+   * @param medianFileSize in bytes
+   * @param spread standard deviation of the logarithm of the sizes, 0 for files of the same size
+   * @param maxFileSize in bytes, larger files are truncated to this size
+   */
+  public JsProjectGenerator fileSizes(int medianFileSize, double spread, int maxFileSize) {
+    this.medianFileSize = medianFileSize;
+    this.fileSizeSpread = spread;
+    this.maxFileSize = maxFileSize;
+    return this;
+  }
+
+  /**
+   * @param bundleSize in bytes
+   */
+  public JsProjectGenerator bundles(int bundleCount, int bundleSize) {
+    this.bundleCount = bundleCount;
+    this.bundleSize = bundleSize;
+    return this;
+  }
+
+  /**
+   * @param issuesPerFunction probability for a function to contain an issue, between 0 and 1
+   */
+  public JsProjectGenerator issueDensity(double issuesPerFunction) {
+    this.issuesPerFunction = issuesPerFunction;
+    return this;
+  }
+
+  public GeneratedProject generate(Path baseDir) throws IOException {
+    Random random = new Random(seed);
+    GeneratedProject project = new GeneratedProject(baseDir);
+    for (int i = 0; i < fileCount; i++) {
+      Path dir = baseDir.resolve("src").resolve("module" + (i / FILES_PER_DIR));
+      Files.createDirectories(dir);
+      int size = (int) Math.min(maxFileSize, Math.max(200, medianFileSize * Math.exp(fileSizeSpread * random.nextGaussian())));
+      write(project, dir.resolve("component" + i + ".js"), "Component" + i, size, random);
+    }
+    if (bundleCount > 0) {
+      Files.createDirectories(baseDir.resolve("dist"));
+    }
+    for (int i = 0; i < bundleCount; i++) {
+      write(project, baseDir.resolve("dist").resolve("bundle" + i + ".js"), "Bundle" + i, bundleSize, random);
+    }
+    return project;
+  }
+
+  private void write(GeneratedProject project, Path file, String name, int size, Random random) throws IOException {
+    StringBuilder sb = new StringBuilder(size + 512);
+    sb.append("var ").append(name).append(" = (function() {\n");
+    int functions = 0;
+    while (sb.length() < size) {
+      if (random.nextDouble() < issuesPerFunction) {
+        appendFunctionWithIssue(sb, functions, random);
+        project.issues++;
+      } else {
+        appendFunction(sb, functions, random);
+      }
+      functions++;
+    }
+    sb.append("  return {\n");
+    for (int f = 0; f < functions; f++) {
+      sb.append("    f").append(f).append(": f").append(f).append(f < functions - 1 ? ",\n" : "\n");
+    }
+    sb.append("  };\n})();\n");
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write(sb.toString());
+    }
+    project.files.add(file);
+    project.bytes += sb.length();
+  }
+
+  private static void appendFunction(StringBuilder sb, int index, Random random) {
+    int items = 1 + random.nextInt(8);
+    sb.append("  function f").append(index).append("(items, factor) {\n")
+      .append("    var total = 0;\n")
+      .append("    for (var i = 0; i < items.length; i++) {\n");
+    for (int i = 0; i < items; i++) {
+      sb.append("      if (items[i].kind === ").append(random.nextInt(100)).append(") {\n")
+        .append("        total += items[i].price * factor + ").append(random.nextInt(1000)).append(";\n")
+        .append("      }\n");
+    }
+    sb.append("    }\n")
+      .append("    return total;\n")
+      .append("  }\n\n");
+  }
+
+  private static void appendFunctionWithIssue(StringBuilder sb, int index, Random random) {
+    sb.append("  function f").append(index).append("(first, last) {\n");
+    if (random.nextBoolean()) {
+      // implicit global variable
+      sb.append("    fullName").append(index).append(" = [first, last].join(' ');\n")
+        .append("    return fullName").append(index).append(";\n");
+    } else {
+      // unused local variable
+      sb.append("    var unused = ").append(random.nextInt(1000)).append(";\n")
+        .append("    return [first, last].join(' ');\n");
+    }
+    sb.append("  }\n\n");
+  }
+
+  public static class GeneratedProject {
+    private final Path baseDir;
+    private final List<Path> files = new ArrayList<>();
+    private long bytes = 0;
+    private int issues = 0;
+
+    private GeneratedProject(Path baseDir) {
+      this.baseDir = baseDir;
+    }
+
+    public Path baseDir() {
+      return baseDir;
+    }
+
+    public List<Path> files() {
+      return Collections.unmodifiableList(files);
+    }
+
+    public long bytes() {
+      return bytes;
+    }
+
+    /**
+     * Number of issues injected. The analyzer may report a few more, depending on its version.
+     */
+    public int injectedIssues() {
+      return issues;
+    }
+  }
+}
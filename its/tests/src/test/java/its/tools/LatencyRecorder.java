@@ -0,0 +1,55 @@
+/*
+ * SonarLint Daemon - ITs - Tests
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package its.tools;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the requests of one kind, in nanoseconds.
+ */
+public class LatencyRecorder {
+  private long[] values = new long[1024];
+  private int count = 0;
+
+  public synchronized void record(long nanos) {
+    if (count == values.length) {
+      values = Arrays.copyOf(values, count * 2);
+    }
+    values[count] = nanos;
+    count++;
+  }
+
+  public synchronized int count() {
+    return count;
+  }
+
+  /**
+   * Nearest-rank percentile, 0 if nothing was recorded.
+   */
+  public synchronized long percentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(values, count);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile / 100.0 * count);
+    return sorted[Math.max(0, Math.min(count, rank) - 1)];
+  }
+}
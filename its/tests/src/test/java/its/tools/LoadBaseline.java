@@ -0,0 +1,85 @@
+/*
+ * SonarLint Daemon - ITs - Tests
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package its.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Results of a reference load test run, stored as properties, that later runs must not regress from.
+ */
+public class LoadBaseline {
+  private final Properties values;
+
+  private LoadBaseline(Properties values) {
+    this.values = values;
+  }
+
+  public static LoadBaseline load(Path file) throws IOException {
+    Properties values = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      values.load(reader);
+    }
+    return new LoadBaseline(values);
+  }
+
+  public static void store(Path file, LoadReport report) throws IOException {
+    Properties values = new Properties();
+    for (Map.Entry<String, Double> entry : report.values().entrySet()) {
+      values.setProperty(entry.getKey(), String.format(Locale.ENGLISH, "%.2f", entry.getValue()));
+    }
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      values.store(writer, "Load test baseline, latencies in ms");
+    }
+  }
+
+  /**
+   * Describes the values of the report that are worse than the baseline by more than the tolerance: lower throughput, or higher
+   * latencies.
+   *
+   * @param tolerance allowed relative difference, for example 0.2 for 20%
+   */
+  public List<String> regressions(LoadReport report, double tolerance) {
+    List<String> regressions = new ArrayList<>();
+    for (Map.Entry<String, Double> entry : report.values().entrySet()) {
+      String baseline = values.getProperty(entry.getKey());
+      if (baseline == null) {
+        continue;
+      }
+      double expected = Double.parseDouble(baseline);
+      double actual = entry.getValue();
+      boolean higherIsBetter = "throughput".equals(entry.getKey());
+      boolean regressed = higherIsBetter ? actual < expected * (1 - tolerance) : actual > expected * (1 + tolerance);
+      if (regressed) {
+        regressions.add(String.format(Locale.ENGLISH, "%s: %.2f, baseline %.2f", entry.getKey(), actual, expected));
+      }
+    }
+    return regressions;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * SonarLint Daemon - ITs - Tests
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package its.tools;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.StatusRuntimeException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.AnalysisReq;
+import org.sonarsource.sonarlint.daemon.proto.SonarlintDaemon.Issue;
+import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc;
+import org.sonarsource.sonarlint.daemon.proto.StandaloneSonarLintGrpc.StandaloneSonarLintBlockingStub;
+
+/**
+ * Drives a standalone daemon with concurrent clients, each with its own channel like separate IDE instances. Every client
+ * repeatedly sends either the analysis of a single file picked from a project, or the analysis of a whole project.
+ */
+public class LoadDriver {
+  public static final String SINGLE_FILE = "single";
+  public static final String PROJECT = "project";
+
+  private final int port;
+  private final int clients;
+  private final double singleFileRatio;
+  private final long seed;
+
+  /**
+   * @param singleFileRatio share of the requests that analyze a single file, between 0 and 1
+   * @param seed makes the sequence of requests of each client reproducible
+   */
+  public LoadDriver(int port, int clients, double singleFileRatio, long seed) {
+    this.port = port;
+    this.clients = clients;
+    this.singleFileRatio = singleFileRatio;
+    this.seed = seed;
+  }
+
+  /**
+   * Sends requests during the warmup, then measures them during the given duration.
+   */
+  public LoadReport run(List<AnalysisReq> projects, long warmupMillis, long durationMillis) throws InterruptedException {
+    Map<String, LatencyRecorder> latencies = new LinkedHashMap<>();
+    latencies.put(SINGLE_FILE, new LatencyRecorder());
+    latencies.put(PROJECT, new LatencyRecorder());
+    AtomicInteger errors = new AtomicInteger();
+
+    long measureStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+    long end = measureStart + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+    List<Thread> threads = new ArrayList<>(clients);
+    for (int i = 0; i < clients; i++) {
+      Random random = new Random(seed + i);
+      Thread thread = new Thread(() -> runClient(projects, random, measureStart, end, latencies, errors), "load-client-" + i);
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return new LoadReport(latencies, end - measureStart, errors.get());
+  }
+
+  private void runClient(List<AnalysisReq> projects, Random random, long measureStart, long end, Map<String, LatencyRecorder> latencies,
+    AtomicInteger errors) {
+    ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", port)
+      .usePlaintext()
+      .build();
+    try {
+      StandaloneSonarLintBlockingStub sonarlint = StandaloneSonarLintGrpc.newBlockingStub(channel);
+      while (System.nanoTime() < end) {
+        AnalysisReq project = projects.get(random.nextInt(projects.size()));
+        boolean singleFile = random.nextDouble() < singleFileRatio;
+        AnalysisReq request = singleFile ? singleFile(project, random) : project;
+
+        long start = System.nanoTime();
+        try {
+          Iterator<Issue> issues = sonarlint.analyze(request);
+          while (issues.hasNext()) {
+            issues.next();
+          }
+        } catch (StatusRuntimeException e) {
+          if (start >= measureStart) {
+            errors.incrementAndGet();
+          }
+          continue;
+        }
+        long stop = System.nanoTime();
+        if (start >= measureStart && stop <= end) {
+          latencies.get(singleFile ? SINGLE_FILE : PROJECT).record(stop - start);
+        }
+      }
+    } finally {
+      channel.shutdownNow();
+    }
+  }
+
+  private static AnalysisReq singleFile(AnalysisReq project, Random random) {
+    return AnalysisReq.newBuilder(project)
+      .clearFile()
+      .addFile(project.getFile(random.nextInt(project.getFileCount())))
+      .build();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * SonarLint Daemon - ITs - Tests
+ * Copyright (C) 2016-2021 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package its.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency percentiles measured by a {@link LoadDriver} run.
+ */
+public class LoadReport {
+  public static final double[] PERCENTILES = {50, 95, 99};
+
+  private final Map<String, LatencyRecorder> latencies;
+  private final long durationNanos;
+  private final int errors;
+
+  LoadReport(Map<String, LatencyRecorder> latencies, long durationNanos, int errors) {
+    this.latencies = latencies;
+    this.durationNanos = durationNanos;
+    this.errors = errors;
+  }
+
+  public int errors() {
+    return errors;
+  }
+
+  public int requests() {
+    return latencies.values().stream().mapToInt(LatencyRecorder::count).sum();
+  }
+
+  /**
+   * Completed requests per second.
+   */
+  public double throughput() {
+    return requests() / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+
+  public long percentileMillis(String kind, double percentile) {
+    return TimeUnit.NANOSECONDS.toMillis(latencies.get(kind).percentile(percentile));
+  }
+
+  /**
+   * Values compared against a baseline: throughput, then latencies in ms named like {@code single.p95}.
+   */
+  public Map<String, Double> values() {
+    Map<String, Double> values = new LinkedHashMap<>();
+    values.put("throughput", throughput());
+    for (String kind : latencies.keySet()) {
+      if (latencies.get(kind).count() == 0) {
+        continue;
+      }
+      for (double p : PERCENTILES) {
+        values.put(kind + ".p" + (int) p, (double) percentileMillis(kind, p));
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ENGLISH, "requests: %d, errors: %d, throughput: %.2f req/s%n", requests(), errors, throughput()));
+    for (Map.Entry<String, LatencyRecorder> entry : latencies.entrySet()) {
+      LatencyRecorder recorder = entry.getValue();
+      sb.append(String.format(Locale.ENGLISH, "%-8s count: %6d", entry.getKey(), recorder.count()));
+      for (double p : PERCENTILES) {
+        sb.append(String.format(Locale.ENGLISH, "  p%d: %6d ms", (int) p, percentileMillis(entry.getKey(), p)));
+      }
+      sb.append(System.lineSeparator());
+    }
+    return sb.toString();
+  }
+}